@@ -0,0 +1,82 @@
+package dev.jonas;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing the departure board, with every departure of a timetable on it.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardRendererBenchmark {
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  private List<TrainDeparture> departures;
+  private BoardRenderer renderer;
+  private int frame;
+
+  /**
+   * Makes the departures and draws the first frame.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    DepartureRegistry registry = new DepartureRegistry();
+    registry.addAll(Timetables.random(size, 42));
+    departures = registry.getDepartures();
+    renderer = new BoardRenderer(
+        new PrintStream(OutputStream.nullOutputStream(), false, StandardCharsets.UTF_8));
+    renderer.render(0, departures);
+  }
+
+  /**
+   * Draws every line, as when the board is first shown.
+   */
+  @Benchmark
+  public int fullFrame() {
+    renderer.invalidate();
+    return renderer.render(0, departures);
+  }
+
+  /**
+   * Draws a frame where nothing changed, so no line is written.
+   */
+  @Benchmark
+  public int unchangedFrame() {
+    return renderer.render(0, departures);
+  }
+
+  /**
+   * Draws a frame where one departure got a new delay.
+   */
+  @Benchmark
+  public int oneDelayFrame() {
+    TrainDeparture trainDeparture = departures.get(departures.size() / 2);
+    trainDeparture.setDelayMinutes(frame++ % 60);
+    return renderer.render(0, departures);
+  }
+}
@@ -0,0 +1,80 @@
+package dev.jonas;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures lookups, searches and changes in a {@link DepartureRegistry} of growing size.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepartureRegistryBenchmark {
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  private DepartureRegistry registry;
+
+  /**
+   * Fills the registry.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    registry = new DepartureRegistry();
+    registry.addAll(Timetables.random(size, 42));
+  }
+
+  /**
+   * Gets a departure by train number.
+   */
+  @Benchmark
+  public TrainDeparture getByTrainNumber() {
+    return registry.get(1 + ThreadLocalRandom.current().nextInt(size));
+  }
+
+  /**
+   * Gets the next 20 departures from a random time, as a board does.
+   */
+  @Benchmark
+  public List<TrainDeparture> nextDepartures() {
+    return registry.nextDepartures(ThreadLocalRandom.current().nextInt(24 * 60), 20);
+  }
+
+  /**
+   * Searches for a destination prefix that a twentieth of the departures match.
+   */
+  @Benchmark
+  public List<TrainDeparture> searchByDestination() {
+    return registry.searchByDestination("lilles");
+  }
+
+  /**
+   * Sets the delay of a random departure, which moves it in the ordering.
+   */
+  @Benchmark
+  public void setDelay() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    registry.setDelayMinutes(1 + random.nextInt(size), random.nextInt(120));
+  }
+}
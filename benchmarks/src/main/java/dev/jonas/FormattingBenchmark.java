@@ -0,0 +1,75 @@
+package dev.jonas;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the small formatting and parsing steps done for every departure: writing a time,
+ * printing a departure and making a departure from text fields.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormattingBenchmark {
+
+  private final FormatBuffer target = new FormatBuffer(64);
+  private final TrainDeparture trainDeparture =
+      new TrainDeparture(601, new int[]{16, 37}, "L1", "Lillestrøm", 1);
+  private final String[] fields = {"16", "37", "L1", "1", "Lillestrøm", "601"};
+  private int minutes;
+
+  /**
+   * Writes a time as HH:MM into a reused buffer.
+   */
+  @Benchmark
+  public FormatBuffer formatTime() {
+    minutes = (minutes + 7) % (24 * 60);
+    return target.clear().appendTime(minutes);
+  }
+
+  /**
+   * Writes a whole board row into a reused buffer, with the destination padded.
+   */
+  @Benchmark
+  public FormatBuffer formatRow() {
+    return target.clear()
+        .appendTime(trainDeparture.getEffectiveMinutes())
+        .append(' ')
+        .append(trainDeparture.getLine())
+        .append(' ')
+        .appendPadded(trainDeparture.getDestination(), BoardRenderer.DESTINATION_WIDTH)
+        .append(' ')
+        .appendInt(trainDeparture.getTrack());
+  }
+
+  /**
+   * Prints a departure with {@link TrainDeparture#toString()}.
+   */
+  @Benchmark
+  public String departureToString() {
+    return trainDeparture.toString();
+  }
+
+  /**
+   * Makes a departure from text fields, as the add menu does.
+   */
+  @Benchmark
+  public TrainDeparture parseFields() {
+    return new TrainDeparture(fields);
+  }
+}
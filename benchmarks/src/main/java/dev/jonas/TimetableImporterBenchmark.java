@@ -0,0 +1,92 @@
+package dev.jonas;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading a timetable, from CSV and from a snapshot, at growing sizes.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimetableImporterBenchmark {
+
+  @Param({"100", "10000", "1000000"})
+  public int size;
+
+  private Path csv;
+  private Path snapshot;
+
+  /**
+   * Writes the timetable as CSV and as a snapshot.
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    ColumnarTimetable timetable = Timetables.random(size, 42);
+    csv = Files.createTempFile("timetable", ".csv");
+    try (Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+      for (int row = 0; row < timetable.size(); row++) {
+        int minutes = timetable.getScheduledMinutes(row);
+        writer.write(minutes / 60 + "," + minutes % 60 + "," + timetable.view(row).getLine() + ","
+            + timetable.getTrack(row) + "," + timetable.view(row).getDestination() + ","
+            + timetable.getTrainNumber(row) + "\n");
+      }
+    }
+    snapshot = Files.createTempFile("timetable", ".tdss");
+    TimetableSnapshot.write(snapshot, timetable.views());
+  }
+
+  /**
+   * Deletes the files.
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    try {
+      Files.deleteIfExists(csv);
+      Files.deleteIfExists(snapshot);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Imports the CSV file.
+   */
+  @Benchmark
+  public ColumnarTimetable importCsv() throws IOException {
+    return new TimetableImporter().importFile(csv);
+  }
+
+  /**
+   * Reads the snapshot.
+   */
+  @Benchmark
+  public ColumnarTimetable readSnapshot() throws IOException {
+    return TimetableSnapshot.read(snapshot);
+  }
+}
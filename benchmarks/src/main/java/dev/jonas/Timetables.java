@@ -0,0 +1,46 @@
+package dev.jonas;
+
+import java.util.Random;
+
+/**
+ * Makes timetables of random departures for the benchmarks. The same size and seed always give
+ * the same timetable.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+final class Timetables {
+
+  // Real station names, so destination search sees realistic prefixes
+  static final String[] DESTINATIONS = {
+      "Oslo S", "Lillestrøm", "Drammen", "Asker", "Eidsvoll", "Oslo Lufthavn", "Skien",
+      "Kongsberg", "Hamar", "Lillehammer", "Trondheim S", "Bergen", "Stavanger", "Kristiansand",
+      "Moss", "Halden", "Gjøvik", "Jaren", "Spikkestad", "Ski"
+  };
+
+  /**
+   * Makes a timetable with the given number of departures, numbered from 1, spread over the day.
+   *
+   * @param size Number of departures.
+   * @param seed Seed of the random numbers.
+   * @return The timetable.
+   */
+  static ColumnarTimetable random(int size, long seed) {
+    Random random = new Random(seed);
+    ColumnarTimetable timetable = new ColumnarTimetable(size);
+    for (int i = 0; i < size; i++) {
+      int row = timetable.add(i + 1, random.nextInt(24 * 60), "L" + (1 + random.nextInt(30)),
+          DESTINATIONS[random.nextInt(DESTINATIONS.length)], 1 + random.nextInt(20));
+      if (random.nextInt(10) == 0) {
+        timetable.setDelayMinutes(row, 1 + random.nextInt(60));
+      }
+    }
+    return timetable;
+  }
+
+  /**
+   * Empty constructor, only for preventing instantiation.
+   */
+  private Timetables() { }
+}
@@ -0,0 +1,509 @@
+package dev.jonas;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code BatchProcessor} class runs a script of commands against a {@link DepartureRegistry}
+ * without prompts or screen output, and writes the results in a form that is easy to parse.
+ *
+ * <p>Every line of the script is one command. Words are separated by spaces, and a destination
+ * is always the rest of the line, so it may contain spaces. Blank lines and lines starting with
+ * {@code #} are skipped. Times are written as {@code HH:MM}.
+ * <blockquote><pre>
+ *   add HH:MM line track number destination   Adds a departure. Track and number may be "-"
+ *                                             for none and the next free number. Refused if
+ *                                             another departure occupies the track then
+ *   delay number minutes|HH:MM                Sets the delay of a departure, and passes it on
+ *                                             to the departures that wait for it
+ *   depend number number minutes [kind]       Makes the first departure leave at least minutes
+ *                                             after the second. Kind is stock, connection or
+ *                                             track, stock if left out
+ *   track number track                        Assigns a track to a departure. Refused if
+ *                                             another departure occupies the track then
+ *   destination number destination            Changes the destination of a departure
+ *   remove number                             Removes a departure
+ *   plan HH:MM HH:MM                          Assigns tracks to every departure in the window
+ *                                             without conflicts, and lists the departures that
+ *                                             were given a new track
+ *   time HH:MM                                Sets the current time, and removes the
+ *                                             departures that left before it
+ *   get number                                Lists one departure
+ *   board [limit]                             Lists departures from the current time
+ *   search text                               Lists departures to destinations starting with text
+ *   query [condition ...]                     Lists the departures that meet every condition,
+ *                                             see below
+ * </pre></blockquote>
+ *
+ * <p>Every command writes zero or more departure lines, followed by one status line. Fields are
+ * separated by tabs:
+ * <blockquote><pre>
+ *   departure  number  HH:MM  delay-minutes  line  track  destination
+ *   ok         line-number
+ *   error      line-number  message
+ * </pre></blockquote>
+ * The effective time is written, with the delay added. An error does not stop the script.
+ *
+ * <p>The conditions of {@code query} are words of the form {@code name=value}, in any order:
+ * <blockquote><pre>
+ *   line=line                  Departures of a line
+ *   destination=text           Departures to destinations with a word starting with text
+ *   track=track                Departures from a track
+ *   from=HH:MM to=HH:MM        Departures that leave at or after from, and before to, with the
+ *                              delay added. Either may be left out
+ *   scheduled-from=HH:MM       As from and to, by scheduled time
+ *   scheduled-to=HH:MM
+ *   delayed                    Departures that are delayed
+ *   sort=time|scheduled|delay|number
+ *                              Order to list in, time if left out. Delay lists the largest first
+ *   limit=count                Most departures to list
+ * </pre></blockquote>
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     BatchProcessor processor = new BatchProcessor(registry, System.out);
+ *     int errors = processor.run(Files.newBufferedReader(Path.of("day.script")));
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class BatchProcessor {
+
+  private final DepartureRegistry departureRegistry;
+  private final DelayPropagation delayPropagation;
+  private final PrintStream out;
+  // Output of the current command, written at once
+  private final StringBuilder result;
+  private int currentTime;
+  private long lineNumber;
+
+  /**
+   * Constructs a processor that starts at midnight.
+   *
+   * @param departureRegistry Registry to run commands against. Cannot be null.
+   * @param out Stream results are written to. Cannot be null.
+   * @since 1.3.0
+   */
+  public BatchProcessor(DepartureRegistry departureRegistry, PrintStream out) {
+    this(departureRegistry, new DelayPropagation(departureRegistry), out);
+  }
+
+  /**
+   * Constructs a processor that starts at midnight, and passes delays on through the dependencies
+   * of a propagation.
+   *
+   * @param departureRegistry Registry to run commands against. Cannot be null.
+   * @param delayPropagation Propagation of the registry. Cannot be null.
+   * @param out Stream results are written to. Cannot be null.
+   * @since 1.3.0
+   */
+  public BatchProcessor(DepartureRegistry departureRegistry, DelayPropagation delayPropagation,
+      PrintStream out) {
+    this.departureRegistry = departureRegistry;
+    this.delayPropagation = delayPropagation;
+    this.out = out;
+    result = new StringBuilder(256);
+    currentTime = 0;
+    lineNumber = 0;
+  }
+
+  /**
+   * Runs every command in a script, until the script ends.
+   *
+   * @param script Script to read commands from. Cannot be null.
+   * @return Number of commands that failed.
+   * @throws IOException if the script could not be read.
+   * @since 1.3.0
+   */
+  public int run(BufferedReader script) throws IOException {
+    int errors = 0;
+    String line;
+    while ((line = script.readLine()) != null) {
+      if (!execute(line)) {
+        errors++;
+      }
+    }
+    out.flush();
+    return errors;
+  }
+
+  /**
+   * Runs one command, and writes its result.
+   *
+   * @param command Command to run. Blank lines and comments do nothing.
+   * @return False if the command failed, true otherwise.
+   * @since 1.3.0
+   */
+  public boolean execute(String command) {
+    lineNumber++;
+    String trimmed = command.strip();
+    if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+      return true;
+    }
+
+    result.setLength(0);
+    boolean succeeded;
+    try {
+      String[] words = words(trimmed, 2);
+      String arguments = words.length > 1 ? words[1] : "";
+      switch (words[0]) {
+        case "add" -> add(arguments);
+        case "delay" -> delay(arguments);
+        case "depend" -> depend(arguments);
+        case "track" -> track(arguments);
+        case "destination" -> destination(arguments);
+        case "remove" -> departureRegistry.remove(getDeparture(arguments));
+        case "plan" -> plan(arguments);
+        case "time" -> time(arguments);
+        case "get" -> appendDeparture(getDeparture(arguments));
+        case "board" -> board(arguments);
+        case "search" -> appendDepartures(departureRegistry.searchByDestination(arguments));
+        case "query" -> query(arguments);
+        default -> throw new IllegalArgumentException("Unknown command: " + words[0]);
+      }
+      result.append("ok\t").append(lineNumber).append('\n');
+      succeeded = true;
+    } catch (IllegalArgumentException e) {
+      // Drops any departures listed before the command failed
+      result.setLength(0);
+      result.append("error\t").append(lineNumber).append('\t').append(e.getMessage()).append('\n');
+      succeeded = false;
+    }
+    out.append(result);
+    return succeeded;
+  }
+
+  /**
+   * Gets the current time of the script.
+   *
+   * @return Current time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public int getCurrentTime() {
+    return currentTime;
+  }
+
+  /**
+   * Sets the current time of the script, used by {@code board}.
+   *
+   * @param currentTime Time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public void setCurrentTime(int currentTime) {
+    this.currentTime = currentTime;
+  }
+
+  /**
+   * Runs {@code time HH:MM}, and removes the departures the clock has moved past, as the menu of
+   * {@link Io} does. A time set back, such as after midnight, removes nothing.
+   */
+  private void time(String arguments) {
+    int newTime = parseTime(arguments);
+    if (newTime > currentTime) {
+      departureRegistry.removeDepartedBefore(newTime);
+    }
+    currentTime = newTime;
+  }
+
+  /**
+   * Runs {@code add HH:MM line track number destination}.
+   */
+  private void add(String arguments) {
+    String[] words = split(arguments, 5, "add HH:MM line track number destination");
+    int minutes = parseTime(words[0]);
+    int track = "-".equals(words[2]) ? -1 : parseTrack(words[2]);
+    int trainNumber = "-".equals(words[3]) ? -1 : parseNumber(words[3], "train number");
+    TrainDeparture trainDeparture = new TrainDeparture(trainNumber,
+        new int[]{minutes / 60, minutes % 60}, words[1], words[4], track);
+    refuseConflicts(track, departureRegistry.tryAdd(trainDeparture));
+    appendDeparture(trainDeparture);
+  }
+
+  /**
+   * Runs {@code delay number minutes|HH:MM}.
+   */
+  private void delay(String arguments) {
+    String[] words = split(arguments, 2, "delay number minutes");
+    TrainDeparture trainDeparture = getDeparture(words[0]);
+    int delayMinutes = words[1].indexOf(':') >= 0
+        ? parseTime(words[1])
+        : parseNumber(words[1], "delay");
+    if (TrainDeparture.checkDelayMinutes(delayMinutes) != delayMinutes) {
+      throw new IllegalArgumentException("Delay must be under 24 hours: " + words[1]);
+    }
+    delayPropagation.setDelay(trainDeparture.getTrainNumber(), delayMinutes);
+  }
+
+  /**
+   * Runs {@code depend number number minutes [kind]}.
+   */
+  private void depend(String arguments) {
+    String[] words = words(arguments, 4);
+    if (words.length < 3) {
+      throw new IllegalArgumentException("Usage: depend number number minutes [kind]");
+    }
+    TrainDeparture trainDeparture = getDeparture(words[0]);
+    TrainDeparture dependsOn = getDeparture(words[1]);
+    int minutes = parseNumber(words[2], "minutes");
+    DelayPropagation.Kind kind = switch (words.length == 4 ? words[3].strip() : "stock") {
+      case "stock" -> DelayPropagation.Kind.ROLLING_STOCK;
+      case "connection" -> DelayPropagation.Kind.CONNECTION;
+      case "track" -> DelayPropagation.Kind.TRACK;
+      default -> throw new IllegalArgumentException("Not a valid kind: " + words[3]);
+    };
+    delayPropagation.addDependency(trainDeparture.getTrainNumber(),
+        dependsOn.getTrainNumber(), minutes, kind);
+  }
+
+  /**
+   * Runs {@code track number track}.
+   */
+  private void track(String arguments) {
+    String[] words = split(arguments, 2, "track number track");
+    TrainDeparture trainDeparture = getDeparture(words[0]);
+    int track = parseTrack(words[1]);
+    refuseConflicts(track, departureRegistry.trySetTrack(trainDeparture, track));
+  }
+
+  /**
+   * Fails the command if a track was refused for the departures that occupy it.
+   */
+  private static void refuseConflicts(int track, List<TrainDeparture> conflicts) {
+    if (!conflicts.isEmpty()) {
+      StringBuilder message = new StringBuilder("Track ").append(track)
+          .append(" is taken at that time by");
+      for (TrainDeparture conflict : conflicts) {
+        message.append(' ').append(conflict.getTrainNumber());
+      }
+      throw new IllegalArgumentException(message.toString());
+    }
+  }
+
+  /**
+   * Runs {@code destination number destination}.
+   */
+  private void destination(String arguments) {
+    String[] words = split(arguments, 2, "destination number destination");
+    departureRegistry.setDestination(getDeparture(words[0]), words[1]);
+  }
+
+  /**
+   * Runs {@code plan HH:MM HH:MM}.
+   */
+  private void plan(String arguments) {
+    String[] words = split(arguments, 2, "plan HH:MM HH:MM");
+    TrackPlanner trackPlanner = new TrackPlanner(departureRegistry);
+    TrackPlanner.Plan plan = trackPlanner.plan(parseTime(words[0]), parseTime(words[1]));
+    trackPlanner.apply(plan);
+    for (int i = 0; i < plan.size(); i++) {
+      if (plan.getTrack(i) != plan.getPreviousTrack(i)) {
+        TrainDeparture trainDeparture = departureRegistry.get(plan.getTrainNumber(i));
+        if (trainDeparture != null) {
+          appendDeparture(trainDeparture);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs {@code board [limit]}.
+   */
+  private void board(String arguments) {
+    int limit = arguments.isEmpty() ? Integer.MAX_VALUE : parseNumber(arguments, "limit");
+    appendDepartures(departureRegistry.nextDepartures(currentTime, limit));
+  }
+
+  /**
+   * Runs {@code query [condition ...]}.
+   */
+  private void query(String arguments) {
+    DepartureQuery query = DepartureQuery.all();
+    int effectiveFrom = Integer.MIN_VALUE;
+    int effectiveTo = Integer.MAX_VALUE;
+    int scheduledFrom = Integer.MIN_VALUE;
+    int scheduledTo = Integer.MAX_VALUE;
+    // A text of n characters has at most n words, so no word is left holding the rest of it
+    for (String condition : words(arguments, arguments.length())) {
+      int equals = condition.indexOf('=');
+      if (equals < 0 && "delayed".equals(condition)) {
+        query = query.delayedOnly();
+        continue;
+      }
+      if (equals <= 0 || equals == condition.length() - 1) {
+        throw new IllegalArgumentException("Not a valid condition: " + condition);
+      }
+      String value = condition.substring(equals + 1);
+      switch (condition.substring(0, equals)) {
+        case "line" -> query = query.line(value);
+        case "destination" -> query = query.destination(value);
+        case "track" -> query = query.track(parseTrack(value));
+        case "from" -> effectiveFrom = parseTime(value);
+        case "to" -> effectiveTo = parseTime(value);
+        case "scheduled-from" -> scheduledFrom = parseTime(value);
+        case "scheduled-to" -> scheduledTo = parseTime(value);
+        case "sort" -> query = query.orderBy(switch (value) {
+          case "time" -> DepartureQuery.Order.EFFECTIVE_TIME;
+          case "scheduled" -> DepartureQuery.Order.SCHEDULED_TIME;
+          case "delay" -> DepartureQuery.Order.DELAY;
+          case "number" -> DepartureQuery.Order.TRAIN_NUMBER;
+          default -> throw new IllegalArgumentException("Not a valid order: " + value);
+        });
+        case "limit" -> query = query.limit(parseNumber(value, "limit"));
+        default -> throw new IllegalArgumentException("Not a valid condition: " + condition);
+      }
+    }
+    if (effectiveFrom != Integer.MIN_VALUE || effectiveTo != Integer.MAX_VALUE) {
+      query = query.effectiveBetween(effectiveFrom, effectiveTo);
+    }
+    if (scheduledFrom != Integer.MIN_VALUE || scheduledTo != Integer.MAX_VALUE) {
+      query = query.scheduledBetween(scheduledFrom, scheduledTo);
+    }
+    for (DepartureRecord record : departureRegistry.query(query)) {
+      appendDeparture(record.trainNumber(), record.effectiveMinutes(), record.delayMinutes(),
+          record.line(), record.track(), record.destination());
+    }
+  }
+
+  /**
+   * Splits the arguments of a command into an exact number of words, where the last word is the
+   * rest of the line.
+   */
+  private static String[] split(String arguments, int count, String usage) {
+    String[] words = words(arguments, count);
+    if (words.length != count || words[count - 1].isEmpty()) {
+      throw new IllegalArgumentException("Usage: " + usage);
+    }
+    return words;
+  }
+
+  /**
+   * Splits text at runs of whitespace into at most {@code limit} words, where the last word is
+   * the rest of the text. Like {@link String#split(String, int)} with {@code "\\s+"}, without
+   * a regular expression.
+   */
+  private static String[] words(String text, int limit) {
+    String[] words = new String[limit];
+    int count = 0;
+    int start = 0;
+    int length = text.length();
+    while (start < length && count < limit) {
+      if (count == limit - 1) {
+        words[count++] = text.substring(start);
+        break;
+      }
+      int end = start;
+      while (end < length && !Character.isWhitespace(text.charAt(end))) {
+        end++;
+      }
+      words[count++] = text.substring(start, end);
+      start = end;
+      while (start < length && Character.isWhitespace(text.charAt(start))) {
+        start++;
+      }
+    }
+    return count == limit ? words : Arrays.copyOf(words, count);
+  }
+
+  /**
+   * Gets the registered departure with the train number in the text.
+   */
+  private TrainDeparture getDeparture(String text) {
+    int trainNumber = parseNumber(text.strip(), "train number");
+    TrainDeparture trainDeparture = departureRegistry.get(trainNumber);
+    if (trainDeparture == null) {
+      throw new IllegalArgumentException("No departure with train number " + trainNumber);
+    }
+    return trainDeparture;
+  }
+
+  /**
+   * Parses a track, which must be between 1 and 99.
+   */
+  private static int parseTrack(String text) {
+    int track = parseNumber(text, "track");
+    if (TrainDeparture.checkTrack(track) != track) {
+      throw new IllegalArgumentException("Track must be between 1 and 99: " + text);
+    }
+    return track;
+  }
+
+  /**
+   * Parses a non-negative number.
+   */
+  private static int parseNumber(String text, String name) {
+    try {
+      int number = Integer.parseInt(text);
+      if (number >= 0) {
+        return number;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new IllegalArgumentException("Not a valid " + name + ": " + text);
+  }
+
+  /**
+   * Parses a time written as HH:MM to minutes after midnight.
+   */
+  private static int parseTime(String text) {
+    int colon = text.indexOf(':');
+    if (colon > 0) {
+      try {
+        int hour = Integer.parseInt(text, 0, colon, 10);
+        int minute = Integer.parseInt(text, colon + 1, text.length(), 10);
+        if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+          return hour * 60 + minute;
+        }
+      } catch (NumberFormatException e) {
+        // Reported below
+      }
+    }
+    throw new IllegalArgumentException("Not a valid time, expected HH:MM: " + text);
+  }
+
+  /**
+   * Appends a departure line for every departure.
+   */
+  private void appendDepartures(List<TrainDeparture> trainDepartures) {
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      appendDeparture(trainDeparture);
+    }
+  }
+
+  /**
+   * Appends one departure line.
+   */
+  private void appendDeparture(TrainDeparture trainDeparture) {
+    appendDeparture(trainDeparture.getTrainNumber(), trainDeparture.getEffectiveMinutes(),
+        trainDeparture.getDelayMinutes(), trainDeparture.getLine(), trainDeparture.getTrack(),
+        trainDeparture.getDestination());
+  }
+
+  /**
+   * Appends one departure line from its fields.
+   */
+  private void appendDeparture(int trainNumber, int effectiveMinutes, int delayMinutes,
+      String line, int track, String destination) {
+    int minutes = effectiveMinutes % (24 * 60);
+    result.append("departure\t")
+        .append(trainNumber).append('\t');
+    if (minutes / 60 < 10) {
+      result.append('0');
+    }
+    result.append(minutes / 60).append(':');
+    if (minutes % 60 < 10) {
+      result.append('0');
+    }
+    result.append(minutes % 60).append('\t')
+        .append(delayMinutes).append('\t')
+        .append(line).append('\t')
+        .append(track).append('\t')
+        .append(destination).append('\n');
+  }
+}
@@ -0,0 +1,310 @@
+package dev.jonas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The {@code BoardRenderer} class draws the departure board to a terminal, and only redraws the
+ * lines that changed since the last frame.
+ *
+ * <p>The renderer keeps the text of every line of the previous frame. Each frame is built line by
+ * line into one reused {@link FormatBuffer}, and a line that is equal to the line already on
+ * screen is skipped. A changed line is written with an ANSI escape code that moves the cursor to
+ * it, followed by an escape code that clears the rest of the line, so a delayed train, a new
+ * track or a departed train only rewrites its own line. The whole frame is then written as UTF-8
+ * bytes and flushed at once. Line names and destinations are encoded once per name and kept, so
+ * drawing a frame makes no objects once the buffers have grown to fit the board.
+ *
+ * <p>The first frame, and the first frame after {@link #invalidate()}, clears the screen and draws
+ * every line.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     BoardRenderer renderer = new BoardRenderer(System.out, 20);
+ *     renderer.render(currentTime, registry.nextDepartures(currentTime, 20));
+ *     registry.setDelayMinutes(601, 5);
+ *     renderer.render(currentTime, registry.nextDepartures(currentTime, 20));  // Redraws two lines
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class BoardRenderer {
+
+  /**
+   * Number of characters the destination is padded to.
+   *
+   * @since 1.3.0
+   */
+  public static final int DESTINATION_WIDTH = 17;
+
+  // Lines above the first departure
+  private static final int HEADER_LINES = 6;
+  private static final String CLEAR_SCREEN = "\033[H\033[2J";
+  private static final String CLEAR_LINE = "\033[K";
+  private static final Metrics.Timer RENDER_TIMER = Metrics.DEFAULT.timer("board.render");
+
+  private final OutputStream out;
+  private final int maxRows;
+  // The frame to write, reused for every frame
+  private final FormatBuffer frame;
+  // The line being built, reused for every line
+  private final FormatBuffer line;
+  // UTF-8 bytes of every line on screen, and the number of bytes
+  private byte[][] screen;
+  private int[] screenLengths;
+  private int screenLines;
+  private boolean valid;
+  // UTF-8 bytes of every line name, and of every destination padded, by symbol id
+  private byte[][] lineBytes;
+  private byte[][] destinationBytes;
+
+  /**
+   * Constructs a renderer that shows every departure it is given.
+   *
+   * @param out Stream to draw to. Cannot be null.
+   * @since 1.3.0
+   */
+  public BoardRenderer(OutputStream out) {
+    this(out, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Constructs a renderer that shows at most the given number of departures.
+   *
+   * @param out Stream to draw to. Cannot be null.
+   * @param maxRows Most departures to show. Must be positive.
+   * @throws IllegalArgumentException if {@code maxRows} is not positive.
+   * @since 1.3.0
+   */
+  public BoardRenderer(OutputStream out, int maxRows) {
+    if (maxRows <= 0) {
+      throw new IllegalArgumentException("Board must have at least one row, was " + maxRows);
+    }
+    this.out = out;
+    this.maxRows = maxRows;
+    frame = new FormatBuffer(4096);
+    line = new FormatBuffer(64);
+    screen = new byte[HEADER_LINES + 16][];
+    screenLengths = new int[HEADER_LINES + 16];
+    screenLines = 0;
+    valid = false;
+    lineBytes = new byte[16][];
+    destinationBytes = new byte[16][];
+  }
+
+  /**
+   * Draws one frame of the board. Only lines that differ from the previous frame are written.
+   *
+   * @param currentMinutes Time shown in the header, in minutes after midnight.
+   * @param trainDepartures Departures to show, in the order they should be shown.
+   * @return Number of lines written, including lines that were cleared.
+   * @throws UncheckedIOException if the stream could not be written.
+   * @since 1.3.0
+   */
+  public int render(int currentMinutes, Collection<? extends TrainDeparture> trainDepartures) {
+    Metrics.Sample sample = RENDER_TIMER.start();
+    try {
+      int written = beginFrame(currentMinutes);
+      int lineNumber = HEADER_LINES;
+      for (TrainDeparture trainDeparture : trainDepartures) {
+        if (lineNumber - HEADER_LINES == maxRows) {
+          break;
+        }
+        written += putRow(lineNumber++, trainDeparture.getEffectiveMinutes(),
+            trainDeparture.getLineId(), trainDeparture.getDestinationId(),
+            trainDeparture.getTrack());
+      }
+      return written + endFrame(lineNumber);
+    } finally {
+      sample.stop();
+    }
+  }
+
+  /**
+   * Draws one frame of the board from records, such as those of a {@link BoardView}. Only lines
+   * that differ from the previous frame are written.
+   *
+   * @param currentMinutes Time shown in the header, in minutes after midnight.
+   * @param records Departures to show, in the order they should be shown.
+   * @return Number of lines written, including lines that were cleared.
+   * @throws UncheckedIOException if the stream could not be written.
+   * @since 1.3.0
+   */
+  public int renderRecords(int currentMinutes, Collection<DepartureRecord> records) {
+    Metrics.Sample sample = RENDER_TIMER.start();
+    try {
+      int written = beginFrame(currentMinutes);
+      int lineNumber = HEADER_LINES;
+      for (DepartureRecord record : records) {
+        if (lineNumber - HEADER_LINES == maxRows) {
+          break;
+        }
+        written += putRow(lineNumber++, record.effectiveMinutes(), record.lineId(),
+            record.destinationId(), record.track());
+      }
+      return written + endFrame(lineNumber);
+    } finally {
+      sample.stop();
+    }
+  }
+
+  /**
+   * Forgets what is on screen, so the next frame clears the screen and draws every line. Must be
+   * called when something else has written to the screen.
+   *
+   * @since 1.3.0
+   */
+  public void invalidate() {
+    valid = false;
+  }
+
+  /**
+   * Starts a frame, clearing the screen if it is not valid, and adds the header.
+   *
+   * @return Number of lines written.
+   */
+  private int beginFrame(int currentMinutes) {
+    frame.clear();
+    if (!valid) {
+      frame.append(CLEAR_SCREEN);
+      screenLines = 0;
+    }
+
+    int written = 0;
+    line.clear().append("Train Dispatch System 1.0");
+    written += putLine(0);
+    line.clear();
+    written += putLine(1);
+    line.clear().append("Train departures");
+    written += putLine(2);
+    line.clear();
+    written += putLine(3);
+    line.clear().append("AVGANGER Departures      SPOR Track      ").appendTime(currentMinutes);
+    written += putLine(4);
+    line.clear();
+    written += putLine(5);
+    return written;
+  }
+
+  /**
+   * Adds the line of one departure to the frame.
+   *
+   * @return 1 if the line was added, 0 if it was already on screen.
+   */
+  private int putRow(int lineNumber, int effectiveMinutes, int lineId, int destinationId,
+      int track) {
+    line.clear()
+        .appendTime(effectiveMinutes)
+        .append(' ')
+        .append(lineBytes(lineId))
+        .append(' ')
+        .append(destinationBytes(destinationId))
+        .append(' ')
+        .appendInt(track);
+    return putLine(lineNumber);
+  }
+
+  /**
+   * Clears lines of departures that are no longer shown, and writes the frame.
+   *
+   * @return Number of lines cleared.
+   */
+  private int endFrame(int lineNumber) {
+    int cleared = 0;
+    for (int i = lineNumber; i < screenLines; i++) {
+      moveTo(i);
+      frame.append(CLEAR_LINE);
+      cleared++;
+    }
+    screenLines = lineNumber;
+    valid = true;
+
+    // Leaves the cursor under the board, so later output does not overwrite it
+    moveTo(lineNumber);
+    try {
+      frame.writeTo(out);
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return cleared;
+  }
+
+  /**
+   * Adds the line being built to the frame if it differs from the line on screen, and remembers
+   * it.
+   *
+   * @return 1 if the line was added, 0 if it was already on screen.
+   */
+  private int putLine(int lineNumber) {
+    ensureCapacity(lineNumber + 1);
+    if (lineNumber < screenLines
+        && line.contentEquals(screen[lineNumber], screenLengths[lineNumber])) {
+      return 0;
+    }
+    screen[lineNumber] = line.copyTo(screen[lineNumber]);
+    screenLengths[lineNumber] = line.length();
+
+    moveTo(lineNumber);
+    frame.append(line).append(CLEAR_LINE);
+    return 1;
+  }
+
+  /**
+   * Gets the UTF-8 bytes of a line name, encoding it the first time it is seen.
+   */
+  private byte[] lineBytes(int lineId) {
+    if (lineId >= lineBytes.length) {
+      lineBytes = Arrays.copyOf(lineBytes, Math.max(lineId + 1, lineBytes.length * 2));
+    }
+    byte[] bytes = lineBytes[lineId];
+    if (bytes == null) {
+      bytes = new FormatBuffer(16).append(SymbolTable.LINES.get(lineId)).toByteArray();
+      lineBytes[lineId] = bytes;
+    }
+    return bytes;
+  }
+
+  /**
+   * Gets the UTF-8 bytes of a destination padded to {@link #DESTINATION_WIDTH}, encoding it the
+   * first time it is seen.
+   */
+  private byte[] destinationBytes(int destinationId) {
+    if (destinationId >= destinationBytes.length) {
+      destinationBytes = Arrays.copyOf(destinationBytes,
+          Math.max(destinationId + 1, destinationBytes.length * 2));
+    }
+    byte[] bytes = destinationBytes[destinationId];
+    if (bytes == null) {
+      bytes = new FormatBuffer(32)
+          .appendPadded(SymbolTable.DESTINATIONS.get(destinationId), DESTINATION_WIDTH)
+          .toByteArray();
+      destinationBytes[destinationId] = bytes;
+    }
+    return bytes;
+  }
+
+  /**
+   * Adds an escape code to the frame that moves the cursor to the start of a line, counted from 0.
+   */
+  private void moveTo(int lineNumber) {
+    frame.append('\033').append('[').appendInt(lineNumber + 1).append(";1H");
+  }
+
+  /**
+   * Grows the arrays of lines on screen to hold at least the given number of lines.
+   */
+  private void ensureCapacity(int lines) {
+    if (lines > screen.length) {
+      int capacity = Math.max(lines, screen.length * 2);
+      screen = Arrays.copyOf(screen, capacity);
+      screenLengths = Arrays.copyOf(screenLengths, capacity);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package dev.jonas;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The {@code BoardView} class keeps its own sorted list of the departures a {@link Subscription}
+ * sees, kept current by the events of the subscription.
+ *
+ * <p>A display subscribes with a view, and reads the view whenever it draws, without asking the
+ * registry again. Each event moves at most one departure, in O(log n). A display thread can wait
+ * for the view to change with {@link #awaitChange(long, long)}, so it only redraws after changes.
+ * Departures at the same effective time are sorted by train number.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     BoardView view = new BoardView();
+ *     try (Subscription subscription = registry.subscribe(DepartureFilter.track(2), view)) {
+ *       long seen = -1;
+ *       while (running) {
+ *         seen = view.awaitChange(seen, 1000);
+ *         renderer.renderRecords(currentTime, view.getDepartures(20));
+ *       }
+ *     }
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class BoardView implements Consumer<DepartureEvent> {
+
+  // Departures sorted by effective time, then train number
+  private final TreeMap<Long, DepartureRecord> departures;
+  // The key each train number is stored under
+  private final Map<Integer, Long> keys;
+  // A lock that lets a waiting virtual thread give up its carrier thread
+  private final ReentrantLock lock;
+  private final Condition changed;
+  private long changes;
+
+  /**
+   * Constructs an empty view.
+   *
+   * @since 1.3.0
+   */
+  public BoardView() {
+    departures = new TreeMap<>();
+    keys = new HashMap<>();
+    lock = new ReentrantLock();
+    changed = lock.newCondition();
+    changes = 0;
+  }
+
+  /**
+   * Applies an event to the view, and wakes every thread waiting for a change.
+   *
+   * @param event Event of the subscription. Cannot be null.
+   * @since 1.3.0
+   */
+  @Override
+  public void accept(DepartureEvent event) {
+    lock.lock();
+    try {
+      Long oldKey = keys.remove(event.trainNumber());
+      if (oldKey != null) {
+        departures.remove(oldKey);
+      }
+      DepartureRecord current = event.current();
+      if (current != null) {
+        long key = ((long) current.effectiveMinutes() << 32)
+            | (current.trainNumber() & 0xFFFFFFFFL);
+        departures.put(key, current);
+        keys.put(current.trainNumber(), key);
+      }
+      changes++;
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the first departures of the view.
+   *
+   * @param limit Maximum number of departures to return.
+   * @return List of at most {@code limit} departures, sorted by effective time.
+   * @since 1.3.0
+   */
+  public List<DepartureRecord> getDepartures(int limit) {
+    lock.lock();
+    try {
+      List<DepartureRecord> result = new ArrayList<>(Math.min(limit, departures.size()));
+      for (DepartureRecord record : departures.values()) {
+        if (result.size() >= limit) {
+          break;
+        }
+        result.add(record);
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of departures in the view.
+   *
+   * @return Number of departures.
+   * @since 1.3.0
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return departures.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of events applied to the view so far.
+   *
+   * @return Number of events.
+   * @since 1.3.0
+   */
+  public long getChanges() {
+    lock.lock();
+    try {
+      return changes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the view has applied more events than the given number, or the time runs out.
+   *
+   * @param seenChanges Number of events already seen, from an earlier call.
+   * @param timeoutMillis Most time to wait, in milliseconds.
+   * @return Number of events applied so far.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   * @since 1.3.0
+   */
+  public long awaitChange(long seenChanges, long timeoutMillis) throws InterruptedException {
+    long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    lock.lock();
+    try {
+      while (changes == seenChanges && remaining > 0) {
+        remaining = changed.awaitNanos(remaining);
+      }
+      return changes;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
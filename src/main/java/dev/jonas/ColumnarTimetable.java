@@ -0,0 +1,461 @@
+package dev.jonas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code ColumnarTimetable} class stores a large number of departures in parallel primitive
+ * arrays instead of one {@link TrainDeparture} object per departure.
+ *
+ * <p>Every departure is a row. Train number, scheduled time, delay and track are kept in their
+ * own arrays, and
+ * line and destination are stored as ids in {@link SymbolTable#LINES} and
+ * {@link SymbolTable#DESTINATIONS}, so each row only stores the id of the string.
+ * Scanning a column reads one contiguous array, which is a lot friendlier to the cache than
+ * following a reference per departure.
+ *
+ * <p>Rows can be handed to code that expects a {@link TrainDeparture} through
+ * {@link #view(int)}. A view stores nothing but its row number, and reads and writes straight
+ * through to the columns.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     ColumnarTimetable timetable = new ColumnarTimetable();
+ *     int row = timetable.add(16 * 60 + 37, "L1", "Oslo S", 1);
+ *     TrainDeparture trainDeparture = timetable.view(row);
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class ColumnarTimetable {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  // One element per row in each column
+  private int[] trainNumbers;
+  private int[] scheduledMinutes;
+  private int[] delayMinutes;
+  private byte[] tracks;
+  private int[] lineIds;
+  private int[] destinationIds;
+  private int size;
+
+  /**
+   * Constructs a new, empty {@code ColumnarTimetable}.
+   *
+   * @since 1.3.0
+   */
+  public ColumnarTimetable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Constructs a new, empty {@code ColumnarTimetable} with room for a number of rows before the
+   * columns have to grow.
+   *
+   * @param capacity Expected number of rows. Cannot be negative.
+   * @since 1.3.0
+   */
+  public ColumnarTimetable(int capacity) {
+    trainNumbers = new int[capacity];
+    scheduledMinutes = new int[capacity];
+    delayMinutes = new int[capacity];
+    tracks = new byte[capacity];
+    lineIds = new int[capacity];
+    destinationIds = new int[capacity];
+    size = 0;
+  }
+
+  /**
+   * Adds a departure without delay as a new row.
+   *
+   * @param scheduledMinutes Scheduled time in minutes after midnight.
+   * @param line Scheduled line of train. Null is stored as empty.
+   * @param destination End-destination of train. Null is stored as empty.
+   * @param track Number of the departure-track. Stored as -1 if not between 1 and 99.
+   * @return Row number of the new departure.
+   * @since 1.3.0
+   */
+  public int add(int scheduledMinutes, String line, String destination, int track) {
+    return add(-1, scheduledMinutes, line, destination, track);
+  }
+
+  /**
+   * Adds a departure with a train number and without delay as a new row.
+   *
+   * @param trainNumber Number identifying the train. Stored as -1 if not positive.
+   * @param scheduledMinutes Scheduled time in minutes after midnight.
+   * @param line Scheduled line of train. Null is stored as empty.
+   * @param destination End-destination of train. Null is stored as empty.
+   * @param track Number of the departure-track. Stored as -1 if not between 1 and 99.
+   * @return Row number of the new departure.
+   * @since 1.3.0
+   */
+  public int add(int trainNumber, int scheduledMinutes, String line, String destination,
+      int track) {
+    if (size == this.scheduledMinutes.length) {
+      grow();
+    }
+    int row = size++;
+    setTrainNumber(row, trainNumber);
+    this.scheduledMinutes[row] = scheduledMinutes;
+    this.delayMinutes[row] = 0;
+    setTrack(row, track);
+    setLine(row, line);
+    setDestination(row, destination);
+    return row;
+  }
+
+  /**
+   * Adds a departure without delay as a new row, with line and destination given as ids in
+   * {@link SymbolTable#LINES} and {@link SymbolTable#DESTINATIONS}. Used by bulk loaders that
+   * have already looked up the ids.
+   *
+   * @param trainNumber Number identifying the train. Stored as -1 if not positive.
+   * @param scheduledMinutes Scheduled time in minutes after midnight.
+   * @param lineId Id of the line.
+   * @param destinationId Id of the destination.
+   * @param track Number of the departure-track. Stored as -1 if not between 1 and 99.
+   * @return Row number of the new departure.
+   * @since 1.3.0
+   */
+  public int addWithIds(int trainNumber, int scheduledMinutes, int lineId, int destinationId,
+      int track) {
+    int row = add(trainNumber, scheduledMinutes, "", "", track);
+    lineIds[row] = lineId;
+    destinationIds[row] = destinationId;
+    return row;
+  }
+
+  /**
+   * Gets the number of rows in the timetable.
+   *
+   * @return Number of departures.
+   * @since 1.3.0
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the train number of a row.
+   *
+   * @param row Row number.
+   * @return Positive train number, or -1 if undeclared.
+   * @since 1.3.0
+   */
+  public int getTrainNumber(int row) {
+    return trainNumbers[checkRow(row)];
+  }
+
+  /**
+   * Sets the train number of a row. Set to -1 if not positive.
+   *
+   * @param row Row number.
+   * @param trainNumber Train number.
+   * @since 1.3.0
+   */
+  public void setTrainNumber(int row, int trainNumber) {
+    trainNumbers[checkRow(row)] = trainNumber > 0 ? trainNumber : -1;
+  }
+
+  /**
+   * Gets the scheduled departure-time of a row.
+   *
+   * @param row Row number.
+   * @return Scheduled time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public int getScheduledMinutes(int row) {
+    return scheduledMinutes[checkRow(row)];
+  }
+
+  /**
+   * Sets the scheduled departure-time of a row.
+   *
+   * @param row Row number.
+   * @param minutes Scheduled time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public void setScheduledMinutes(int row, int minutes) {
+    scheduledMinutes[checkRow(row)] = minutes;
+  }
+
+  /**
+   * Gets the delay of a row.
+   *
+   * @param row Row number.
+   * @return Delay in minutes.
+   * @since 1.3.0
+   */
+  public int getDelayMinutes(int row) {
+    return delayMinutes[checkRow(row)];
+  }
+
+  /**
+   * Sets the delay of a row. Must be under 24 hours and not negative, otherwise the delay is set
+   * to 0.
+   *
+   * @param row Row number.
+   * @param minutes Delay in minutes.
+   * @since 1.3.0
+   */
+  public void setDelayMinutes(int row, int minutes) {
+    delayMinutes[checkRow(row)] = TrainDeparture.checkDelayMinutes(minutes);
+  }
+
+  /**
+   * Gets the effective departure-time of a row, which is the scheduled time with the delay added.
+   *
+   * @param row Row number.
+   * @return Effective departure-time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public int getEffectiveMinutes(int row) {
+    checkRow(row);
+    return scheduledMinutes[row] + delayMinutes[row];
+  }
+
+  /**
+   * Gets the track of a row.
+   *
+   * @param row Row number.
+   * @return Track between 1 and 99, or -1 if undeclared.
+   * @since 1.3.0
+   */
+  public int getTrack(int row) {
+    return tracks[checkRow(row)];
+  }
+
+  /**
+   * Sets the track of a row. Set to -1 if not between 1 and 99.
+   *
+   * @param row Row number.
+   * @param track Track of departure.
+   * @since 1.3.0
+   */
+  public void setTrack(int row, int track) {
+    tracks[checkRow(row)] = (byte) TrainDeparture.checkTrack(track);
+  }
+
+  /**
+   * Gets the line of a row.
+   *
+   * @param row Row number.
+   * @return Line of train as a full or empty string.
+   * @since 1.3.0
+   */
+  public String getLine(int row) {
+    return SymbolTable.LINES.get(lineIds[checkRow(row)]);
+  }
+
+  /**
+   * Gets the id of the line of a row in {@link SymbolTable#LINES}.
+   *
+   * @param row Row number.
+   * @return Id of the line.
+   * @since 1.3.0
+   */
+  public int getLineId(int row) {
+    return lineIds[checkRow(row)];
+  }
+
+  /**
+   * Sets the line of a row. If null, line is set to empty.
+   *
+   * @param row Row number.
+   * @param line Scheduled line of train.
+   * @since 1.3.0
+   */
+  public void setLine(int row, String line) {
+    lineIds[checkRow(row)] = SymbolTable.LINES.idOf(line);
+  }
+
+  /**
+   * Gets the destination of a row.
+   *
+   * @param row Row number.
+   * @return End-destination of train, or empty if not declared.
+   * @since 1.3.0
+   */
+  public String getDestination(int row) {
+    return SymbolTable.DESTINATIONS.get(destinationIds[checkRow(row)]);
+  }
+
+  /**
+   * Gets the id of the destination of a row in {@link SymbolTable#DESTINATIONS}.
+   *
+   * @param row Row number.
+   * @return Id of the destination.
+   * @since 1.3.0
+   */
+  public int getDestinationId(int row) {
+    return destinationIds[checkRow(row)];
+  }
+
+  /**
+   * Sets the destination of a row. If null, destination is set to empty.
+   *
+   * @param row Row number.
+   * @param destination End-destination of train.
+   * @since 1.3.0
+   */
+  public void setDestination(int row, String destination) {
+    destinationIds[checkRow(row)] = SymbolTable.DESTINATIONS.idOf(destination);
+  }
+
+  /**
+   * Gets a {@link TrainDeparture} that reads and writes the given row. The view holds no fields
+   * of its own, so changes through the view are seen by the timetable and the other way around.
+   *
+   * @param row Row number.
+   * @return View of the row.
+   * @since 1.3.0
+   */
+  public TrainDeparture view(int row) {
+    return new Row(checkRow(row));
+  }
+
+  /**
+   * Gets a view of every row, in row order.
+   *
+   * @return List of views. Never null.
+   * @see #view(int)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> views() {
+    List<TrainDeparture> views = new ArrayList<>(size);
+    for (int row = 0; row < size; row++) {
+      views.add(new Row(row));
+    }
+    return views;
+  }
+
+  /**
+   * Gets every row number sorted by effective departure-time. Rows with the same effective time
+   * keep their row order. Sorts primitive keys, so no object is made per row.
+   *
+   * @return Row numbers in departure order.
+   * @since 1.3.0
+   */
+  public int[] rowsByEffectiveTime() {
+    // Effective time in the upper 32 bits, row number in the lower 32 bits
+    long[] keys = new long[size];
+    for (int row = 0; row < size; row++) {
+      keys[row] = ((long) (scheduledMinutes[row] + delayMinutes[row]) << 32) | row;
+    }
+    Arrays.sort(keys);
+
+    int[] rows = new int[size];
+    for (int i = 0; i < size; i++) {
+      rows[i] = (int) keys[i];
+    }
+    return rows;
+  }
+
+  /**
+   * Checks that a row exists.
+   *
+   * @param row Row number.
+   * @return The same row number.
+   * @throws IndexOutOfBoundsException if the row does not exist.
+   */
+  private int checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+    }
+    return row;
+  }
+
+  /**
+   * Doubles the capacity of every column.
+   */
+  private void grow() {
+    int capacity = Math.max(DEFAULT_CAPACITY, scheduledMinutes.length * 2);
+    trainNumbers = Arrays.copyOf(trainNumbers, capacity);
+    scheduledMinutes = Arrays.copyOf(scheduledMinutes, capacity);
+    delayMinutes = Arrays.copyOf(delayMinutes, capacity);
+    tracks = Arrays.copyOf(tracks, capacity);
+    lineIds = Arrays.copyOf(lineIds, capacity);
+    destinationIds = Arrays.copyOf(destinationIds, capacity);
+  }
+
+  /**
+   * A {@link TrainDeparture} that reads and writes one row of the timetable.
+   */
+  private final class Row extends TrainDeparture {
+    private final int row;
+
+    /**
+     * Constructs a view of a row.
+     */
+    Row(int row) {
+      super(false);
+      this.row = row;
+    }
+
+    @Override
+    public int getTrainNumber() {
+      return ColumnarTimetable.this.getTrainNumber(row);
+    }
+
+    @Override
+    public void setTrainNumber(int trainNumber) {
+      ColumnarTimetable.this.setTrainNumber(row, trainNumber);
+    }
+
+    @Override
+    public int getScheduledMinutes() {
+      return ColumnarTimetable.this.getScheduledMinutes(row);
+    }
+
+    @Override
+    public void setScheduledMinutes(int departureMinutes) {
+      ColumnarTimetable.this.setScheduledMinutes(row, departureMinutes);
+    }
+
+    @Override
+    public int getDelayMinutes() {
+      return ColumnarTimetable.this.getDelayMinutes(row);
+    }
+
+    @Override
+    public void setDelayMinutes(int delayMinutes) {
+      ColumnarTimetable.this.setDelayMinutes(row, delayMinutes);
+    }
+
+    @Override
+    public int getLineId() {
+      return ColumnarTimetable.this.getLineId(row);
+    }
+
+    @Override
+    public void setLine(String line) {
+      ColumnarTimetable.this.setLine(row, line);
+    }
+
+    @Override
+    public int getDestinationId() {
+      return ColumnarTimetable.this.getDestinationId(row);
+    }
+
+    @Override
+    public void setDestination(String destination) {
+      ColumnarTimetable.this.setDestination(row, destination);
+    }
+
+    @Override
+    public int getTrack() {
+      return ColumnarTimetable.this.getTrack(row);
+    }
+
+    @Override
+    public void setTrack(int track) {
+      ColumnarTimetable.this.setTrack(row, track);
+    }
+  }
+}
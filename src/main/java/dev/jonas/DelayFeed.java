@@ -0,0 +1,595 @@
+package dev.jonas;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * The {@code DelayFeed} class takes a stream of delay updates from any number of producers, and
+ * applies them to a {@link DepartureRegistry} in batches on a background thread.
+ *
+ * <p>Updates waiting to be applied are kept by train number, and a newer update for the same train
+ * replaces the one waiting, so a train that is updated many times during a batch is only changed
+ * once. The background thread takes every waiting update at once and applies them with
+ * {@link DepartureRegistry#setDelayMinutes(int[], int[], int)}, which locks each lock of the
+ * registry once per batch, and then tells the batch listener, so a board is redrawn once per
+ * batch instead of once per update. A feed constructed with a {@link DelayPropagation} reports
+ * each batch to it with {@link DelayPropagation#setDelays(int[], int[], int)} instead, so the
+ * delays are passed on to the departures that depend on the delayed ones. When as many trains
+ * are waiting as the capacity allows, a producer with an update for another train waits until the
+ * batch has been taken, so producers that outrun the registry are slowed down instead of filling
+ * the memory.
+ *
+ * <p>Updates are read as lines of text, with a train number and a delay separated by whitespace.
+ * The delay is in minutes, or {@code HH:MM}. Blank lines and lines starting with {@code #} are
+ * skipped, and other lines that cannot be read are counted as rejected.
+ * <blockquote><pre>
+ *   601 5
+ *   602 01:10
+ * </pre></blockquote>
+ * Lines can be read from any reader, such as the input of a socket, or from a file that is
+ * followed as it grows.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DelayFeed feed = new DelayFeed(registry, DelayFeed.DEFAULT_CAPACITY, applied -> redraw());
+ *     feed.follow(Path.of("delays.feed"));
+ *     feed.submit(601, 5);
+ *     feed.close();
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class DelayFeed implements Closeable {
+
+  /**
+   * Most trains waiting to be applied before producers wait, unless another capacity is given.
+   *
+   * @since 1.3.0
+   */
+  public static final int DEFAULT_CAPACITY = 8192;
+
+  // Time between each check of a followed file for new lines
+  private static final long FOLLOW_INTERVAL_MILLIS = 100;
+
+  // Registry the updates are applied to, or null if they are reported to the propagation
+  private final DepartureRegistry registry;
+  private final DelayPropagation propagation;
+  private final int capacity;
+  private final IntConsumer batchListener;
+  private final ReentrantLock lock;
+  // Signalled when there is room for another train, when updates are waiting, and when every
+  // waiting update has been applied
+  private final Condition notFull;
+  private final Condition notEmpty;
+  private final Condition idle;
+  private final Thread applier;
+  private final List<Thread> followers;
+  // Latest delay of every train with an update waiting, and an empty map to swap with
+  private Map<Integer, Integer> waiting;
+  private Map<Integer, Integer> spare;
+  private boolean applying;
+  private boolean closed;
+  private RuntimeException failure;
+  private long received;
+  private long coalesced;
+  private long applied;
+  private long rejected;
+  private long batches;
+
+  /**
+   * Constructs a feed with the default capacity and no batch listener, and starts applying
+   * updates.
+   *
+   * @param registry Registry to apply updates to. Cannot be null.
+   * @since 1.3.0
+   */
+  public DelayFeed(DepartureRegistry registry) {
+    this(registry, DEFAULT_CAPACITY, applied -> { });
+  }
+
+  /**
+   * Constructs a feed and starts applying updates.
+   *
+   * @param registry Registry to apply updates to. Cannot be null.
+   * @param capacity Most trains waiting to be applied before producers wait. Must be positive.
+   * @param batchListener Told the number of departures changed after every batch, on the
+   *     background thread. Cannot be null.
+   * @throws IllegalArgumentException if the capacity is not positive.
+   * @since 1.3.0
+   */
+  public DelayFeed(DepartureRegistry registry, int capacity, IntConsumer batchListener) {
+    this(registry, null, capacity, batchListener);
+  }
+
+  /**
+   * Constructs a feed with the default capacity and no batch listener that reports updates to a
+   * propagation, and starts applying updates.
+   *
+   * @param propagation Propagation to report the delays to. Cannot be null.
+   * @since 1.3.0
+   */
+  public DelayFeed(DelayPropagation propagation) {
+    this(propagation, DEFAULT_CAPACITY, applied -> { });
+  }
+
+  /**
+   * Constructs a feed that reports updates to a propagation, and starts applying updates.
+   *
+   * @param propagation Propagation to report the delays to. Cannot be null.
+   * @param capacity Most trains waiting to be applied before producers wait. Must be positive.
+   * @param batchListener Told the number of departures delayed by the feed after every batch, on
+   *     the background thread. Cannot be null.
+   * @throws IllegalArgumentException if the capacity is not positive.
+   * @since 1.3.0
+   */
+  public DelayFeed(DelayPropagation propagation, int capacity, IntConsumer batchListener) {
+    this(null, propagation, capacity, batchListener);
+  }
+
+  /**
+   * Constructs a feed that applies updates to a registry, or reports them to a propagation.
+   */
+  private DelayFeed(DepartureRegistry registry, DelayPropagation propagation, int capacity,
+      IntConsumer batchListener) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+    }
+    this.registry = registry;
+    this.propagation = propagation;
+    this.capacity = capacity;
+    this.batchListener = batchListener;
+    lock = new ReentrantLock();
+    notFull = lock.newCondition();
+    notEmpty = lock.newCondition();
+    idle = lock.newCondition();
+    followers = new ArrayList<>();
+    waiting = new HashMap<>();
+    spare = new HashMap<>();
+    applying = false;
+    closed = false;
+    failure = null;
+
+    applier = new Thread(this::applyUntilClosed, "delay-feed");
+    applier.setDaemon(true);
+    applier.start();
+  }
+
+  /**
+   * Submits the delay of a train, replacing any update of the same train that is still waiting.
+   * Waits while the feed is full, unless the train already has an update waiting.
+   *
+   * @param trainNumber Train number of the departure.
+   * @param delayMinutes Delay in minutes, under 24 hours.
+   * @throws IllegalArgumentException if the delay is not between 0 and 24 hours.
+   * @throws IllegalStateException if the feed is closed.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   * @since 1.3.0
+   */
+  public void submit(int trainNumber, int delayMinutes) throws InterruptedException {
+    if (TrainDeparture.checkDelayMinutes(delayMinutes) != delayMinutes) {
+      throw new IllegalArgumentException("Delay must be under 24 hours, was " + delayMinutes);
+    }
+    lock.lockInterruptibly();
+    try {
+      while (!closed && waiting.size() >= capacity && !waiting.containsKey(trainNumber)) {
+        notFull.await();
+      }
+      if (closed) {
+        throw new IllegalStateException("Delay feed is closed");
+      }
+      received++;
+      if (waiting.put(trainNumber, delayMinutes) != null) {
+        coalesced++;
+      } else if (waiting.size() == 1) {
+        notEmpty.signal();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Reads updates from a reader until it ends, and submits them.
+   *
+   * @param source Reader of update lines. Cannot be null.
+   * @return Number of updates submitted.
+   * @throws IOException if the reader could not be read.
+   * @throws IllegalStateException if the feed is closed.
+   * @throws InterruptedException if the thread is interrupted while waiting for room.
+   * @since 1.3.0
+   */
+  public int read(BufferedReader source) throws IOException, InterruptedException {
+    int submitted = 0;
+    String line;
+    while ((line = source.readLine()) != null) {
+      if (submitLine(line)) {
+        submitted++;
+      }
+    }
+    return submitted;
+  }
+
+  /**
+   * Follows a file on a background thread, like {@code tail -F}, and submits every line written
+   * to it until the feed is closed. The file is read from the start, may be created later, and is
+   * read from the start again if it is truncated.
+   *
+   * @param file File to follow. Cannot be null.
+   * @throws IllegalStateException if the feed is closed.
+   * @since 1.3.0
+   */
+  public void follow(Path file) {
+    Thread follower = new Thread(() -> followUntilInterrupted(file),
+        "delay-feed-follow-" + file.getFileName());
+    follower.setDaemon(true);
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException("Delay feed is closed");
+      }
+      followers.add(follower);
+    } finally {
+      lock.unlock();
+    }
+    follower.start();
+  }
+
+  /**
+   * Waits until every update submitted before the call has been applied.
+   *
+   * @throws IOException if a batch could not be applied.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   * @since 1.3.0
+   */
+  public void flush() throws IOException, InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while ((!waiting.isEmpty() || applying) && applier.isAlive()) {
+        idle.await();
+      }
+      throwIfFailed();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops following files, applies every update that is waiting, and stops the background
+   * thread. Later updates are refused.
+   *
+   * @throws IOException if a batch could not be applied.
+   * @since 1.3.0
+   */
+  @Override
+  public void close() throws IOException {
+    List<Thread> stopped;
+    lock.lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      stopped = new ArrayList<>(followers);
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      for (Thread follower : stopped) {
+        follower.interrupt();
+        follower.join();
+      }
+      applier.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    lock.lock();
+    try {
+      throwIfFailed();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of updates submitted.
+   *
+   * @return Number of updates.
+   * @since 1.3.0
+   */
+  public long getReceived() {
+    lock.lock();
+    try {
+      return received;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of updates that replaced an update of the same train before it was applied.
+   *
+   * @return Number of updates.
+   * @since 1.3.0
+   */
+  public long getCoalesced() {
+    lock.lock();
+    try {
+      return coalesced;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of delays set on registered departures.
+   *
+   * @return Number of delays.
+   * @since 1.3.0
+   */
+  public long getApplied() {
+    lock.lock();
+    try {
+      return applied;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of lines that could not be read, and updates of trains that are not
+   * registered.
+   *
+   * @return Number of updates.
+   * @since 1.3.0
+   */
+  public long getRejected() {
+    lock.lock();
+    try {
+      return rejected;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of batches applied.
+   *
+   * @return Number of batches.
+   * @since 1.3.0
+   */
+  public long getBatches() {
+    lock.lock();
+    try {
+      return batches;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes every waiting update and applies it, until the feed is closed and nothing is waiting.
+   */
+  private void applyUntilClosed() {
+    int[] trainNumbers = new int[64];
+    int[] delays = new int[64];
+    while (true) {
+      Map<Integer, Integer> batch;
+      lock.lock();
+      try {
+        while (waiting.isEmpty() && !closed) {
+          notEmpty.awaitUninterruptibly();
+        }
+        if (waiting.isEmpty()) {
+          idle.signalAll();
+          return;
+        }
+        // Swaps in the empty map, so producers can go on while the batch is applied
+        batch = waiting;
+        waiting = spare;
+        spare = batch;
+        applying = true;
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+
+      int count = batch.size();
+      if (count > trainNumbers.length) {
+        trainNumbers = Arrays.copyOf(trainNumbers, Math.max(count, trainNumbers.length * 2));
+        delays = Arrays.copyOf(delays, trainNumbers.length);
+      }
+      int i = 0;
+      for (Map.Entry<Integer, Integer> update : batch.entrySet()) {
+        trainNumbers[i] = update.getKey();
+        delays[i] = update.getValue();
+        i++;
+      }
+      batch.clear();
+
+      int changed = 0;
+      RuntimeException error = null;
+      try {
+        changed = propagation == null
+            ? registry.setDelayMinutes(trainNumbers, delays, count)
+            : propagation.setDelays(trainNumbers, delays, count);
+        batchListener.accept(changed);
+      } catch (RuntimeException e) {
+        error = e;  // Such as a journal that could not be written
+      }
+
+      lock.lock();
+      try {
+        applying = false;
+        batches++;
+        applied += changed;
+        rejected += count - changed;
+        if (error != null && failure == null) {
+          failure = error;
+        }
+        idle.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Reads a followed file from the start, and keeps reading lines as they are written, until the
+   * thread is interrupted.
+   */
+  private void followUntilInterrupted(Path file) {
+    ByteBuffer chunk = ByteBuffer.allocate(8192);
+    byte[] line = new byte[256];
+    int lineLength = 0;
+    long position = 0;
+    FileChannel channel = null;
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        if (channel == null) {
+          try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+          } catch (NoSuchFileException e) {
+            Thread.sleep(FOLLOW_INTERVAL_MILLIS);  // Waits for the file to be created
+            continue;
+          }
+        }
+        if (channel.size() < position) {
+          position = 0;  // Truncated, so read it from the start again
+          lineLength = 0;
+        }
+        chunk.clear();
+        int read = channel.read(chunk, position);
+        if (read <= 0) {
+          Thread.sleep(FOLLOW_INTERVAL_MILLIS);
+          continue;
+        }
+        position += read;
+
+        // Submits every complete line, and keeps the rest until the line is finished
+        byte[] bytes = chunk.array();
+        for (int i = 0; i < read; i++) {
+          if (bytes[i] == '\n') {
+            submitLine(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+            lineLength = 0;
+          } else {
+            if (lineLength == line.length) {
+              line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = bytes[i];
+          }
+        }
+      }
+    } catch (InterruptedException | ClosedByInterruptException | IllegalStateException e) {
+      // Stopped by close
+    } catch (IOException e) {
+      lock.lock();
+      try {
+        rejected++;
+      } finally {
+        lock.unlock();
+      }
+    } finally {
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          // Nothing more is read from it
+        }
+      }
+    }
+  }
+
+  /**
+   * Parses one line of text and submits its update.
+   *
+   * @return True if an update was submitted, false if the line was skipped or rejected.
+   */
+  private boolean submitLine(String text) throws InterruptedException {
+    String line = text.strip();
+    if (line.isEmpty() || line.startsWith("#")) {
+      return false;
+    }
+    int space = 0;
+    while (space < line.length() && !Character.isWhitespace(line.charAt(space))) {
+      space++;
+    }
+    int trainNumber = parseNumber(line, 0, space);
+    int delayMinutes = parseDelay(line.substring(space).strip());
+    if (trainNumber < 0 || delayMinutes < 0) {
+      lock.lock();
+      try {
+        rejected++;
+      } finally {
+        lock.unlock();
+      }
+      return false;
+    }
+    submit(trainNumber, delayMinutes);
+    return true;
+  }
+
+  /**
+   * Parses a delay in minutes, or written as HH:MM.
+   *
+   * @return The delay in minutes, or -1 if it is not a valid delay.
+   */
+  private static int parseDelay(String text) {
+    int colon = text.indexOf(':');
+    if (colon < 0) {
+      int minutes = parseNumber(text, 0, text.length());
+      return TrainDeparture.checkDelayMinutes(minutes) == minutes ? minutes : -1;
+    }
+    int hours = parseNumber(text, 0, colon);
+    int minutes = parseNumber(text, colon + 1, text.length());
+    if (hours < 0 || hours >= 24 || minutes < 0 || minutes >= 60) {
+      return -1;
+    }
+    return hours * 60 + minutes;
+  }
+
+  /**
+   * Parses a non-negative number from part of a text.
+   *
+   * @return The number, or -1 if it is not a non-negative number.
+   */
+  private static int parseNumber(String text, int start, int end) {
+    if (start >= end) {
+      return -1;
+    }
+    try {
+      return Math.max(Integer.parseInt(text, start, end, 10), -1);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Throws the first error a batch failed with, if any. The lock must be held.
+   */
+  private void throwIfFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("Could not apply delays: " + failure.getMessage(), failure);
+    }
+  }
+}
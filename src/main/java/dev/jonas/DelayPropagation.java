@@ -0,0 +1,484 @@
+package dev.jonas;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@code DelayPropagation} class passes delays on from one train departure to the departures
+ * that depend on it, such as a train formed by the rolling stock of an earlier one, or a train
+ * that holds for a connection.
+ *
+ * <p>A {@link Dependency} says that a departure cannot leave until some minutes after another
+ * departure has left. The delay of a departure is the larger of the delay reported for it and the
+ * delay its dependencies force on it. Dependencies must not form a cycle.
+ *
+ * <p>When a delay is set, only the departures it actually moves are recomputed. Departures are
+ * taken in order of their new effective departure time, so every departure is recomputed after
+ * the departures it depends on, and the departures of a changed departure are only visited if
+ * its delay changed. A disruption that moves thousands of trains is then resolved in one pass over
+ * the trains it moves, and written to the registry in one batch, see
+ * {@link DepartureRegistry#setDelayMinutes(int[], int[], int)}.
+ *
+ * <p>The delay reported for a departure is kept separately from the delay it ends up with, so a
+ * delay that is reduced again gives back the knock-on delays it caused. A departure whose delay
+ * was set outside the propagation keeps that delay as its reported delay. Delays are capped below
+ * 24 hours, like {@link TrainDeparture#setDelayMinutes(int)}. The delays and dependencies kept for
+ * a departure are dropped when it is removed from the registry, such as when the clock moves past
+ * it, so a later departure given the same train number starts without them.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DelayPropagation propagation = new DelayPropagation(registry);
+ *     // Train 602 is formed by the set of train 601, and needs 10 minutes to turn around
+ *     propagation.addDependency(602, 601, 10, DelayPropagation.Kind.ROLLING_STOCK);
+ *     propagation.setDelay(601, 25);  // Train 602 is delayed as well
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class DelayPropagation {
+
+  /**
+   * Why a departure depends on another.
+   *
+   * @since 1.3.0
+   */
+  public enum Kind {
+    /** The departure is formed by the rolling stock of the other, which must turn around. */
+    ROLLING_STOCK,
+    /** The departure holds for passengers changing from the other. */
+    CONNECTION,
+    /** The departure waits for the other to clear the track. */
+    TRACK
+  }
+
+  /**
+   * A departure that cannot leave until some minutes after another departure has left.
+   *
+   * @param trainNumber Train number of the departure that waits.
+   * @param dependsOn Train number of the departure it waits for.
+   * @param minutes Least number of minutes between the two departures.
+   * @param kind Why the departure waits.
+   * @since 1.3.0
+   */
+  public record Dependency(int trainNumber, int dependsOn, int minutes, Kind kind) { }
+
+  // Largest delay a departure can be given
+  private static final int MAX_DELAY_MINUTES = 24 * 60 - 1;
+
+  private final DepartureRegistry departureRegistry;
+  // Dependencies by the train number of the departure that waits, and of the one waited for
+  private final Map<Integer, List<Dependency>> dependencies;
+  private final Map<Integer, List<Dependency>> dependents;
+  // Delay reported for each departure, before knock-on delays
+  private final Map<Integer, Integer> reportedDelays;
+  // Delay last seen in the registry for each departure, so a delay set outside the propagation is
+  // taken as reported
+  private final Map<Integer, Integer> seenDelays;
+  // Train numbers of departures removed while the lock was held, not dropped yet
+  private final ConcurrentLinkedQueue<Integer> removed;
+  // Lets one propagation run at a time
+  private final ReentrantLock lock;
+
+  /**
+   * Constructs a propagation without dependencies.
+   *
+   * @param departureRegistry Registry the delays are set in. Cannot be null.
+   * @since 1.3.0
+   */
+  public DelayPropagation(DepartureRegistry departureRegistry) {
+    this.departureRegistry = departureRegistry;
+    dependencies = new HashMap<>();
+    dependents = new HashMap<>();
+    reportedDelays = new HashMap<>();
+    seenDelays = new HashMap<>();
+    removed = new ConcurrentLinkedQueue<>();
+    lock = new ReentrantLock();
+    departureRegistry.addListener(new DepartureListener() {
+      @Override
+      public void departureRemoved(TrainDeparture trainDeparture) {
+        forget(trainDeparture.getTrainNumber());
+      }
+    });
+  }
+
+  /**
+   * Makes a departure wait for another, and passes on the delay it already has.
+   *
+   * @param trainNumber Train number of the departure that waits.
+   * @param dependsOn Train number of the departure it waits for.
+   * @param minutes Least number of minutes between the two departures. Cannot be negative.
+   * @param kind Why the departure waits. Cannot be null.
+   * @return Number of departures whose delay changed.
+   * @throws IllegalArgumentException if the minutes are negative, the departures are the same,
+   *     or the dependency would make a cycle.
+   * @since 1.3.0
+   */
+  public int addDependency(int trainNumber, int dependsOn, int minutes, Kind kind) {
+    if (minutes < 0) {
+      throw new IllegalArgumentException("Minutes between departures cannot be negative: "
+          + minutes);
+    }
+    lock.lock();
+    try {
+      if (trainNumber == dependsOn || reaches(trainNumber, dependsOn)) {
+        throw new IllegalArgumentException("Train " + trainNumber + " cannot wait for train "
+            + dependsOn + ", as train " + dependsOn + " already waits for it");
+      }
+      Dependency dependency = new Dependency(trainNumber, dependsOn, minutes, kind);
+      dependencies.computeIfAbsent(trainNumber, number -> new ArrayList<>()).add(dependency);
+      dependents.computeIfAbsent(dependsOn, number -> new ArrayList<>()).add(dependency);
+      return propagate(trainNumber);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Stops a departure from waiting for another, and gives back the delay it caused.
+   *
+   * @param trainNumber Train number of the departure that waits.
+   * @param dependsOn Train number of the departure it waits for.
+   * @return Number of departures whose delay changed, or -1 if there was no such dependency.
+   * @since 1.3.0
+   */
+  public int removeDependency(int trainNumber, int dependsOn) {
+    lock.lock();
+    try {
+      List<Dependency> waitsFor = dependencies.get(trainNumber);
+      if (waitsFor == null
+          || !waitsFor.removeIf(dependency -> dependency.dependsOn() == dependsOn)) {
+        return -1;
+      }
+      dependents.get(dependsOn).removeIf(dependency -> dependency.trainNumber() == trainNumber);
+      return propagate(trainNumber);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Gets the dependencies of a departure.
+   *
+   * @param trainNumber Train number of the departure.
+   * @return Unmodifiable list of the departures it waits for.
+   * @since 1.3.0
+   */
+  public List<Dependency> getDependencies(int trainNumber) {
+    lock.lock();
+    try {
+      return List.copyOf(dependencies.getOrDefault(trainNumber, List.of()));
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Sets the delay reported for a departure, and passes it on to every departure that depends on
+   * it.
+   *
+   * @param trainNumber Train number of the delayed departure.
+   * @param delayMinutes Reported delay in minutes. Must be under 24 hours and not negative.
+   * @return Number of departures whose delay changed, or -1 if no departure has the number.
+   * @throws IllegalArgumentException if the delay is not under 24 hours or is negative.
+   * @since 1.3.0
+   */
+  public int setDelay(int trainNumber, int delayMinutes) {
+    if (TrainDeparture.checkDelayMinutes(delayMinutes) != delayMinutes) {
+      throw new IllegalArgumentException("Delay must be under 24 hours: " + delayMinutes);
+    }
+    lock.lock();
+    try {
+      DepartureRecord record = departureRegistry.getRecord(trainNumber);
+      if (record == null) {
+        return -1;
+      }
+      reportedDelay(trainNumber, record);
+      reportedDelays.put(trainNumber, delayMinutes);
+      return propagate(trainNumber);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Sets the delays reported for many departures at once, such as a batch of a
+   * {@link DelayFeed}, and passes them on in one propagation, so a departure that depends on
+   * several of them is recomputed once. Train numbers that are not registered are skipped.
+   *
+   * @param trainNumbers Train numbers of the delayed departures. Cannot be null.
+   * @param delayMinutes Reported delay in minutes of each departure. Each must be under 24 hours
+   *     and not negative. Cannot be null.
+   * @param count Number of delays to set, from the start of both arrays.
+   * @return Number of delays set, that is the number of train numbers that are registered.
+   * @throws IllegalArgumentException if a delay is not under 24 hours or is negative.
+   * @see #setDelay(int, int)
+   * @since 1.3.0
+   */
+  public int setDelays(int[] trainNumbers, int[] delayMinutes, int count) {
+    for (int i = 0; i < count; i++) {
+      if (TrainDeparture.checkDelayMinutes(delayMinutes[i]) != delayMinutes[i]) {
+        throw new IllegalArgumentException("Delay must be under 24 hours: " + delayMinutes[i]);
+      }
+    }
+    lock.lock();
+    try {
+      Pass pass = new Pass();
+      int set = 0;
+      for (int i = 0; i < count; i++) {
+        DepartureRecord record = departureRegistry.getRecord(trainNumbers[i]);
+        if (record != null) {
+          reportedDelay(trainNumbers[i], record);
+          reportedDelays.put(trainNumbers[i], delayMinutes[i]);
+          set++;
+        }
+      }
+      // Queued once every delay is reported, so each is queued at the time it requires
+      for (int i = 0; i < count; i++) {
+        pass.enqueue(trainNumbers[i]);
+      }
+      propagate(pass);
+      return set;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Gets the delay reported for a departure, before knock-on delays.
+   *
+   * @param trainNumber Train number of the departure.
+   * @return Reported delay in minutes, or the current delay of the departure if none has been
+   *     reported, or -1 if no departure has the number.
+   * @since 1.3.0
+   */
+  public int getReportedDelay(int trainNumber) {
+    lock.lock();
+    try {
+      DepartureRecord record = departureRegistry.getRecord(trainNumber);
+      if (record == null) {
+        return -1;
+      }
+      return reportedDelay(trainNumber, record);
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Recomputes the delay of a departure, and of every departure it moves, and writes the changed
+   * delays to the registry in one batch. Must be called with the lock held.
+   *
+   * <p>Departures are queued by effective time, then train number. A departure always leaves at
+   * least as late as the departures it waits for, so a departure is taken from the queue after
+   * every departure it waits for has been settled. A departure queued again with a new time skips
+   * its older entries.
+   */
+  private int propagate(int trainNumber) {
+    Pass pass = new Pass();
+    pass.enqueue(trainNumber);
+    return propagate(pass);
+  }
+
+  /**
+   * Settles every departure queued in a pass, and every departure they move, and writes the
+   * changed delays to the registry in one batch. Must be called with the lock held.
+   */
+  private int propagate(Pass pass) {
+    while (!pass.queue.isEmpty()) {
+      long key = pass.queue.poll();
+      int number = (int) key;
+      Long queuedKey = pass.queuedKeys.get(number);
+      if (queuedKey == null || queuedKey != key) {
+        continue;  // Queued again since with a newer time, or already settled
+      }
+      pass.queuedKeys.remove(number);
+      int delay = pass.requiredDelay(number);
+      if (delay == pass.delayOf(number)) {
+        continue;  // Absorbed, so the departures after it are not visited
+      }
+      pass.delays.put(number, delay);
+      for (Dependency dependency : dependents.getOrDefault(number, List.of())) {
+        pass.enqueue(dependency.trainNumber());
+      }
+    }
+
+    int[] trainNumbers = new int[pass.delays.size()];
+    int[] delayMinutes = new int[pass.delays.size()];
+    int count = 0;
+    for (Map.Entry<Integer, Integer> entry : pass.delays.entrySet()) {
+      trainNumbers[count] = entry.getKey();
+      delayMinutes[count] = entry.getValue();
+      seenDelays.put(entry.getKey(), entry.getValue());
+      count++;
+    }
+    departureRegistry.setDelayMinutes(trainNumbers, delayMinutes, count);
+    return count;
+  }
+
+  /**
+   * Gets the delay reported for a departure. A departure whose delay in the registry is not the
+   * one last seen has been delayed outside the propagation, so that delay is taken as reported.
+   */
+  private int reportedDelay(int trainNumber, DepartureRecord record) {
+    Integer seen = seenDelays.get(trainNumber);
+    if (seen == null || seen != record.delayMinutes()) {
+      seenDelays.put(trainNumber, record.delayMinutes());
+      reportedDelays.put(trainNumber, record.delayMinutes());
+    }
+    return reportedDelays.get(trainNumber);
+  }
+
+  /**
+   * Drops the delays and dependencies kept for a removed departure. Called by the registry while
+   * the departure is locked, so the lock is only taken if it is free, as a propagation holding it
+   * may be waiting for the departure. Otherwise the train number is left for the propagation to
+   * drop.
+   */
+  private void forget(int trainNumber) {
+    removed.add(trainNumber);
+    if (lock.tryLock()) {
+      unlock();
+    }
+  }
+
+  /**
+   * Drops the delays and dependencies of every removed departure, and releases the lock.
+   */
+  private void unlock() {
+    try {
+      Integer trainNumber;
+      while ((trainNumber = removed.poll()) != null) {
+        reportedDelays.remove(trainNumber);
+        seenDelays.remove(trainNumber);
+        for (Dependency dependency : dependencies.getOrDefault(trainNumber, List.of())) {
+          removeEdge(dependents, dependency.dependsOn(), dependency);
+        }
+        for (Dependency dependency : dependents.getOrDefault(trainNumber, List.of())) {
+          removeEdge(dependencies, dependency.trainNumber(), dependency);
+        }
+        dependencies.remove(trainNumber);
+        dependents.remove(trainNumber);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes a dependency from the list of a departure, and the list once it is empty.
+   */
+  private static void removeEdge(Map<Integer, List<Dependency>> edges, int trainNumber,
+      Dependency dependency) {
+    List<Dependency> list = edges.get(trainNumber);
+    if (list != null && list.remove(dependency) && list.isEmpty()) {
+      edges.remove(trainNumber);
+    }
+  }
+
+  /**
+   * Checks if a departure is waited for, directly or through others, by another departure.
+   */
+  private boolean reaches(int from, int to) {
+    Set<Integer> visited = new HashSet<>();
+    Deque<Integer> stack = new ArrayDeque<>();
+    stack.push(from);
+    while (!stack.isEmpty()) {
+      int number = stack.pop();
+      if (number == to) {
+        return true;
+      }
+      if (visited.add(number)) {
+        for (Dependency dependency : dependents.getOrDefault(number, List.of())) {
+          stack.push(dependency.trainNumber());
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The state of one propagation: the delays settled so far, which take the place of the delays
+   * in the registry, and the departures still queued.
+   */
+  private final class Pass {
+
+    private final Map<Integer, Integer> delays = new HashMap<>();
+    private final Map<Integer, Long> queuedKeys = new HashMap<>();
+    private final PriorityQueue<Long> queue = new PriorityQueue<>();
+    // Records read from the registry, so each departure is looked up once
+    private final Map<Integer, DepartureRecord> records = new HashMap<>();
+
+    /**
+     * Queues a departure at the effective time it requires now. Departures that are not
+     * registered are not queued.
+     */
+    void enqueue(int trainNumber) {
+      DepartureRecord record = recordOf(trainNumber);
+      if (record == null) {
+        return;
+      }
+      int effectiveMinutes = record.scheduledMinutes() + requiredDelay(trainNumber);
+      long key = ((long) effectiveMinutes << 32) | (trainNumber & 0xFFFFFFFFL);
+      queuedKeys.put(trainNumber, key);
+      queue.add(key);
+    }
+
+    /**
+     * Gets the delay a departure must have: its reported delay, or more if a departure it waits
+     * for leaves too late.
+     */
+    int requiredDelay(int trainNumber) {
+      DepartureRecord record = recordOf(trainNumber);
+      if (record == null) {
+        return 0;
+      }
+      int delay = reportedDelay(trainNumber, record);
+      for (Dependency dependency : dependencies.getOrDefault(trainNumber, List.of())) {
+        DepartureRecord waitedFor = recordOf(dependency.dependsOn());
+        if (waitedFor != null) {
+          int leaves = waitedFor.scheduledMinutes() + delayOf(dependency.dependsOn());
+          delay = Math.max(delay, leaves + dependency.minutes() - record.scheduledMinutes());
+        }
+      }
+      return Math.min(delay, MAX_DELAY_MINUTES);
+    }
+
+    /**
+     * Gets the delay of a departure, as settled so far or else as registered.
+     */
+    int delayOf(int trainNumber) {
+      Integer delay = delays.get(trainNumber);
+      if (delay != null) {
+        return delay;
+      }
+      DepartureRecord record = recordOf(trainNumber);
+      return record == null ? 0 : record.delayMinutes();
+    }
+
+    /**
+     * Gets the record of a departure when the propagation started, or null if it is not
+     * registered.
+     */
+    DepartureRecord recordOf(int trainNumber) {
+      DepartureRecord record = records.get(trainNumber);
+      if (record == null && !records.containsKey(trainNumber)) {
+        record = departureRegistry.getRecord(trainNumber);
+        records.put(trainNumber, record);
+      }
+      return record;
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package dev.jonas;
+
+/**
+ * The {@code DepartureEvent} record tells a {@link Subscription} how the departures that match
+ * its filter changed.
+ *
+ * <p>Events are about the view of the subscription, not the registry. A departure that is
+ * delayed into the time window of a filter is {@link Type#ADDED} to the view, and one that is
+ * moved to another track than the filter's is {@link Type#REMOVED} from it. A display can
+ * therefore keep its list current by applying every event, without asking the registry again.
+ *
+ * @param type How the view changed.
+ * @param previous Record of the departure before the change, or null if it was added.
+ * @param current Record of the departure after the change, or null if it was removed.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public record DepartureEvent(Type type, DepartureRecord previous, DepartureRecord current) {
+
+  /**
+   * How the view of a subscription changed.
+   *
+   * @since 1.3.0
+   */
+  public enum Type {
+    /**
+     * A departure started matching the filter, because it was added or changed.
+     */
+    ADDED,
+    /**
+     * A departure that matches the filter changed, and still matches it.
+     */
+    CHANGED,
+    /**
+     * A departure stopped matching the filter, because it was removed or changed.
+     */
+    REMOVED
+  }
+
+  /**
+   * Gets the train number of the departure.
+   *
+   * @return The train number.
+   * @since 1.3.0
+   */
+  public int trainNumber() {
+    return current != null ? current.trainNumber() : previous.trainNumber();
+  }
+}
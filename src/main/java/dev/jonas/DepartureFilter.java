@@ -0,0 +1,94 @@
+package dev.jonas;
+
+/**
+ * The {@code DepartureFilter} interface picks the train departures a {@link Subscription} is
+ * told about, such as the departures from one track, of one line or within a time window.
+ *
+ * <p>Filters test {@link DepartureRecord}s, so a departure is always tested with values that
+ * belong together. Filters are combined with {@link #and(DepartureFilter)}.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DepartureFilter filter = DepartureFilter.track(2)
+ *         .and(DepartureFilter.between(16 * 60, 18 * 60));
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+@FunctionalInterface
+public interface DepartureFilter {
+
+  /**
+   * Tests a departure.
+   *
+   * @param record Record of the departure. Never null.
+   * @return True if the departure should be shown.
+   * @since 1.3.0
+   */
+  boolean matches(DepartureRecord record);
+
+  /**
+   * Combines this filter with another, so a departure must match both.
+   *
+   * @param other Filter that must also match. Cannot be null.
+   * @return The combined filter.
+   * @since 1.3.0
+   */
+  default DepartureFilter and(DepartureFilter other) {
+    return record -> matches(record) && other.matches(record);
+  }
+
+  /**
+   * Gets a filter that matches every departure.
+   *
+   * @return The filter.
+   * @since 1.3.0
+   */
+  static DepartureFilter all() {
+    return record -> true;
+  }
+
+  /**
+   * Gets a filter that matches departures from a track.
+   *
+   * @param track Track of departure, or -1 for departures without a track.
+   * @return The filter.
+   * @since 1.3.0
+   */
+  static DepartureFilter track(int track) {
+    return record -> record.track() == track;
+  }
+
+  /**
+   * Gets a filter that matches departures of a line. The name is looked up without adding it to
+   * {@link SymbolTable#LINES}, so a filter for a misspelt line does not keep the name. A line no
+   * departure has had yet is looked up again for every departure, until one has it.
+   *
+   * @param line Name of the line, such as "L1".
+   * @return The filter.
+   * @since 1.3.0
+   */
+  static DepartureFilter line(String line) {
+    int lineId = SymbolTable.LINES.find(line);
+    if (lineId == -1) {
+      return record -> record.lineId() == SymbolTable.LINES.find(line);
+    }
+    return record -> record.lineId() == lineId;
+  }
+
+  /**
+   * Gets a filter that matches departures with an effective departure time in a window.
+   *
+   * @param fromMinutes Start of the window in minutes after midnight, included.
+   * @param toMinutes End of the window in minutes after midnight, not included.
+   * @return The filter.
+   * @since 1.3.0
+   */
+  static DepartureFilter between(int fromMinutes, int toMinutes) {
+    return record -> record.effectiveMinutes() >= fromMinutes
+        && record.effectiveMinutes() < toMinutes;
+  }
+}
@@ -0,0 +1,615 @@
+package dev.jonas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code DepartureJournal} class is an append-only log of every change made to the departures
+ * of a {@link DepartureRegistry}, so changes survive a crash.
+ *
+ * <p>The journal listens to the registry, and encodes one record per change on the thread that
+ * made it. The record is handed to a queue without taking a lock, so changes under different lock
+ * stripes of the registry never wait for each other. A background thread moves the queued records
+ * to a buffer in memory, writes the buffer to the file with one channel write and forces it to
+ * disk every sync interval. Many changes share one write and one fsync, so the journal keeps up
+ * with tens of thousands of changes per second, and at most one sync interval of changes is lost
+ * in a crash. If the queue grows past the size of the buffer, the change that grew it writes the
+ * queue itself, so a slow disk holds back the changes instead of filling the memory.
+ *
+ * <p>Every record holds the full new value of what changed, never a difference, so replaying a
+ * record twice gives the same result. The journal can therefore be replayed on top of a snapshot
+ * that already has some of its changes. Each record is framed as:
+ * <blockquote><pre>
+ *   length (int), CRC-32 of the body (int), body
+ *   body: type (byte), train number (int), then depending on the type
+ *     ADDED                 scheduled minutes (short), delay minutes (short), track (byte),
+ *                           line, destination
+ *     REMOVED               nothing
+ *     DELAY_CHANGED         delay minutes (short)
+ *     TRACK_CHANGED         track (byte)
+ *     TIME_CHANGED          scheduled minutes (short)
+ *     DESTINATION_CHANGED   destination
+ * </pre></blockquote>
+ * Strings are an unsigned short length followed by the UTF-8 bytes. Replay stops at the first
+ * record that is cut off or does not match its checksum, and the file is truncated there, since
+ * that is where a crash stopped the last write.
+ *
+ * <p>Once the registry has been saved in a snapshot, the changes logged before it are no longer
+ * needed. The journal is marked before the snapshot is taken, and only the changes logged before
+ * the mark are dropped afterwards, so changes made while the snapshot is written are kept.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     registry.addAll(TimetableSnapshot.read(snapshot));
+ *     DepartureJournal journal = DepartureJournal.open(Path.of("departures.journal"), registry);
+ *     registry.setDelayMinutes(601, 5);  // Logged
+ *     long mark = journal.mark();
+ *     TimetableSnapshot.writeRecords(snapshot, registry.snapshot(0, Integer.MAX_VALUE));
+ *     journal.reset(mark);  // The delay is in the snapshot now
+ *     journal.close();
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class DepartureJournal implements DepartureListener, Closeable {
+
+  /**
+   * Time between each time the journal is forced to disk, unless another is given.
+   *
+   * @since 1.3.0
+   */
+  public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+
+  private static final byte ADDED = 1;
+  private static final byte REMOVED = 2;
+  private static final byte DELAY_CHANGED = 3;
+  private static final byte TRACK_CHANGED = 4;
+  private static final byte TIME_CHANGED = 5;
+  private static final byte DESTINATION_CHANGED = 6;
+
+  private static final int FRAME_BYTES = 2 * Integer.BYTES;
+  // Type and train number
+  private static final int HEADER_BYTES = Byte.BYTES + Integer.BYTES;
+  // Fits the largest possible record, two strings of 65535 bytes and the fixed fields
+  private static final int BUFFER_BYTES = 1 << 18;
+
+  private final DepartureRegistry registry;
+  private final Path path;
+  // Replaced by a new file when changes before a mark are dropped
+  private FileChannel channel;
+  // Records logged but not yet in the buffer, in the order they were logged
+  private final ConcurrentLinkedQueue<byte[]> pending;
+  private final AtomicInteger pendingBytes;
+  private final ByteBuffer buffer;
+  private final ScheduledExecutorService syncer;
+  // Read by the listener callbacks without the lock
+  private volatile IOException failure;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a journal that appends to an open channel.
+   *
+   * @see #open(Path, DepartureRegistry, long)
+   */
+  private DepartureJournal(DepartureRegistry registry, Path path, FileChannel channel,
+      long syncIntervalMillis) {
+    this.registry = registry;
+    this.path = path;
+    this.channel = channel;
+    pending = new ConcurrentLinkedQueue<>();
+    pendingBytes = new AtomicInteger();
+    buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    failure = null;
+    closed = false;
+
+    syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "departure-journal-sync");
+      thread.setDaemon(true);
+      return thread;
+    });
+    syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens a journal with the default sync interval.
+   *
+   * @param path Journal file. Created if it does not exist.
+   * @param registry Registry to replay into and log changes of. Cannot be null.
+   * @return The open journal.
+   * @throws IOException if the file could not be opened, or has a record this version cannot read.
+   * @see #open(Path, DepartureRegistry, long)
+   * @since 1.3.0
+   */
+  public static DepartureJournal open(Path path, DepartureRegistry registry) throws IOException {
+    return open(path, registry, DEFAULT_SYNC_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Opens a journal. Every record already in the file is replayed into the registry, and the
+   * journal then logs every later change made through the registry until it is closed.
+   *
+   * @param path Journal file. Created if it does not exist.
+   * @param registry Registry to replay into and log changes of. Cannot be null.
+   * @param syncIntervalMillis Time between each time the journal is forced to disk. Must be
+   *     positive.
+   * @return The open journal.
+   * @throws IOException if the file could not be opened, or has a record this version cannot read.
+   * @throws IllegalArgumentException if the sync interval is not positive.
+   * @since 1.3.0
+   */
+  public static DepartureJournal open(Path path, DepartureRegistry registry,
+      long syncIntervalMillis) throws IOException {
+    if (syncIntervalMillis <= 0) {
+      throw new IllegalArgumentException("Sync interval must be positive, was "
+          + syncIntervalMillis);
+    }
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long end = replay(channel, registry);
+      // Drops a record cut off by a crash, so new records are not written after it
+      channel.truncate(end);
+      channel.position(end);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+    DepartureJournal journal = new DepartureJournal(registry, path, channel, syncIntervalMillis);
+    registry.addListener(journal);
+    return journal;
+  }
+
+  /**
+   * Writes every buffered record to the file and forces the file to disk. Every change made
+   * before the call survives a crash after it returns.
+   *
+   * @throws IOException if the journal could not be written, now or by an earlier background sync.
+   * @since 1.3.0
+   */
+  public void sync() throws IOException {
+    FileChannel written;
+    synchronized (this) {
+      throwIfFailed();
+      drain();
+      writeBuffer();
+      written = channel;
+    }
+    // Forces outside the lock, so a change that has to write a full queue does not wait for it
+    try {
+      written.force(false);
+    } catch (ClosedChannelException e) {
+      synchronized (this) {
+        if (written == channel) {
+          throw e;
+        }
+      }
+      // Replaced since, and the new file was forced with the records written here
+    }
+  }
+
+  /**
+   * Marks the end of the journal, such as before a {@link TimetableSnapshot} of the registry is
+   * taken. Every change logged before the mark was made before it, so it is in the snapshot.
+   *
+   * @return The mark, for {@link #reset(long)}.
+   * @throws IOException if the journal could not be written by an earlier background sync.
+   * @since 1.3.0
+   */
+  public synchronized long mark() throws IOException {
+    throwIfFailed();
+    drain();
+    return channel.position() + buffer.position();
+  }
+
+  /**
+   * Drops every change logged before a mark, after they have been saved somewhere else, such as a
+   * {@link TimetableSnapshot} taken after the mark. Changes logged after the mark are kept, and
+   * written to a new file that replaces the journal, so a crash leaves either the old journal or
+   * the new one.
+   *
+   * @param mark Mark from {@link #mark()}.
+   * @throws IOException if the journal could not be written or replaced.
+   * @since 1.3.0
+   */
+  public synchronized void reset(long mark) throws IOException {
+    throwIfFailed();
+    drain();
+    writeBuffer();
+    long end = channel.position();
+    long from = Math.min(Math.max(mark, 0), end);
+    if (from == 0) {
+      return;
+    }
+    if (from == end) {
+      channel.truncate(0);
+      channel.position(0);
+      channel.force(true);
+      return;
+    }
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (FileChannel kept = FileChannel.open(temporary, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        for (long position = from; position < end; ) {
+          position += channel.transferTo(position, end - position, kept);
+        }
+        kept.force(true);
+      }
+      Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      channel.close();
+      channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      channel.position(channel.size());
+    } catch (IOException e) {
+      if (!channel.isOpen()) {
+        failure = e;  // The journal has no file to write to
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Empties the journal, after every change in it has been saved somewhere else. A change logged
+   * while it was saved is dropped as well, so use {@link #reset(long)} with a mark taken before
+   * saving when the registry can change meanwhile.
+   *
+   * @throws IOException if the journal could not be emptied.
+   * @since 1.3.0
+   */
+  public synchronized void reset() throws IOException {
+    reset(mark());
+  }
+
+  /**
+   * Stops logging changes, writes every buffered record and closes the file.
+   *
+   * @throws IOException if the last records could not be written.
+   * @since 1.3.0
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    registry.removeListener(this);
+    syncer.shutdown();
+    try {
+      syncer.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      synchronized (this) {
+        throwIfFailed();
+        drain();
+        writeBuffer();
+      }
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Logs a train departure that was added, with every field.
+   *
+   * @param trainDeparture The added departure.
+   * @since 1.3.0
+   */
+  @Override
+  public void departureAdded(TrainDeparture trainDeparture) {
+    byte[] line = trainDeparture.getLine().getBytes(StandardCharsets.UTF_8);
+    byte[] destination = trainDeparture.getDestination().getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = beginRecord(ADDED, trainDeparture, 2 * Short.BYTES + Byte.BYTES
+        + stringBytes(line) + stringBytes(destination));
+    record.putShort((short) trainDeparture.getScheduledMinutes())
+        .putShort((short) trainDeparture.getDelayMinutes())
+        .put((byte) trainDeparture.getTrack());
+    putString(record, line);
+    putString(record, destination);
+    endRecord(record);
+  }
+
+  /**
+   * Logs a train departure that was removed.
+   *
+   * @param trainDeparture The removed departure.
+   * @since 1.3.0
+   */
+  @Override
+  public void departureRemoved(TrainDeparture trainDeparture) {
+    endRecord(beginRecord(REMOVED, trainDeparture, 0));
+  }
+
+  /**
+   * Logs the new delay of a train departure.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousDelayMinutes Delay before the change, not logged.
+   * @since 1.3.0
+   */
+  @Override
+  public void delayChanged(TrainDeparture trainDeparture, int previousDelayMinutes) {
+    ByteBuffer record = beginRecord(DELAY_CHANGED, trainDeparture, Short.BYTES);
+    record.putShort((short) trainDeparture.getDelayMinutes());
+    endRecord(record);
+  }
+
+  /**
+   * Logs the new track of a train departure.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousTrack Track before the change, not logged.
+   * @since 1.3.0
+   */
+  @Override
+  public void trackChanged(TrainDeparture trainDeparture, int previousTrack) {
+    ByteBuffer record = beginRecord(TRACK_CHANGED, trainDeparture, Byte.BYTES);
+    record.put((byte) trainDeparture.getTrack());
+    endRecord(record);
+  }
+
+  /**
+   * Logs the new scheduled departure-time of a train departure.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousScheduledMinutes Scheduled time before the change, not logged.
+   * @since 1.3.0
+   */
+  @Override
+  public void departureTimeChanged(TrainDeparture trainDeparture,
+      int previousScheduledMinutes) {
+    ByteBuffer record = beginRecord(TIME_CHANGED, trainDeparture, Short.BYTES);
+    record.putShort((short) trainDeparture.getScheduledMinutes());
+    endRecord(record);
+  }
+
+  /**
+   * Logs the new destination of a train departure.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousDestination Destination before the change, not logged.
+   * @since 1.3.0
+   */
+  @Override
+  public void destinationChanged(TrainDeparture trainDeparture,
+      String previousDestination) {
+    byte[] destination = trainDeparture.getDestination().getBytes(StandardCharsets.UTF_8);
+    ByteBuffer record = beginRecord(DESTINATION_CHANGED, trainDeparture,
+        stringBytes(destination));
+    putString(record, destination);
+    endRecord(record);
+  }
+
+  /**
+   * Allocates a record with room for its frame, header and body, and writes its type and train
+   * number after the space for the frame.
+   *
+   * @return The record, positioned after the header.
+   */
+  private ByteBuffer beginRecord(byte type, TrainDeparture trainDeparture, int bodyBytes) {
+    if (failure != null) {
+      throw new UncheckedIOException("Journal could not be written", failure);
+    }
+    if (closed) {
+      throw new IllegalStateException("Journal is closed");
+    }
+    ByteBuffer record = ByteBuffer.allocate(FRAME_BYTES + HEADER_BYTES + bodyBytes);
+    record.position(FRAME_BYTES);
+    record.put(type).putInt(trainDeparture.getTrainNumber());
+    return record;
+  }
+
+  /**
+   * Fills in the length and checksum of a record and queues it. If the queue has grown past the
+   * size of the buffer, moves it to the file before returning.
+   */
+  private void endRecord(ByteBuffer record) {
+    int length = record.position() - FRAME_BYTES;
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), FRAME_BYTES, length);
+    record.putInt(0, length);
+    record.putInt(Integer.BYTES, (int) crc.getValue());
+    pending.offer(record.array());
+    if (pendingBytes.addAndGet(record.capacity()) > BUFFER_BYTES) {
+      synchronized (this) {
+        try {
+          drain();
+        } catch (IOException e) {
+          failure = e;
+          throw new UncheckedIOException("Journal could not be written", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the size of a string as written by {@link #putString(ByteBuffer, byte[])}.
+   */
+  private static int stringBytes(byte[] bytes) {
+    return Short.BYTES + Math.min(bytes.length, 0xFFFF);
+  }
+
+  /**
+   * Appends a string as an unsigned short length and at most 65535 of its UTF-8 bytes.
+   */
+  private static void putString(ByteBuffer record, byte[] bytes) {
+    int length = Math.min(bytes.length, 0xFFFF);
+    record.putShort((short) length).put(bytes, 0, length);
+  }
+
+  /**
+   * Moves every queued record to the buffer, writing the buffer to the channel whenever the next
+   * record does not fit. Must hold the lock.
+   */
+  private void drain() throws IOException {
+    byte[] record;
+    while ((record = pending.poll()) != null) {
+      pendingBytes.addAndGet(-record.length);
+      if (buffer.remaining() < record.length) {
+        writeBuffer();
+      }
+      buffer.put(record);
+    }
+  }
+
+  /**
+   * Writes every buffered record to the channel. Must hold the lock.
+   */
+  private void writeBuffer() throws IOException {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } finally {
+      buffer.compact();
+    }
+  }
+
+  /**
+   * Rethrows the error of an earlier background sync. Must hold the lock.
+   */
+  private void throwIfFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("Journal could not be written", failure);
+    }
+  }
+
+  /**
+   * Syncs from the background thread, keeping any error for the next call that can throw it.
+   */
+  private void syncQuietly() {
+    try {
+      sync();
+    } catch (IOException e) {
+      synchronized (this) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Replays every whole record in the channel into the registry, without logging them again.
+   *
+   * @return Position after the last whole record.
+   */
+  private static long replay(FileChannel channel, DepartureRegistry registry) throws IOException {
+    long size = channel.size();
+    if (size == 0) {
+      return 0;
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Journal is too large to replay: " + size + " bytes");
+    }
+    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    CRC32 crc = new CRC32();
+    int position = 0;
+    while (mapped.limit() - position >= FRAME_BYTES) {
+      int length = mapped.getInt(position);
+      int checksum = mapped.getInt(position + Integer.BYTES);
+      int bodyStart = position + FRAME_BYTES;
+      if (length <= 0 || length > mapped.limit() - bodyStart) {
+        break;  // Cut off by a crash
+      }
+      crc.reset();
+      crc.update(mapped.slice(bodyStart, length));
+      if ((int) crc.getValue() != checksum) {
+        break;  // Cut off by a crash
+      }
+      apply(mapped.slice(bodyStart, length), registry);
+      position = bodyStart + length;
+    }
+    return position;
+  }
+
+  /**
+   * Applies the change in one record body to the registry.
+   */
+  private static void apply(ByteBuffer body, DepartureRegistry registry) throws IOException {
+    byte type = body.get();
+    int trainNumber = body.getInt();
+    TrainDeparture trainDeparture = registry.get(trainNumber);
+    switch (type) {
+      case ADDED -> {
+        int scheduledMinutes = body.getShort();
+        int delayMinutes = body.getShort();
+        int track = body.get();
+        String line = getString(body);
+        String destination = getString(body);
+        if (trainDeparture != null) {
+          registry.remove(trainDeparture);  // Already in the snapshot, replaced by the record
+        }
+        TrainDeparture added = new TrainDeparture(trainNumber,
+            new int[]{scheduledMinutes / 60, scheduledMinutes % 60}, line, destination, track);
+        added.setDelayMinutes(delayMinutes);
+        registry.add(added);
+      }
+      case REMOVED -> {
+        if (trainDeparture != null) {
+          registry.remove(trainDeparture);
+        }
+      }
+      case DELAY_CHANGED -> {
+        int delayMinutes = body.getShort();
+        if (trainDeparture != null) {
+          registry.setDelayMinutes(trainDeparture, delayMinutes);
+        }
+      }
+      case TRACK_CHANGED -> {
+        int track = body.get();
+        if (trainDeparture != null) {
+          registry.setTrack(trainDeparture, track);
+        }
+      }
+      case TIME_CHANGED -> {
+        int scheduledMinutes = body.getShort();
+        if (trainDeparture != null) {
+          registry.setDepartureTime(trainDeparture,
+              new int[]{scheduledMinutes / 60, scheduledMinutes % 60});
+        }
+      }
+      case DESTINATION_CHANGED -> {
+        String destination = getString(body);
+        if (trainDeparture != null) {
+          registry.setDestination(trainDeparture, destination);
+        }
+      }
+      default -> throw new IOException("Unknown journal record type " + type);
+    }
+  }
+
+  /**
+   * Reads a string written by {@link #putString(ByteBuffer, byte[])}.
+   */
+  private static String getString(ByteBuffer body) {
+    byte[] bytes = new byte[Short.toUnsignedInt(body.getShort())];
+    body.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
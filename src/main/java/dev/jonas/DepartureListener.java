@@ -0,0 +1,79 @@
+package dev.jonas;
+
+/**
+ * The {@code DepartureListener} interface is told about every change made to the departures of a
+ * {@link DepartureRegistry}.
+ *
+ * <p>Listeners are called on the thread that made the change, after the change has been made, so
+ * the departure already has its new values. Every method does nothing by default, so a listener
+ * only has to override the changes it cares about.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     registry.addListener(new DepartureListener() {
+ *       &#64;Override
+ *       public void delayChanged(TrainDeparture trainDeparture, int previousDelayMinutes) {
+ *         Terminal.writeLine(trainDeparture + " is delayed");
+ *       }
+ *     });
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public interface DepartureListener {
+
+  /**
+   * Called after a train departure has been added to the registry.
+   *
+   * @param trainDeparture The added departure.
+   * @since 1.3.0
+   */
+  default void departureAdded(TrainDeparture trainDeparture) { }
+
+  /**
+   * Called after a train departure has been removed from the registry.
+   *
+   * @param trainDeparture The removed departure.
+   * @since 1.3.0
+   */
+  default void departureRemoved(TrainDeparture trainDeparture) { }
+
+  /**
+   * Called after the delay of a registered train departure has been set.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousDelayMinutes Delay in minutes before the change.
+   * @since 1.3.0
+   */
+  default void delayChanged(TrainDeparture trainDeparture, int previousDelayMinutes) { }
+
+  /**
+   * Called after the track of a registered train departure has been set.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousTrack Track before the change, -1 if none.
+   * @since 1.3.0
+   */
+  default void trackChanged(TrainDeparture trainDeparture, int previousTrack) { }
+
+  /**
+   * Called after the scheduled departure-time of a registered train departure has been set.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousScheduledMinutes Scheduled time in minutes after midnight before the change.
+   * @since 1.3.0
+   */
+  default void departureTimeChanged(TrainDeparture trainDeparture, int previousScheduledMinutes) { }
+
+  /**
+   * Called after the destination of a registered train departure has been set.
+   *
+   * @param trainDeparture The changed departure.
+   * @param previousDestination Destination before the change.
+   * @since 1.3.0
+   */
+  default void destinationChanged(TrainDeparture trainDeparture, String previousDestination) { }
+}
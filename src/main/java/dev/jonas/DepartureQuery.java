@@ -0,0 +1,340 @@
+package dev.jonas;
+
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code DepartureQuery} class describes which train departures to find in a
+ * {@link DepartureRegistry}, in what order and how many, for search screens and reports.
+ *
+ * <p>A query is immutable: every method returns a new query with one more condition, so a query
+ * can be kept and run again, or shared between threads. A departure must meet every condition.
+ * The registry picks the index that fits the query best, see
+ * {@link DepartureRegistry#query(DepartureQuery)}.
+ *
+ * <p>A query is also a {@link DepartureFilter}, so a display can
+ * {@link DepartureRegistry#subscribe(DepartureFilter, java.util.function.Consumer) subscribe}
+ * to the departures a search found. Order and limit do not apply to subscriptions.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DepartureQuery query = DepartureQuery.all()
+ *         .line("L1")
+ *         .effectiveBetween(16 * 60, 18 * 60)
+ *         .delayedOnly()
+ *         .orderBy(DepartureQuery.Order.DELAY)
+ *         .limit(10);
+ *     List&lt;DepartureRecord&gt; mostDelayed = registry.query(query);
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class DepartureQuery implements DepartureFilter {
+
+  /**
+   * Orders the departures a query finds can be sorted in. Ties are sorted by train number.
+   *
+   * @since 1.3.0
+   */
+  public enum Order {
+    /** Earliest effective departure time first. */
+    EFFECTIVE_TIME(Comparator.comparingInt(DepartureRecord::effectiveMinutes)),
+    /** Earliest scheduled departure time first. */
+    SCHEDULED_TIME(Comparator.comparingInt(DepartureRecord::scheduledMinutes)),
+    /** Largest delay first. */
+    DELAY(Comparator.comparingInt(DepartureRecord::delayMinutes).reversed()),
+    /** Lowest train number first. */
+    TRAIN_NUMBER((first, second) -> 0);
+
+    private final Comparator<DepartureRecord> comparator;
+
+    Order(Comparator<DepartureRecord> comparator) {
+      this.comparator = comparator.thenComparingInt(DepartureRecord::trainNumber);
+    }
+
+    /**
+     * Gets the comparator of the order.
+     *
+     * @return The comparator.
+     * @since 1.3.0
+     */
+    public Comparator<DepartureRecord> comparator() {
+      return comparator;
+    }
+  }
+
+  // Values of conditions that are not set
+  private static final int ANY = -1;
+  private static final DepartureQuery ALL = new DepartureQuery(null, null, ANY,
+      Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, false,
+      Order.EFFECTIVE_TIME, Integer.MAX_VALUE);
+
+  private final String line;
+  // Id of the line, looked up until a departure has had the line. A race only repeats the lookup
+  private int lineId;
+  private final String destination;
+  // Whether each destination id matches the destination prefix, as a station has few
+  // destinations. Null if the query has no destination
+  private final ConcurrentHashMap<Integer, Boolean> destinationMatches;
+  private final int track;
+  private final int effectiveFrom;
+  private final int effectiveTo;
+  private final int scheduledFrom;
+  private final int scheduledTo;
+  private final boolean delayedOnly;
+  private final Order order;
+  private final int limit;
+
+  /**
+   * Constructs a query with every condition.
+   */
+  private DepartureQuery(String line, String destination, int track, int effectiveFrom,
+      int effectiveTo, int scheduledFrom, int scheduledTo, boolean delayedOnly, Order order,
+      int limit) {
+    this.line = line;
+    lineId = line == null ? ANY : SymbolTable.LINES.find(line);
+    this.destination = destination;
+    destinationMatches = destination == null ? null : new ConcurrentHashMap<>();
+    this.track = track;
+    this.effectiveFrom = effectiveFrom;
+    this.effectiveTo = effectiveTo;
+    this.scheduledFrom = scheduledFrom;
+    this.scheduledTo = scheduledTo;
+    this.delayedOnly = delayedOnly;
+    this.order = order;
+    this.limit = limit;
+  }
+
+  /**
+   * Gets a query that finds every departure, sorted by effective departure time.
+   *
+   * @return The query.
+   * @since 1.3.0
+   */
+  public static DepartureQuery all() {
+    return ALL;
+  }
+
+  /**
+   * Gets a query that also requires departures to be of a line. The name is looked up without
+   * adding it to {@link SymbolTable#LINES}, and looked up again while no departure has had the
+   * line, so a kept query finds the departures of a line added after it was made.
+   *
+   * @param line Name of the line, such as "L1".
+   * @return The new query.
+   * @since 1.3.0
+   */
+  public DepartureQuery line(String line) {
+    return new DepartureQuery(line, destination, track, effectiveFrom, effectiveTo,
+        scheduledFrom, scheduledTo, delayedOnly, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires a word of the destination to start with a text. Matching
+   * ignores case and accents, as in {@link DestinationIndex#search(String)}.
+   *
+   * @param prefix Start of a word in the destination. Cannot be null.
+   * @return The new query.
+   * @since 1.3.0
+   */
+  public DepartureQuery destination(String prefix) {
+    return new DepartureQuery(line, prefix, track, effectiveFrom, effectiveTo, scheduledFrom,
+        scheduledTo, delayedOnly, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires departures to leave from a track.
+   *
+   * @param track Track of departure, between 1 and 99.
+   * @return The new query.
+   * @throws IllegalArgumentException if the track is not between 1 and 99.
+   * @since 1.3.0
+   */
+  public DepartureQuery track(int track) {
+    if (TrainDeparture.checkTrack(track) != track) {
+      throw new IllegalArgumentException("Track must be between 1 and 99: " + track);
+    }
+    return new DepartureQuery(line, destination, track, effectiveFrom, effectiveTo,
+        scheduledFrom, scheduledTo, delayedOnly, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires the effective departure time to be within a window.
+   *
+   * @param fromMinutes Start of the window in minutes after midnight, included.
+   * @param toMinutes End of the window in minutes after midnight, not included.
+   * @return The new query.
+   * @since 1.3.0
+   */
+  public DepartureQuery effectiveBetween(int fromMinutes, int toMinutes) {
+    return new DepartureQuery(line, destination, track, fromMinutes, toMinutes, scheduledFrom,
+        scheduledTo, delayedOnly, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires the scheduled departure time to be within a window.
+   *
+   * @param fromMinutes Start of the window in minutes after midnight, included.
+   * @param toMinutes End of the window in minutes after midnight, not included.
+   * @return The new query.
+   * @since 1.3.0
+   */
+  public DepartureQuery scheduledBetween(int fromMinutes, int toMinutes) {
+    return new DepartureQuery(line, destination, track, effectiveFrom, effectiveTo,
+        fromMinutes, toMinutes, delayedOnly, order, limit);
+  }
+
+  /**
+   * Gets a query that also requires departures to be delayed.
+   *
+   * @return The new query.
+   * @since 1.3.0
+   */
+  public DepartureQuery delayedOnly() {
+    return new DepartureQuery(line, destination, track, effectiveFrom, effectiveTo,
+        scheduledFrom, scheduledTo, true, order, limit);
+  }
+
+  /**
+   * Gets a query that sorts the departures it finds in another order.
+   *
+   * @param order Order to sort in. Cannot be null.
+   * @return The new query.
+   * @since 1.3.0
+   */
+  public DepartureQuery orderBy(Order order) {
+    return new DepartureQuery(line, destination, track, effectiveFrom, effectiveTo,
+        scheduledFrom, scheduledTo, delayedOnly, order, limit);
+  }
+
+  /**
+   * Gets a query that finds at most a number of departures, the first in its order.
+   *
+   * @param limit Most departures to find. Cannot be negative.
+   * @return The new query.
+   * @throws IllegalArgumentException if the limit is negative.
+   * @since 1.3.0
+   */
+  public DepartureQuery limit(int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("Limit cannot be negative: " + limit);
+    }
+    return new DepartureQuery(line, destination, track, effectiveFrom, effectiveTo,
+        scheduledFrom, scheduledTo, delayedOnly, order, limit);
+  }
+
+  /**
+   * Tests every condition of the query on a departure. The destination is matched by the rules
+   * of {@link DestinationIndex#matches(String, String)}.
+   *
+   * @param record Record of the departure. Never null.
+   * @return True if the departure meets every condition.
+   * @since 1.3.0
+   */
+  @Override
+  public boolean matches(DepartureRecord record) {
+    return (line == null || record.lineId() == lineId())
+        && (track == ANY || record.track() == track)
+        && record.effectiveMinutes() >= effectiveFrom && record.effectiveMinutes() < effectiveTo
+        && record.scheduledMinutes() >= scheduledFrom && record.scheduledMinutes() < scheduledTo
+        && (!delayedOnly || record.delayMinutes() > 0)
+        && (destination == null || matchesDestination(record.destinationId()));
+  }
+
+  /**
+   * Gets the id of the line of the query, looking it up again if no departure had the line yet.
+   */
+  private int lineId() {
+    int id = lineId;
+    if (id == -1) {
+      id = SymbolTable.LINES.find(line);
+      lineId = id;  // Still -1 until a departure has had the line
+    }
+    return id;
+  }
+
+  /**
+   * Checks if a destination matches the destination prefix, normalizing each destination once.
+   */
+  private boolean matchesDestination(int destinationId) {
+    Boolean matches = destinationMatches.get(destinationId);
+    if (matches == null) {
+      matches = DestinationIndex.matches(SymbolTable.DESTINATIONS.get(destinationId), destination);
+      destinationMatches.put(destinationId, matches);
+    }
+    return matches;
+  }
+
+  /**
+   * Gets the destination prefix of the query.
+   *
+   * @return The prefix, or null if any destination matches.
+   * @since 1.3.0
+   */
+  public String getDestination() {
+    return destination;
+  }
+
+  /**
+   * Gets the track of the query.
+   *
+   * @return The track, or -1 if any track matches.
+   * @since 1.3.0
+   */
+  public int getTrack() {
+    return track;
+  }
+
+  /**
+   * Gets the start of the window of effective departure times of the query.
+   *
+   * @return Start of the window in minutes after midnight, {@link Integer#MIN_VALUE} if open.
+   * @since 1.3.0
+   */
+  public int getEffectiveFrom() {
+    return effectiveFrom;
+  }
+
+  /**
+   * Gets the end of the window of effective departure times of the query.
+   *
+   * @return End of the window in minutes after midnight, {@link Integer#MAX_VALUE} if open.
+   * @since 1.3.0
+   */
+  public int getEffectiveTo() {
+    return effectiveTo;
+  }
+
+  /**
+   * Checks if the query limits the effective departure time.
+   *
+   * @return True if the window of effective departure times is not open at both ends.
+   * @since 1.3.0
+   */
+  public boolean hasEffectiveWindow() {
+    return effectiveFrom != Integer.MIN_VALUE || effectiveTo != Integer.MAX_VALUE;
+  }
+
+  /**
+   * Gets the order of the query.
+   *
+   * @return The order.
+   * @since 1.3.0
+   */
+  public Order getOrder() {
+    return order;
+  }
+
+  /**
+   * Gets the most departures the query finds.
+   *
+   * @return The limit, {@link Integer#MAX_VALUE} if none.
+   * @since 1.3.0
+   */
+  public int getLimit() {
+    return limit;
+  }
+}
@@ -0,0 +1,83 @@
+package dev.jonas;
+
+/**
+ * The {@code DepartureRecord} record is an immutable copy of every field of a registered
+ * {@link TrainDeparture}, taken when it last changed.
+ *
+ * <p>A {@link DepartureRegistry} publishes a new record every time it changes a departure, so a
+ * thread that reads records never sees a departure halfway through a change, and never has to
+ * take a lock. The version grows with every change made to any departure of the registry, so a
+ * reader can tell which of two records is newer.
+ *
+ * @param trainNumber Number identifying the train.
+ * @param scheduledMinutes Scheduled departure-time in minutes after midnight.
+ * @param delayMinutes Delay in minutes.
+ * @param lineId Id of the line in {@link SymbolTable#LINES}.
+ * @param destinationId Id of the destination in {@link SymbolTable#DESTINATIONS}.
+ * @param track Track of departure, or -1 if undeclared.
+ * @param version Version of the registry when the record was made.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public record DepartureRecord(
+    int trainNumber,
+    int scheduledMinutes,
+    int delayMinutes,
+    int lineId,
+    int destinationId,
+    int track,
+    long version
+) {
+
+  /**
+   * Copies every field of a train departure.
+   *
+   * @param trainDeparture Departure to copy. Cannot be null.
+   * @param version Version of the registry.
+   * @return The record.
+   * @since 1.3.0
+   */
+  public static DepartureRecord of(TrainDeparture trainDeparture, long version) {
+    return new DepartureRecord(
+        trainDeparture.getTrainNumber(),
+        trainDeparture.getScheduledMinutes(),
+        trainDeparture.getDelayMinutes(),
+        trainDeparture.getLineId(),
+        trainDeparture.getDestinationId(),
+        trainDeparture.getTrack(),
+        version
+    );
+  }
+
+  /**
+   * Gets the departure-time with the delay added.
+   *
+   * @return Effective departure-time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public int effectiveMinutes() {
+    return scheduledMinutes + delayMinutes;
+  }
+
+  /**
+   * Gets the name of the line.
+   *
+   * @return The line.
+   * @since 1.3.0
+   */
+  public String line() {
+    return SymbolTable.LINES.get(lineId);
+  }
+
+  /**
+   * Gets the name of the destination.
+   *
+   * @return The destination.
+   * @since 1.3.0
+   */
+  public String destination() {
+    return SymbolTable.DESTINATIONS.get(destinationId);
+  }
+}
@@ -0,0 +1,1246 @@
+package dev.jonas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * The {@code DepartureRegistry} class keeps every {@link TrainDeparture} of the station sorted by
+ * effective departure time, which is the scheduled time with the delay added.
+ *
+ * <p>Departures are indexed in a skip list, so inserting, removing and re-ordering a departure is
+ * O(log n), and asking for the next departures after a point in time, or for the departures
+ * within a time window, is O(log n + k). As the station clock moves on, departed trains are
+ * removed from the front of the skip list with {@link #removeDepartedBefore(int)}, in
+ * O(k log n) for k departed trains, so the registry only holds the rest of the service day.
+ * Changes to the time or delay of a registered departure must go through the registry, or be
+ * followed by a call to {@link #update(TrainDeparture)}, so the ordering stays correct.
+ *
+ * <p>Every registered departure has a unique train number, and the registry keeps a hash map from
+ * number to departure, so lookups and changes by train number are O(1). Departures added without
+ * a number are given the next free one.
+ *
+ * <p>The registry also keeps a {@link DestinationIndex}, so departures can be searched by
+ * destination without a scan. Destinations must be changed through
+ * {@link #setDestination(TrainDeparture, String)} to keep the index current.
+ *
+ * <p>The tracks of the departures are kept in a {@link TrackOccupancy}, so a dispatcher can check
+ * that a track is free before assigning it, see {@link #findConflicts(TrainDeparture, int)}, and
+ * find the departures a delay has moved into conflict with. Every track also has a lock, held
+ * while a departure is given the track, so {@link #trySetTrack(TrainDeparture, int)} and
+ * {@link #tryAdd(TrainDeparture)} check the track and take it in one step, and two departures
+ * given the same track at once cannot both pass the check. Live figures such as the average
+ * delay of each line are kept up to date with every change, see {@link #getStatistics()}.
+ *
+ * <p>Every change made through the registry is passed on to the registered
+ * {@link DepartureListener}s, so other parts of the system can follow the departures without
+ * polling them. Listeners are told on the thread that made the change, in the order the changes
+ * were made to each departure. Displays that only show some departures can instead
+ * {@link #subscribe(DepartureFilter, Consumer) subscribe} with a filter, and are told how the
+ * departures that match it change.
+ *
+ * <p>The registry is thread-safe. Writers lock only the departure they change, with one of a fixed
+ * number of locks picked by the line of the departure, so delays to different lines are applied
+ * in parallel. The line of a registered departure must therefore not be changed. After every
+ * change the registry publishes a {@link DepartureRecord}, an immutable copy of the departure,
+ * and readers never lock: {@link #snapshot(int, int)} and {@link #getRecord(int)} read these
+ * records, so every departure they return is consistent. A read that overlaps a change to the
+ * ordering is retried, so a snapshot lists every departure exactly once. The fields of a
+ * {@link TrainDeparture} itself are not guarded, so another thread may see them while they
+ * change; threads that read while others write should use records.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DepartureRegistry registry = new DepartureRegistry();
+ *     registry.add(trainDeparture);
+ *     registry.setDelay(trainDeparture, new int[]{0, 5});
+ *     List&lt;DepartureRecord&gt; board = registry.snapshot(16 * 60 + 37, 10);
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class DepartureRegistry {
+
+  // Number of locks writers are spread over. Must be a power of two
+  private static final int STRIPES = 64;
+  // Number of times a read is tried before it sorts the records of every departure instead
+  private static final int OPTIMISTIC_READS = 3;
+  // Number of departures from which a query that no index fits is run in parallel
+  static final int PARALLEL_QUERY_SIZE = 10_000;
+
+  // Departures sorted by effective time, ties broken by insertion order
+  private final ConcurrentSkipListMap<Long, Slot> departuresByTime;
+  // The slot of every registered departure. Departures are compared by identity
+  private final ConcurrentHashMap<TrainDeparture, Slot> slots;
+  // Departures by train number. Looked up without a lock, and train numbers are not grouped by
+  // the locks, so the map must be safe to read while another thread writes it
+  private final ConcurrentHashMap<Integer, TrainDeparture> departuresByNumber;
+  private final DestinationIndex destinationIndex;
+  private final TrackOccupancy trackOccupancy;
+  private final DepartureStatistics statistics;
+  private final List<DepartureListener> listeners;
+  private final List<Subscription> subscriptions;
+  private final ReentrantLock[] locks;
+  // Locks of the tracks, taken after the lock of the departure. Index 0 is not used
+  private final ReentrantLock[] trackLocks;
+  private final AtomicInteger sequence;
+  private final AtomicInteger nextTrainNumber;
+  private final AtomicLong version;
+  // Number of changes to the ordering that have started and finished, so reads can tell if they
+  // overlapped one
+  private final AtomicLong reorderingsStarted;
+  private final AtomicLong reorderingsFinished;
+
+  /**
+   * Constructs a new, empty {@code DepartureRegistry}.
+   *
+   * @since 1.3.0
+   */
+  public DepartureRegistry() {
+    departuresByTime = new ConcurrentSkipListMap<>();
+    slots = new ConcurrentHashMap<>();
+    departuresByNumber = new ConcurrentHashMap<>();
+    destinationIndex = new DestinationIndex();
+    trackOccupancy = new TrackOccupancy();
+    statistics = new DepartureStatistics(trackOccupancy.getHeadwayMinutes());
+    listeners = new CopyOnWriteArrayList<>();
+    subscriptions = new CopyOnWriteArrayList<>();
+    locks = new ReentrantLock[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    trackLocks = new ReentrantLock[TrackOccupancy.MAX_TRACK + 1];
+    for (int track = 1; track <= TrackOccupancy.MAX_TRACK; track++) {
+      trackLocks[track] = new ReentrantLock();
+    }
+    sequence = new AtomicInteger();
+    nextTrainNumber = new AtomicInteger(1);
+    version = new AtomicLong();
+    reorderingsStarted = new AtomicLong();
+    reorderingsFinished = new AtomicLong();
+  }
+
+  /**
+   * Adds a train departure to the registry. Adding a departure that is already registered does
+   * nothing. A departure without a train number is given the next free number.
+   *
+   * @param trainDeparture Departure to add. Cannot be null.
+   * @return True if the departure was added, false if it was already registered.
+   * @throws IllegalArgumentException if another departure has the same train number.
+   * @since 1.3.0
+   */
+  public boolean add(TrainDeparture trainDeparture) {
+    return add(trainDeparture, true, null);
+  }
+
+  /**
+   * Adds a train departure to the registry, unless another departure occupies its track at its
+   * effective departure time. The track is checked and taken in one step, so no other departure
+   * can be given the track in between. A departure without a track is always added.
+   *
+   * @param trainDeparture Departure to add. Cannot be null.
+   * @return List of the departures its track conflicts with, sorted by effective time. Empty if
+   *     the departure was added, or was already registered.
+   * @throws IllegalArgumentException if another departure has the same train number.
+   * @see #add(TrainDeparture)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> tryAdd(TrainDeparture trainDeparture) {
+    List<TrainDeparture> conflicts = new ArrayList<>();
+    add(trainDeparture, true, conflicts);
+    return conflicts;
+  }
+
+  /**
+   * Adds every row of a columnar timetable to the registry. Each row is registered through a
+   * view, so the departure data stays in the timetable's columns.
+   *
+   * <p>Rows with a train number are added first, so the numbers given to rows without one never
+   * take a number used further down the timetable. A row with a train number that is already
+   * registered is skipped, so a timetable can be imported again on top of a snapshot of it. Rows
+   * without a train number are always added as new departures.
+   *
+   * @param timetable Timetable to add. Cannot be null.
+   * @return Number of departures added.
+   * @see ColumnarTimetable#view(int)
+   * @since 1.3.0
+   */
+  public int addAll(ColumnarTimetable timetable) {
+    List<TrainDeparture> trainDepartures = timetable.views();
+    int added = 0;
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      if (trainDeparture.getTrainNumber() != -1 && add(trainDeparture, false, null)) {
+        added++;
+      }
+    }
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      if (trainDeparture.getTrainNumber() == -1 && add(trainDeparture, false, null)) {
+        added++;
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Removes a train departure from the registry.
+   *
+   * @param trainDeparture Departure to remove.
+   * @return True if the departure was registered, false otherwise.
+   * @since 1.3.0
+   */
+  public boolean remove(TrainDeparture trainDeparture) {
+    if (trainDeparture == null) {
+      return false;
+    }
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    try {
+      Slot slot = slots.remove(trainDeparture);
+      if (slot == null) {
+        return false;
+      }
+      DepartureRecord previous = slot.record;
+      reorderingsStarted.incrementAndGet();
+      slot.record = null;
+      departuresByTime.remove(slot.key);
+      reorderingsFinished.incrementAndGet();
+      version.incrementAndGet();
+      trackOccupancy.remove(previous.track(), previous.effectiveMinutes(), trainDeparture);
+      statistics.update(previous, null);
+      publishToSubscriptions(previous, null);
+
+      departuresByNumber.remove(trainDeparture.getTrainNumber(), trainDeparture);
+      destinationIndex.remove(trainDeparture);
+      for (DepartureListener listener : listeners) {
+        listener.departureRemoved(trainDeparture);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes every train departure with an effective departure time before the given time, as a
+   * clock moving past them does. Only the departed trains at the front of the ordering are
+   * visited. A departure that is delayed past the time while this runs is kept.
+   *
+   * @param minutes Current time, in minutes after midnight.
+   * @return Number of departures removed.
+   * @see #remove(TrainDeparture)
+   * @since 1.3.0
+   */
+  public int removeDepartedBefore(int minutes) {
+    long beforeKey = (long) minutes << 32;
+    int removed = 0;
+    Map.Entry<Long, Slot> first;
+    while ((first = departuresByTime.firstEntry()) != null && first.getKey() < beforeKey) {
+      Slot slot = first.getValue();
+      ReentrantLock lock = lockOf(slot.departure);
+      lock.lock();
+      try {
+        // Once locked, the departure is either gone, moved or still departed, and the entry
+        // found is no longer first unless it is removed here
+        if (slots.get(slot.departure) == slot && slot.key < beforeKey
+            && remove(slot.departure)) {
+          removed++;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Gets the registered train departure with the given train number.
+   *
+   * @param trainNumber Train number to look up.
+   * @return The departure, or null if no registered departure has the number.
+   * @since 1.3.0
+   */
+  public TrainDeparture get(int trainNumber) {
+    return departuresByNumber.get(trainNumber);
+  }
+
+  /**
+   * Gets the latest record of the registered train departure with the given train number.
+   *
+   * @param trainNumber Train number to look up.
+   * @return The record, or null if no registered departure has the number.
+   * @since 1.3.0
+   */
+  public DepartureRecord getRecord(int trainNumber) {
+    TrainDeparture trainDeparture = departuresByNumber.get(trainNumber);
+    return trainDeparture == null ? null : recordOf(trainDeparture);
+  }
+
+  /**
+   * Checks if a train departure is registered.
+   *
+   * @param trainDeparture Departure to look for.
+   * @return True if the departure is registered.
+   * @since 1.3.0
+   */
+  public boolean contains(TrainDeparture trainDeparture) {
+    return trainDeparture != null && slots.containsKey(trainDeparture);
+  }
+
+  /**
+   * Sets the delay of a registered train departure, and moves it to its new place in the
+   * ordering.
+   *
+   * @param trainDeparture Registered departure to delay.
+   * @param delay Delay in the format "{HH, mm}". Cannot be null.
+   * @see TrainDeparture#setDelay(int[])
+   * @since 1.3.0
+   */
+  public void setDelay(TrainDeparture trainDeparture, int[] delay) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    try {
+      int previousDelayMinutes = trainDeparture.getDelayMinutes();
+      trainDeparture.setDelay(delay);
+      fireDelayChanged(trainDeparture, previousDelayMinutes);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the delay of a registered train departure in minutes, and moves it to its new place in
+   * the ordering.
+   *
+   * @param trainDeparture Registered departure to delay.
+   * @param delayMinutes Delay in minutes.
+   * @see TrainDeparture#setDelayMinutes(int)
+   * @since 1.3.0
+   */
+  public void setDelayMinutes(TrainDeparture trainDeparture, int delayMinutes) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    try {
+      int previousDelayMinutes = trainDeparture.getDelayMinutes();
+      trainDeparture.setDelayMinutes(delayMinutes);
+      fireDelayChanged(trainDeparture, previousDelayMinutes);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the delay in minutes of the registered train departure with the given train number, and
+   * moves it to its new place in the ordering.
+   *
+   * @param trainNumber Train number of the departure.
+   * @param delayMinutes Delay in minutes.
+   * @return True if a departure with the number is registered, false otherwise.
+   * @since 1.3.0
+   */
+  public boolean setDelayMinutes(int trainNumber, int delayMinutes) {
+    TrainDeparture trainDeparture = get(trainNumber);
+    if (trainDeparture == null) {
+      return false;
+    }
+    setDelayMinutes(trainDeparture, delayMinutes);
+    return true;
+  }
+
+  /**
+   * Sets the delays in minutes of many registered train departures at once, and moves them to
+   * their new places in the ordering. The updates are grouped by lock, so each lock is taken once
+   * per call instead of once per departure. Train numbers that are not registered are skipped.
+   *
+   * @param trainNumbers Train numbers of the departures. Cannot be null.
+   * @param delayMinutes Delay in minutes of each departure. Cannot be null.
+   * @param count Number of updates to apply, from the start of both arrays.
+   * @return Number of departures whose delay was set.
+   * @see #setDelayMinutes(int, int)
+   * @since 1.3.0
+   */
+  public int setDelayMinutes(int[] trainNumbers, int[] delayMinutes, int count) {
+    // Sorts the updates by lock, counting the updates for each lock first
+    TrainDeparture[] trainDepartures = new TrainDeparture[count];
+    int[] stripeStarts = new int[STRIPES + 1];
+    for (int i = 0; i < count; i++) {
+      TrainDeparture trainDeparture = get(trainNumbers[i]);
+      trainDepartures[i] = trainDeparture;
+      if (trainDeparture != null) {
+        stripeStarts[stripeOf(trainDeparture) + 1]++;
+      }
+    }
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      stripeStarts[stripe + 1] += stripeStarts[stripe];
+    }
+    int[] order = new int[stripeStarts[STRIPES]];
+    int[] next = Arrays.copyOf(stripeStarts, STRIPES);
+    for (int i = 0; i < count; i++) {
+      if (trainDepartures[i] != null) {
+        order[next[stripeOf(trainDepartures[i])]++] = i;
+      }
+    }
+
+    int applied = 0;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      if (stripeStarts[stripe] == stripeStarts[stripe + 1]) {
+        continue;
+      }
+      locks[stripe].lock();
+      try {
+        for (int j = stripeStarts[stripe]; j < stripeStarts[stripe + 1]; j++) {
+          TrainDeparture trainDeparture = trainDepartures[order[j]];
+          // Skips a departure removed since it was looked up
+          if (slots.containsKey(trainDeparture)) {
+            int previousDelayMinutes = trainDeparture.getDelayMinutes();
+            trainDeparture.setDelayMinutes(delayMinutes[order[j]]);
+            fireDelayChanged(trainDeparture, previousDelayMinutes);
+            applied++;
+          }
+        }
+      } finally {
+        locks[stripe].unlock();
+      }
+    }
+    return applied;
+  }
+
+  /**
+   * Sets the track of a train departure.
+   *
+   * @param trainDeparture Departure to change.
+   * @param track Track of departure. Set to -1 if not between 1 and 99.
+   * @see TrainDeparture#setTrack(int)
+   * @since 1.3.0
+   */
+  public void setTrack(TrainDeparture trainDeparture, int track) {
+    setTrack(trainDeparture, track, false);
+  }
+
+  /**
+   * Sets the track of a train departure, unless another departure occupies the track at its
+   * effective departure time. The track is checked and taken in one step, so no other departure
+   * can be given the track in between. Removing the track, with -1, always succeeds.
+   *
+   * @param trainDeparture Departure to change. Cannot be null.
+   * @param track Track of departure. Set to -1 if not between 1 and 99.
+   * @return List of the departures the track conflicts with, sorted by effective time. Empty if
+   *     the track was set.
+   * @see #findConflicts(TrainDeparture, int)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> trySetTrack(TrainDeparture trainDeparture, int track) {
+    return setTrack(trainDeparture, track, true);
+  }
+
+  /**
+   * Sets the track of the registered train departure with the given train number.
+   *
+   * @param trainNumber Train number of the departure.
+   * @param track Track of departure. Set to -1 if not between 1 and 99.
+   * @return True if a departure with the number is registered, false otherwise.
+   * @since 1.3.0
+   */
+  public boolean setTrack(int trainNumber, int track) {
+    TrainDeparture trainDeparture = get(trainNumber);
+    if (trainDeparture == null) {
+      return false;
+    }
+    setTrack(trainDeparture, track);
+    return true;
+  }
+
+  /**
+   * Sets the track of the registered train departure with the given train number, if it has not
+   * changed since a record of it was read, such as when a plan made from the record is applied.
+   *
+   * @param trainNumber Train number of the departure.
+   * @param version Version of the record the track was chosen from.
+   * @param track Track of departure. Set to -1 if not between 1 and 99.
+   * @return True if the track was set, false if no departure with the number is registered or it
+   *     has changed since the record was read.
+   * @see DepartureRecord#version()
+   * @since 1.3.0
+   */
+  public boolean setTrackIfUnchanged(int trainNumber, long version, int track) {
+    TrainDeparture trainDeparture = get(trainNumber);
+    if (trainDeparture == null) {
+      return false;
+    }
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    ReentrantLock trackLock = lockTrack(track);
+    try {
+      Slot slot = slots.get(trainDeparture);
+      if (slot == null || slot.record.version() != version) {
+        return false;
+      }
+      int previousTrack = trainDeparture.getTrack();
+      trainDeparture.setTrack(track);
+      publish(slot);
+      for (DepartureListener listener : listeners) {
+        listener.trackChanged(trainDeparture, previousTrack);
+      }
+      return true;
+    } finally {
+      unlockTrack(trackLock);
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the scheduled departure-time of a registered train departure, and moves it to its new
+   * place in the ordering.
+   *
+   * @param trainDeparture Registered departure to reschedule.
+   * @param departureTime Time in the format "{HH, mm}". Cannot be null.
+   * @see TrainDeparture#setDepartureTime(int[])
+   * @since 1.3.0
+   */
+  public void setDepartureTime(TrainDeparture trainDeparture, int[] departureTime) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    try {
+      int previousScheduledMinutes = trainDeparture.getScheduledMinutes();
+      trainDeparture.setDepartureTime(departureTime);
+      Slot slot = slots.get(trainDeparture);
+      if (slot != null) {
+        publish(slot);
+        for (DepartureListener listener : listeners) {
+          listener.departureTimeChanged(trainDeparture, previousScheduledMinutes);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the destination of a train departure, and moves it in the destination index if it is
+   * registered.
+   *
+   * @param trainDeparture Departure to change.
+   * @param destination New destination. Null is set to empty.
+   * @see TrainDeparture#setDestination(String)
+   * @since 1.3.0
+   */
+  public void setDestination(TrainDeparture trainDeparture, String destination) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    try {
+      String previousDestination = trainDeparture.getDestination();
+      trainDeparture.setDestination(destination);
+      Slot slot = slots.get(trainDeparture);
+      if (slot != null) {
+        destinationIndex.add(trainDeparture);
+        publish(slot);
+        for (DepartureListener listener : listeners) {
+          listener.destinationChanged(trainDeparture, previousDestination);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Registers a listener that is told about every later change made through the registry.
+   * Listeners are called while the changed departure is locked, so they should return quickly
+   * and must not wait for other threads that change the registry.
+   *
+   * @param listener Listener to add. Cannot be null.
+   * @since 1.3.0
+   */
+  public void addListener(DepartureListener listener) {
+    listeners.add(Objects.requireNonNull(listener, "listener"));
+  }
+
+  /**
+   * Stops telling a listener about changes.
+   *
+   * @param listener Listener to remove.
+   * @return True if the listener was registered, false otherwise.
+   * @since 1.3.0
+   */
+  public boolean removeListener(DepartureListener listener) {
+    return listeners.remove(listener);
+  }
+
+  /**
+   * Subscribes to the changes of every departure that matches a filter. The subscriber is first
+   * told about every registered departure that matches, as {@link DepartureEvent.Type#ADDED}
+   * events sorted by effective time, and then about every later change that is seen through the
+   * filter, until the subscription is closed.
+   *
+   * <p>The subscriber is called on the thread that made the change, while the departure is locked,
+   * so it should return quickly, such as by queueing the event or updating a
+   * {@link BoardView}. Every change to one departure is told in the order it was made. Every
+   * departure is locked while the subscription is made, so it misses no change and sees none
+   * twice.
+   *
+   * @param filter Filter of the departures to follow. Cannot be null.
+   * @param subscriber Told about every change. Cannot be null.
+   * @return The subscription, to close when the changes are no longer needed.
+   * @since 1.3.0
+   */
+  public Subscription subscribe(DepartureFilter filter, Consumer<DepartureEvent> subscriber) {
+    Subscription subscription = new Subscription(this,
+        Objects.requireNonNull(filter, "filter"), Objects.requireNonNull(subscriber, "subscriber"));
+    for (ReentrantLock lock : locks) {
+      lock.lock();
+    }
+    try {
+      // Nothing moves while every lock is held, so every departure is found once
+      for (Slot slot : departuresByTime.values()) {
+        subscription.publish(null, slot.record);
+      }
+      subscriptions.add(subscription);
+    } finally {
+      for (int i = locks.length - 1; i >= 0; i--) {
+        locks[i].unlock();
+      }
+    }
+    return subscription;
+  }
+
+  /**
+   * Stops telling a subscription about changes.
+   *
+   * @param subscription Subscription to remove.
+   */
+  void unsubscribe(Subscription subscription) {
+    subscriptions.remove(subscription);
+  }
+
+  /**
+   * Moves a registered train departure to the right place in the ordering after its time or delay
+   * has been changed directly on the object, and publishes a new record of it. Does nothing if
+   * the departure is not registered.
+   *
+   * @param trainDeparture Departure that has been changed.
+   * @since 1.3.0
+   */
+  public void update(TrainDeparture trainDeparture) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    try {
+      Slot slot = slots.get(trainDeparture);
+      if (slot != null) {
+        publish(slot);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets every registered train departure sorted by effective departure time.
+   *
+   * @return Unmodifiable list of departures. Never null.
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> getDepartures() {
+    return departuresFrom(Long.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Gets the next train departures with an effective departure time at or after the given time.
+   *
+   * @param minutes Time to search from, in minutes after midnight.
+   * @param limit Maximum number of departures to return.
+   * @return Unmodifiable list of at most {@code limit} departures, sorted by effective time.
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> nextDepartures(int minutes, int limit) {
+    return departuresFrom((long) minutes << 32, limit);
+  }
+
+  /**
+   * Gets every train departure with an effective departure time at or after the given time.
+   *
+   * @param minutes Time to search from, in minutes after midnight.
+   * @return Unmodifiable list of departures, sorted by effective time.
+   * @see #nextDepartures(int, int)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> nextDepartures(int minutes) {
+    return nextDepartures(minutes, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Gets records of the next train departures with an effective departure time at or after the
+   * given time, without locking. Every record is a consistent copy of its departure, and no
+   * departure is listed twice or left out because it moved during the read.
+   *
+   * @param minutes Time to search from, in minutes after midnight.
+   * @param limit Maximum number of departures to return.
+   * @return Unmodifiable list of at most {@code limit} records, sorted by effective time.
+   * @since 1.3.0
+   */
+  public List<DepartureRecord> snapshot(int minutes, int limit) {
+    List<DepartureRecord> records = new ArrayList<>();
+    read((long) minutes << 32, Long.MAX_VALUE, limit, null, records);
+    return Collections.unmodifiableList(records);
+  }
+
+  /**
+   * Gets records of every train departure with an effective departure time within a window,
+   * without locking, such as the departures of the next quarter of an hour. Only the departures in
+   * the window are visited.
+   *
+   * @param fromMinutes Start of the window, in minutes after midnight.
+   * @param toMinutes End of the window, in minutes after midnight, not included.
+   * @return Unmodifiable list of records, sorted by effective time.
+   * @see #snapshot(int, int)
+   * @since 1.3.0
+   */
+  public List<DepartureRecord> snapshotBetween(int fromMinutes, int toMinutes) {
+    List<DepartureRecord> records = new ArrayList<>();
+    if (fromMinutes < toMinutes) {
+      read((long) fromMinutes << 32, (long) toMinutes << 32, Integer.MAX_VALUE, null, records);
+    }
+    return Collections.unmodifiableList(records);
+  }
+
+  /**
+   * Gets the version of the registry, which grows with every change made through it.
+   *
+   * @return The version.
+   * @see DepartureRecord#version()
+   * @since 1.3.0
+   */
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * Finds every registered train departure where a word of the destination starts with the given
+   * text. Matching ignores case and accents, so "lilles" finds "Lillestrøm".
+   *
+   * @param prefix Start of a word in the destination.
+   * @return Unmodifiable list of matching departures, sorted by effective time.
+   * @see DestinationIndex#search(String)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> searchByDestination(String prefix) {
+    // Sorts by the key of each record when it was read, so the order does not change while sorting
+    TreeMap<Long, TrainDeparture> matches = new TreeMap<>();
+    for (TrainDeparture trainDeparture : destinationIndex.search(prefix)) {
+      Slot slot = slots.get(trainDeparture);
+      DepartureRecord record = slot == null ? null : slot.record;
+      if (record != null) {
+        matches.put(keyOf(record.effectiveMinutes(), slot.sequence), trainDeparture);
+      }
+    }
+    return Collections.unmodifiableList(new ArrayList<>(matches.values()));
+  }
+
+  /**
+   * Finds records of the train departures that meet every condition of a query, without locking.
+   *
+   * <p>The departures are looked up in the index that fits the query best: the
+   * {@link DestinationIndex} if the query has a destination, the {@link TrackOccupancy} if it has
+   * a track, and the time ordering if it has a window of effective times. Only the departures the
+   * index finds are checked against the rest of the query. Any other query checks the record of
+   * every departure, split over the cores of the machine once the registry holds ten thousand
+   * departures or more.
+   *
+   * <p>Every record is a consistent copy of its departure. A departure that changes while the
+   * query runs is found as it was either before or after the change, and one that moves to
+   * another track or destination at the time may be left out.
+   *
+   * @param query Query to run. Cannot be null.
+   * @return Unmodifiable list of at most {@link DepartureQuery#getLimit()} records, sorted in the
+   *     order of the query.
+   * @since 1.3.0
+   */
+  public List<DepartureRecord> query(DepartureQuery query) {
+    Comparator<DepartureRecord> order = query.getOrder().comparator();
+    List<DepartureRecord> records;
+    switch (accessFor(query)) {
+      case DESTINATION_INDEX -> records = matching(query,
+          destinationIndex.search(query.getDestination()));
+      case TRACK_INDEX -> records = matching(query, trackOccupancy.departuresBetween(
+          query.getTrack(), query.getEffectiveFrom(), query.getEffectiveTo()));
+      case TIME_INDEX -> {
+        records = new ArrayList<>();
+        if (query.getEffectiveFrom() < query.getEffectiveTo()) {
+          read((long) query.getEffectiveFrom() << 32, (long) query.getEffectiveTo() << 32,
+              Integer.MAX_VALUE, null, records);
+        }
+        records.removeIf(record -> !query.matches(record));
+      }
+      case PARALLEL_SCAN -> {
+        return slots.values().parallelStream()
+            .map(slot -> slot.record)
+            .filter(record -> record != null && query.matches(record))
+            .sorted(order)
+            .limit(query.getLimit())
+            .toList();
+      }
+      default -> {
+        records = new ArrayList<>();
+        for (Slot slot : slots.values()) {
+          DepartureRecord record = slot.record;
+          if (record != null && query.matches(record)) {
+            records.add(record);
+          }
+        }
+      }
+    }
+    records.sort(order);
+    return Collections.unmodifiableList(
+        records.subList(0, Math.min(records.size(), query.getLimit())));
+  }
+
+  /**
+   * Finds the registered departures that would conflict with a departure if it left from a track
+   * at its current effective time. Used to check a track before it is assigned.
+   *
+   * @param trainDeparture Departure to check. Cannot be null.
+   * @param track Track to check.
+   * @return List of conflicting departures, sorted by effective time, not including the departure
+   *     itself. Empty if the track is not valid.
+   * @see TrackOccupancy#conflicts(int, int, TrainDeparture)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> findConflicts(TrainDeparture trainDeparture, int track) {
+    DepartureRecord record = recordOf(trainDeparture);
+    int effectiveMinutes = record != null
+        ? record.effectiveMinutes() : trainDeparture.getEffectiveMinutes();
+    return trackOccupancy.conflicts(track, effectiveMinutes, trainDeparture);
+  }
+
+  /**
+   * Finds the registered departures that conflict with a departure on its own track, such as
+   * after a delay has moved it.
+   *
+   * @param trainDeparture Departure to check. Cannot be null.
+   * @return List of conflicting departures, sorted by effective time. Empty if the departure has
+   *     no track.
+   * @see #findConflicts(TrainDeparture, int)
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> findConflicts(TrainDeparture trainDeparture) {
+    DepartureRecord record = recordOf(trainDeparture);
+    return findConflicts(trainDeparture,
+        record != null ? record.track() : trainDeparture.getTrack());
+  }
+
+  /**
+   * Finds every track no registered departure occupies within a window.
+   *
+   * @param fromMinutes Start of the window, in minutes after midnight.
+   * @param toMinutes End of the window, in minutes after midnight, not included.
+   * @return List of free tracks, lowest first.
+   * @see TrackOccupancy#freeTracks(int, int)
+   * @since 1.3.0
+   */
+  public List<Integer> freeTracks(int fromMinutes, int toMinutes) {
+    return trackOccupancy.freeTracks(fromMinutes, toMinutes);
+  }
+
+  /**
+   * Gets the minutes a departure occupies its track for, when looking for conflicts.
+   *
+   * @return The headway, in minutes.
+   * @see TrackOccupancy#getHeadwayMinutes()
+   * @since 1.3.0
+   */
+  public int getTrackHeadwayMinutes() {
+    return trackOccupancy.getHeadwayMinutes();
+  }
+
+  /**
+   * Gets the statistics of the registered departures, which are updated with every change, so
+   * reading them never visits the departures.
+   *
+   * @return The statistics of the registry.
+   * @since 1.3.0
+   */
+  public DepartureStatistics getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * Gets the number of registered train departures.
+   *
+   * @return Number of departures.
+   * @since 1.3.0
+   */
+  public int size() {
+    return slots.size();
+  }
+
+  /**
+   * Adds a train departure, and either throws or returns false if its train number is in use.
+   */
+  private boolean add(TrainDeparture trainDeparture, boolean numberInUseThrows,
+      List<TrainDeparture> conflicts) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    ReentrantLock trackLock = lockTrack(trainDeparture.getTrack());
+    try {
+      if (slots.containsKey(trainDeparture)) {
+        return false;
+      }
+      int trainNumber = trainDeparture.getTrainNumber();
+      boolean claimed = trainNumber == -1;
+      if (claimed) {
+        trainNumber = claimFreeTrainNumber(trainDeparture);
+        trainDeparture.setTrainNumber(trainNumber);
+      } else if (departuresByNumber.putIfAbsent(trainNumber, trainDeparture) != null) {
+        if (!numberInUseThrows) {
+          return false;
+        }
+        throw new IllegalArgumentException("Train number " + trainNumber + " is already in use");
+      }
+      if (conflicts != null) {
+        conflicts.addAll(trackOccupancy.conflicts(trainDeparture.getTrack(),
+            trainDeparture.getEffectiveMinutes(), trainDeparture));
+        if (!conflicts.isEmpty()) {
+          // Gives back the train number, so the departure is left as it was
+          departuresByNumber.remove(trainNumber, trainDeparture);
+          if (claimed) {
+            trainDeparture.setTrainNumber(-1);
+          }
+          return false;
+        }
+      }
+
+      Slot slot = new Slot(trainDeparture, sequence.getAndIncrement());
+      publish(slot);
+      slots.put(trainDeparture, slot);
+      destinationIndex.add(trainDeparture);
+      for (DepartureListener listener : listeners) {
+        listener.departureAdded(trainDeparture);
+      }
+      return true;
+    } finally {
+      unlockTrack(trackLock);
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Sets the track of a departure with its lock and the lock of the track held, refusing the
+   * track if asked to and another departure occupies it.
+   *
+   * @return The conflicts the track was refused for, or an empty list if it was set.
+   */
+  private List<TrainDeparture> setTrack(TrainDeparture trainDeparture, int track,
+      boolean refuseConflicts) {
+    ReentrantLock lock = lockOf(trainDeparture);
+    lock.lock();
+    ReentrantLock trackLock = lockTrack(track);
+    try {
+      if (refuseConflicts) {
+        List<TrainDeparture> conflicts = findConflicts(trainDeparture, track);
+        if (!conflicts.isEmpty()) {
+          return conflicts;
+        }
+      }
+      int previousTrack = trainDeparture.getTrack();
+      trainDeparture.setTrack(track);
+      Slot slot = slots.get(trainDeparture);
+      if (slot != null) {
+        publish(slot);
+        for (DepartureListener listener : listeners) {
+          listener.trackChanged(trainDeparture, previousTrack);
+        }
+      }
+      return List.of();
+    } finally {
+      unlockTrack(trackLock);
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes the lock of a track, waiting for it if another thread holds it.
+   *
+   * @return The lock, or null if the track is not between 1 and 99.
+   */
+  private ReentrantLock lockTrack(int track) {
+    if (TrainDeparture.checkTrack(track) == -1) {
+      return null;
+    }
+    ReentrantLock trackLock = trackLocks[track];
+    trackLock.lock();
+    return trackLock;
+  }
+
+  /**
+   * Releases the lock of a track taken with {@link #lockTrack(int)}, if any.
+   */
+  private static void unlockTrack(ReentrantLock trackLock) {
+    if (trackLock != null) {
+      trackLock.unlock();
+    }
+  }
+
+  /**
+   * Gets the latest record of a departure, or null if it is not registered.
+   */
+  private DepartureRecord recordOf(TrainDeparture trainDeparture) {
+    Slot slot = slots.get(trainDeparture);
+    return slot == null ? null : slot.record;
+  }
+
+  /**
+   * Picks how to find the departures of a query.
+   */
+  Access accessFor(DepartureQuery query) {
+    if (query.getDestination() != null) {
+      return Access.DESTINATION_INDEX;
+    } else if (query.getTrack() != -1) {
+      return Access.TRACK_INDEX;
+    } else if (query.hasEffectiveWindow()) {
+      return Access.TIME_INDEX;
+    }
+    return slots.size() >= PARALLEL_QUERY_SIZE ? Access.PARALLEL_SCAN : Access.SCAN;
+  }
+
+  /**
+   * Gets the latest records of the registered departures among some that meet a query.
+   */
+  private List<DepartureRecord> matching(DepartureQuery query,
+      List<TrainDeparture> trainDepartures) {
+    List<DepartureRecord> records = new ArrayList<>();
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      DepartureRecord record = recordOf(trainDeparture);
+      if (record != null && query.matches(record)) {
+        records.add(record);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Gets the next train departures from an ordering key.
+   */
+  private List<TrainDeparture> departuresFrom(long fromKey, int limit) {
+    List<TrainDeparture> trainDepartures = new ArrayList<>();
+    read(fromKey, Long.MAX_VALUE, limit, trainDepartures, null);
+    return Collections.unmodifiableList(trainDepartures);
+  }
+
+  /**
+   * Reads the departures from an ordering key up to another, not included, without locking, into
+   * either or both lists.
+   *
+   * <p>A departure is listed where its latest record belongs, and skipped under any other key it
+   * is still found under while it moves. If a departure was added, removed or moved while the
+   * read was running, the read may have found it in both places or in neither, so the read is
+   * tried again. If it keeps overlapping changes, the records of every departure are read and
+   * sorted instead.
+   */
+  private void read(long fromKey, long toKey, int limit, List<TrainDeparture> trainDepartures,
+      List<DepartureRecord> records) {
+    List<Slot> found = new ArrayList<>(Math.min(limit, 64));
+    List<DepartureRecord> foundRecords = new ArrayList<>(Math.min(limit, 64));
+    for (int attempt = 1; ; attempt++) {
+      found.clear();
+      foundRecords.clear();
+      if (attempt > OPTIMISTIC_READS) {
+        readSorted(fromKey, toKey, limit, found, foundRecords);
+        break;
+      }
+      long finished = reorderingsFinished.get();
+      for (Map.Entry<Long, Slot> entry : departuresByTime.subMap(fromKey, toKey).entrySet()) {
+        if (found.size() >= limit) {
+          break;
+        }
+        Slot slot = entry.getValue();
+        DepartureRecord record = slot.record;
+        if (record != null
+            && keyOf(record.effectiveMinutes(), slot.sequence) == entry.getKey()) {
+          found.add(slot);
+          foundRecords.add(record);
+        }
+      }
+      if (reorderingsStarted.get() == finished) {
+        break;
+      }
+    }
+
+    for (int i = 0; i < found.size(); i++) {
+      if (trainDepartures != null) {
+        trainDepartures.add(found.get(i).departure);
+      }
+      if (records != null) {
+        records.add(foundRecords.get(i));
+      }
+    }
+  }
+
+  /**
+   * Reads the latest record of every departure and sorts them, so every departure is found once
+   * however much the ordering changes during the read.
+   */
+  private void readSorted(long fromKey, long toKey, int limit, List<Slot> found,
+      List<DepartureRecord> foundRecords) {
+    TreeMap<Long, Map.Entry<Slot, DepartureRecord>> sorted = new TreeMap<>();
+    for (Slot slot : slots.values()) {
+      DepartureRecord record = slot.record;
+      if (record != null) {
+        long key = keyOf(record.effectiveMinutes(), slot.sequence);
+        if (key >= fromKey && key < toKey) {
+          sorted.put(key, Map.entry(slot, record));
+        }
+      }
+    }
+    for (Map.Entry<Slot, DepartureRecord> entry : sorted.values()) {
+      if (found.size() >= limit) {
+        break;
+      }
+      found.add(entry.getKey());
+      foundRecords.add(entry.getValue());
+    }
+  }
+
+  /**
+   * Publishes a new record of a departure that has changed, moves it to its new place in the
+   * ordering and on the tracks if its effective time or track changed, updates the statistics
+   * and tells the subscriptions. The departure must be locked.
+   *
+   * <p>The departure is put under its new key before the record is published, and removed from
+   * its old key after, so a reader always finds it under the key that matches the record it
+   * reads.
+   */
+  private void publish(Slot slot) {
+    DepartureRecord previous = slot.record;
+    DepartureRecord record = DepartureRecord.of(slot.departure, version.incrementAndGet());
+    long newKey = keyOf(record.effectiveMinutes(), slot.sequence);
+    if (previous != null && newKey == slot.key) {
+      slot.record = record;
+    } else {
+      reorderingsStarted.incrementAndGet();
+      departuresByTime.put(newKey, slot);
+      slot.record = record;
+      if (previous != null) {
+        departuresByTime.remove(slot.key);
+      }
+      slot.key = newKey;
+      reorderingsFinished.incrementAndGet();
+    }
+    if (previous == null) {
+      trackOccupancy.add(record.track(), record.effectiveMinutes(), slot.departure);
+    } else if (previous.track() != record.track()
+        || previous.effectiveMinutes() != record.effectiveMinutes()) {
+      trackOccupancy.remove(previous.track(), previous.effectiveMinutes(), slot.departure);
+      trackOccupancy.add(record.track(), record.effectiveMinutes(), slot.departure);
+    }
+    statistics.update(previous, record);
+    publishToSubscriptions(previous, record);
+  }
+
+  /**
+   * Tells every subscription how a departure changed. The departure must be locked, so the
+   * subscriptions are told about the changes to a departure in the order they were made. A
+   * subscriber that throws is unsubscribed, so a broken display cannot stop changes.
+   */
+  private void publishToSubscriptions(DepartureRecord previous, DepartureRecord current) {
+    for (Subscription subscription : subscriptions) {
+      try {
+        subscription.publish(previous, current);
+      } catch (RuntimeException e) {
+        subscription.close();
+      }
+    }
+  }
+
+  /**
+   * Publishes a new record of a departure whose delay was set, and tells every listener, if the
+   * departure is registered. The departure must be locked.
+   */
+  private void fireDelayChanged(TrainDeparture trainDeparture, int previousDelayMinutes) {
+    Slot slot = slots.get(trainDeparture);
+    if (slot != null) {
+      publish(slot);
+      for (DepartureListener listener : listeners) {
+        listener.delayChanged(trainDeparture, previousDelayMinutes);
+      }
+    }
+  }
+
+  /**
+   * Gets the lock of a departure, picked by its line. The line of a registered departure is never
+   * changed, so a departure keeps its lock.
+   */
+  private ReentrantLock lockOf(TrainDeparture trainDeparture) {
+    return locks[stripeOf(trainDeparture)];
+  }
+
+  /**
+   * Gets the index of the lock of a departure.
+   */
+  private static int stripeOf(TrainDeparture trainDeparture) {
+    return trainDeparture.getLineId() & (STRIPES - 1);
+  }
+
+  /**
+   * Claims the lowest train number from where the last search stopped that is not in use.
+   */
+  private int claimFreeTrainNumber(TrainDeparture trainDeparture) {
+    while (true) {
+      int trainNumber = nextTrainNumber.getAndIncrement();
+      if (departuresByNumber.putIfAbsent(trainNumber, trainDeparture) == null) {
+        return trainNumber;
+      }
+    }
+  }
+
+  /**
+   * Makes an ordering key. The effective time is stored in the upper 32 bits and the insertion
+   * sequence in the lower 32 bits, so every key is unique.
+   */
+  private static long keyOf(int effectiveMinutes, int sequence) {
+    return ((long) effectiveMinutes << 32) | (sequence & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Ways a query can find its departures, from the most selective.
+   */
+  enum Access {
+    DESTINATION_INDEX,
+    TRACK_INDEX,
+    TIME_INDEX,
+    SCAN,
+    PARALLEL_SCAN
+  }
+
+  /**
+   * A registered departure, with the key it is stored under and its latest record.
+   */
+  private static final class Slot {
+    private final TrainDeparture departure;
+    private final int sequence;
+    // Only read and written while the departure is locked
+    private long key;
+    // Null once the departure is removed
+    private volatile DepartureRecord record;
+
+    /**
+     * Constructs a slot that is not yet published.
+     */
+    Slot(TrainDeparture departure, int sequence) {
+      this.departure = departure;
+      this.sequence = sequence;
+    }
+  }
+}
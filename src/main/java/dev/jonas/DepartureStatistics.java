@@ -0,0 +1,252 @@
+package dev.jonas;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code DepartureStatistics} class keeps live figures about the departures of a
+ * {@link DepartureRegistry}, such as the average delay of each line, how many trains are late and
+ * how busy each track is.
+ *
+ * <p>The registry updates the figures from the old and new {@link DepartureRecord} of every
+ * departure it adds, changes or removes, so reading a figure never visits the departures. Totals
+ * are kept in counters that many writers can add to at once, delays in a histogram with one
+ * bucket per minute, and tracks in an array with one count per track. The headline figures are
+ * read in O(1); figures read from the histogram are O(m) for m minutes of delay.
+ *
+ * <p>The figures are thread-safe. Each figure is exact once the changes that were running when it
+ * was read have finished; two figures read one after the other may be from slightly different
+ * moments, such as while a large batch of delays is applied.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DepartureStatistics statistics = registry.getStatistics();
+ *     double averageDelay = statistics.getAverageDelayMinutes("L1");
+ *     int late = statistics.getLateDepartures();
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class DepartureStatistics {
+
+  /**
+   * Minutes a departure must be delayed by, or more, to count as late.
+   *
+   * @since 1.3.0
+   */
+  public static final int LATE_MINUTES = 5;
+
+  // Delays are under 24 hours, see TrainDeparture#checkDelayMinutes(int)
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  private final int headwayMinutes;
+  private final LongAdder departures;
+  private final LongAdder delayedDepartures;
+  private final LongAdder lateDepartures;
+  private final LongAdder delayMinutes;
+  // Number of departures with each delay, in minutes
+  private final AtomicIntegerArray delayHistogram;
+  // Number of departures on each track. Index 0 is not used
+  private final AtomicIntegerArray trackDepartures;
+  private final ConcurrentHashMap<Integer, LineTotals> lines;
+
+  /**
+   * Constructs empty statistics.
+   *
+   * @param headwayMinutes Minutes a departure occupies its track for, used for the utilisation
+   *     of the tracks.
+   */
+  DepartureStatistics(int headwayMinutes) {
+    this.headwayMinutes = headwayMinutes;
+    departures = new LongAdder();
+    delayedDepartures = new LongAdder();
+    lateDepartures = new LongAdder();
+    delayMinutes = new LongAdder();
+    delayHistogram = new AtomicIntegerArray(MINUTES_PER_DAY);
+    trackDepartures = new AtomicIntegerArray(TrackOccupancy.MAX_TRACK + 1);
+    lines = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Moves a departure from its old record to its new one in every figure.
+   *
+   * @param previous Record before the change, or null if the departure was added.
+   * @param current Record after the change, or null if the departure was removed.
+   */
+  void update(DepartureRecord previous, DepartureRecord current) {
+    if (previous != null) {
+      count(previous, -1);
+    }
+    if (current != null) {
+      count(current, 1);
+    }
+  }
+
+  /**
+   * Gets the number of departures.
+   *
+   * @return Number of departures.
+   * @since 1.3.0
+   */
+  public int getDepartures() {
+    return departures.intValue();
+  }
+
+  /**
+   * Gets the number of departures that are delayed at all.
+   *
+   * @return Number of delayed departures.
+   * @since 1.3.0
+   */
+  public int getDelayedDepartures() {
+    return delayedDepartures.intValue();
+  }
+
+  /**
+   * Gets the number of departures delayed by {@link #LATE_MINUTES} or more.
+   *
+   * @return Number of late departures.
+   * @since 1.3.0
+   */
+  public int getLateDepartures() {
+    return lateDepartures.intValue();
+  }
+
+  /**
+   * Gets the number of departures delayed by a number of minutes or more.
+   *
+   * @param minutes Least delay to count, in minutes.
+   * @return Number of departures delayed by at least {@code minutes}.
+   * @since 1.3.0
+   */
+  public int getDeparturesDelayedBy(int minutes) {
+    int count = 0;
+    for (int delay = Math.max(minutes, 0); delay < MINUTES_PER_DAY; delay++) {
+      count += delayHistogram.get(delay);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the average delay of every departure, counting departures on time as no delay.
+   *
+   * @return Average delay in minutes, or 0 if there are no departures.
+   * @since 1.3.0
+   */
+  public double getAverageDelayMinutes() {
+    return average(delayMinutes.sum(), departures.sum());
+  }
+
+  /**
+   * Gets the number of departures of a line.
+   *
+   * @param line Name of the line, such as "L1".
+   * @return Number of departures of the line.
+   * @since 1.3.0
+   */
+  public int getDepartures(String line) {
+    LineTotals totals = totalsOf(line);
+    return totals == null ? 0 : totals.departures.intValue();
+  }
+
+  /**
+   * Gets the number of departures of a line delayed by {@link #LATE_MINUTES} or more.
+   *
+   * @param line Name of the line, such as "L1".
+   * @return Number of late departures of the line.
+   * @since 1.3.0
+   */
+  public int getLateDepartures(String line) {
+    LineTotals totals = totalsOf(line);
+    return totals == null ? 0 : totals.lateDepartures.intValue();
+  }
+
+  /**
+   * Gets the average delay of the departures of a line.
+   *
+   * @param line Name of the line, such as "L1".
+   * @return Average delay in minutes, or 0 if the line has no departures.
+   * @since 1.3.0
+   */
+  public double getAverageDelayMinutes(String line) {
+    LineTotals totals = totalsOf(line);
+    return totals == null ? 0 : average(totals.delayMinutes.sum(), totals.departures.sum());
+  }
+
+  /**
+   * Gets the number of departures on a track.
+   *
+   * @param track Track to count.
+   * @return Number of departures, or 0 if the track is not valid.
+   * @since 1.3.0
+   */
+  public int getTrackDepartures(int track) {
+    return track >= 1 && track <= TrackOccupancy.MAX_TRACK ? trackDepartures.get(track) : 0;
+  }
+
+  /**
+   * Gets the share of the service day a track is occupied, with every departure occupying its
+   * track for the headway of the registry.
+   *
+   * @param track Track to check.
+   * @return Share of the day between 0 and 1, or 0 if the track is not valid.
+   * @since 1.3.0
+   */
+  public double getTrackUtilisation(int track) {
+    return Math.min(1.0, (double) getTrackDepartures(track) * headwayMinutes / MINUTES_PER_DAY);
+  }
+
+  /**
+   * Adds a record to, or takes it from, every figure.
+   */
+  private void count(DepartureRecord record, int sign) {
+    int delay = record.delayMinutes();
+    departures.add(sign);
+    delayMinutes.add((long) sign * delay);
+    if (delay > 0) {
+      delayedDepartures.add(sign);
+    }
+    boolean late = delay >= LATE_MINUTES;
+    if (late) {
+      lateDepartures.add(sign);
+    }
+    delayHistogram.addAndGet(Math.min(delay, MINUTES_PER_DAY - 1), sign);
+    if (record.track() >= 1 && record.track() <= TrackOccupancy.MAX_TRACK) {
+      trackDepartures.addAndGet(record.track(), sign);
+    }
+    LineTotals totals = lines.computeIfAbsent(record.lineId(), lineId -> new LineTotals());
+    totals.departures.add(sign);
+    totals.delayMinutes.add((long) sign * delay);
+    if (late) {
+      totals.lateDepartures.add(sign);
+    }
+  }
+
+  /**
+   * Gets the totals of a line, or null if it never had a departure.
+   */
+  private LineTotals totalsOf(String line) {
+    int lineId = SymbolTable.LINES.find(line);
+    return lineId == -1 ? null : lines.get(lineId);
+  }
+
+  /**
+   * Divides a sum by a count, or gives 0 if the count is 0.
+   */
+  private static double average(long sum, long count) {
+    return count <= 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Totals of the departures of one line.
+   */
+  private static final class LineTotals {
+    private final LongAdder departures = new LongAdder();
+    private final LongAdder lateDepartures = new LongAdder();
+    private final LongAdder delayMinutes = new LongAdder();
+  }
+}
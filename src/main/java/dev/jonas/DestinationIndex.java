@@ -0,0 +1,206 @@
+package dev.jonas;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The {@code DestinationIndex} class finds train departures by the start of their destination.
+ *
+ * <p>Destinations are normalized before they are indexed: accents are removed, letters that do
+ * not decompose (like "ø" and "æ") are folded to their closest plain spelling, and everything is
+ * lower-cased. Every word of a destination is indexed, so both "lilles" and "LILLESTROM" match
+ * "Lillestrøm", and "lufthavn" matches "Oslo Lufthavn".
+ *
+ * <p>The index is a sorted map from normalized word-suffix to departures, so a search is a range
+ * lookup in O(log n + k) where k is the number of matching departures. The index is
+ * thread-safe, as every method locks it.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class DestinationIndex {
+
+  // Normalized suffix of a destination, starting at a word, mapped to departures with it
+  private final TreeMap<String, Set<TrainDeparture>> departuresByKey;
+  // The destination id each departure was indexed with
+  private final Map<TrainDeparture, Integer> indexedDestinations;
+  // Word suffixes of every normalized destination, by destination id, so each name is only
+  // normalized once
+  private String[][] keysByDestinationId;
+
+  /**
+   * Constructs a new, empty {@code DestinationIndex}.
+   *
+   * @since 1.3.0
+   */
+  public DestinationIndex() {
+    departuresByKey = new TreeMap<>();
+    indexedDestinations = new IdentityHashMap<>();
+    keysByDestinationId = new String[16][];
+  }
+
+  /**
+   * Adds a train departure to the index under its current destination. If the departure is
+   * already indexed, it is moved to its current destination.
+   *
+   * @param trainDeparture Departure to index. Cannot be null.
+   * @since 1.3.0
+   */
+  public synchronized void add(TrainDeparture trainDeparture) {
+    remove(trainDeparture);
+    int destinationId = trainDeparture.getDestinationId();
+    indexedDestinations.put(trainDeparture, destinationId);
+    for (String key : keysOf(destinationId)) {
+      departuresByKey
+          .computeIfAbsent(key, k -> Collections.newSetFromMap(new IdentityHashMap<>()))
+          .add(trainDeparture);
+    }
+  }
+
+  /**
+   * Removes a train departure from the index.
+   *
+   * @param trainDeparture Departure to remove.
+   * @since 1.3.0
+   */
+  public synchronized void remove(TrainDeparture trainDeparture) {
+    Integer destinationId = indexedDestinations.remove(trainDeparture);
+    if (destinationId == null) {
+      return;
+    }
+    for (String key : keysOf(destinationId)) {
+      Set<TrainDeparture> departures = departuresByKey.get(key);
+      if (departures != null) {
+        departures.remove(trainDeparture);
+        if (departures.isEmpty()) {
+          departuresByKey.remove(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds every indexed train departure where a word of the destination starts with the given
+   * text. The text is normalized the same way as destinations.
+   *
+   * @param prefix Start of a word in the destination. Empty matches every departure.
+   * @return Matching departures, in no particular order. Never null.
+   * @since 1.3.0
+   */
+  public synchronized List<TrainDeparture> search(String prefix) {
+    String key = normalize(prefix);
+    SortedMap<String, Set<TrainDeparture>> matches = key.isEmpty()
+        ? departuresByKey
+        : departuresByKey.subMap(key, key + Character.MAX_VALUE);
+
+    // A departure can match through more than one word, but should only be listed once
+    Set<TrainDeparture> found = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Set<TrainDeparture> departures : matches.values()) {
+      found.addAll(departures);
+    }
+    return new ArrayList<>(found);
+  }
+
+  /**
+   * Checks if a word of a destination starts with the given text, by the same rules as
+   * {@link #search(String)}, without an index.
+   *
+   * @param destination Destination to check.
+   * @param prefix Start of a word in the destination. Empty matches every destination.
+   * @return True if the destination matches, false otherwise.
+   * @since 1.3.0
+   */
+  public static boolean matches(String destination, String prefix) {
+    String key = normalize(prefix);
+    for (String suffix : wordSuffixes(normalize(destination))) {
+      if (suffix.startsWith(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets the number of indexed train departures.
+   *
+   * @return Number of departures.
+   * @since 1.3.0
+   */
+  public synchronized int size() {
+    return indexedDestinations.size();
+  }
+
+  /**
+   * Normalizes a destination or search text. Removes accents, folds letters without a
+   * decomposition, lower-cases and trims.
+   *
+   * @param text Text to normalize. Null is treated as empty.
+   * @return Normalized text. Never null.
+   * @since 1.3.0
+   */
+  public static String normalize(String text) {
+    if (text == null) {
+      return "";
+    }
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+    StringBuilder normalized = new StringBuilder(decomposed.length());
+    for (int i = 0; i < decomposed.length(); i++) {
+      char c = decomposed.charAt(i);
+      if (Character.getType(c) == Character.NON_SPACING_MARK) {
+        continue;  // Accent split off by the decomposition
+      }
+      switch (Character.toLowerCase(c)) {
+        case 'ø' -> normalized.append('o');
+        case 'æ' -> normalized.append("ae");
+        case 'œ' -> normalized.append("oe");
+        case 'ß' -> normalized.append("ss");
+        case 'đ' -> normalized.append('d');
+        default -> normalized.append(Character.toLowerCase(c));
+      }
+    }
+    return normalized.toString().trim();
+  }
+
+  /**
+   * Gets the index keys of a destination, normalizing it the first time it is seen.
+   */
+  private String[] keysOf(int destinationId) {
+    if (destinationId >= keysByDestinationId.length) {
+      keysByDestinationId = Arrays.copyOf(keysByDestinationId,
+          Math.max(destinationId + 1, keysByDestinationId.length * 2));
+    }
+    String[] keys = keysByDestinationId[destinationId];
+    if (keys == null) {
+      String destination = normalize(SymbolTable.DESTINATIONS.get(destinationId));
+      keys = wordSuffixes(destination).toArray(new String[0]);
+      keysByDestinationId[destinationId] = keys;
+    }
+    return keys;
+  }
+
+  /**
+   * Gets every suffix of a normalized destination that starts at a word.
+   */
+  private static List<String> wordSuffixes(String destination) {
+    List<String> suffixes = new ArrayList<>(2);
+    for (int i = 0; i < destination.length(); i++) {
+      boolean wordStart = i == 0 || !Character.isLetterOrDigit(destination.charAt(i - 1));
+      if (wordStart && Character.isLetterOrDigit(destination.charAt(i))) {
+        suffixes.add(destination.substring(i));
+      }
+    }
+    if (suffixes.isEmpty()) {
+      suffixes.add(destination);  // Keeps destinations without words searchable by the empty text
+    }
+    return suffixes;
+  }
+}
@@ -0,0 +1,265 @@
+package dev.jonas;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code DispatchServer} class serves the menus of {@link Io} to many operators at once over
+ * TCP, such as from {@code telnet} or {@code nc}.
+ *
+ * <p>Every connection gets its own session, with its own {@link Io} bound to the connection
+ * through {@link Terminal#bindSession(BufferedReader, PrintStream)}, so each operator has their
+ * own menus and selected departure. Every session shares one {@link DepartureRegistry} and one
+ * {@link DelayPropagation}, so a delay set by one operator is seen by all of them, and passed on
+ * through the same dependencies. Every session also shares one clock, as moving the clock forward
+ * removes the departed trains from the registry for every operator.
+ *
+ * <p>Each session runs on its own virtual thread. A session spends nearly all its time waiting for
+ * the operator to type, and a virtual thread that waits for a socket gives up its carrier thread,
+ * so hundreds of sessions only need as many platform threads as there are cores.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     DispatchServer server = new DispatchServer(registry, 2323);
+ *     server.start();
+ *     server.awaitClose();
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class DispatchServer implements Closeable {
+
+  private final DepartureRegistry departureRegistry;
+  private final DelayPropagation delayPropagation;
+  // Current time of every session, in minutes after midnight
+  private final AtomicInteger clock;
+  private final ServerSocket serverSocket;
+  private final ExecutorService sessions;
+  private final Set<Socket> connections;
+  private final Thread acceptor;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a server that listens on a port. Connections are not accepted until the server is
+   * started.
+   *
+   * @param departureRegistry Registry every session shares. Cannot be null.
+   * @param port Port to listen on, or 0 for any free port.
+   * @throws IOException if the port could not be listened on.
+   * @since 1.3.0
+   */
+  public DispatchServer(DepartureRegistry departureRegistry, int port) throws IOException {
+    this(departureRegistry, new DelayPropagation(departureRegistry), port);
+  }
+
+  /**
+   * Constructs a server that listens on a port, where delays are passed on through the
+   * dependencies of a propagation. Connections are not accepted until the server is started.
+   *
+   * @param departureRegistry Registry every session shares. Cannot be null.
+   * @param delayPropagation Propagation of the registry every session shares. Cannot be null.
+   * @param port Port to listen on, or 0 for any free port.
+   * @throws IOException if the port could not be listened on.
+   * @since 1.3.0
+   */
+  public DispatchServer(DepartureRegistry departureRegistry, DelayPropagation delayPropagation,
+      int port) throws IOException {
+    this(departureRegistry, delayPropagation, new AtomicInteger(Io.START_MINUTES), port);
+  }
+
+  /**
+   * Constructs a server whose sessions start at the time of a clock, and move it.
+   *
+   * @param departureRegistry Registry every session shares. Cannot be null.
+   * @param delayPropagation Propagation of the registry every session shares. Cannot be null.
+   * @param clock Current time in minutes after midnight, shared by every session. Cannot be null.
+   * @param port Port to listen on, or 0 for any free port.
+   * @throws IOException if the port could not be listened on.
+   */
+  DispatchServer(DepartureRegistry departureRegistry, DelayPropagation delayPropagation,
+      AtomicInteger clock, int port) throws IOException {
+    this.departureRegistry = departureRegistry;
+    this.delayPropagation = delayPropagation;
+    this.clock = clock;
+    serverSocket = new ServerSocket();
+    serverSocket.setReuseAddress(true);
+    serverSocket.bind(new InetSocketAddress(port));
+    sessions = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("dispatch-session-", 1).factory());
+    connections = ConcurrentHashMap.newKeySet();
+    acceptor = new Thread(this::acceptUntilClosed, "dispatch-server");
+    closed = false;
+  }
+
+  /**
+   * Starts accepting connections, on a thread of its own.
+   *
+   * @since 1.3.0
+   */
+  public void start() {
+    acceptor.start();
+  }
+
+  /**
+   * Gets the port the server listens on.
+   *
+   * @return The port.
+   * @since 1.3.0
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Gets the number of open sessions.
+   *
+   * @return Number of sessions.
+   * @since 1.3.0
+   */
+  public int getSessionCount() {
+    return connections.size();
+  }
+
+  /**
+   * Waits until the server is closed.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   * @since 1.3.0
+   */
+  public void awaitClose() throws InterruptedException {
+    acceptor.join();
+  }
+
+  /**
+   * Stops accepting connections, disconnects every session and waits for the sessions to end.
+   *
+   * @since 1.3.0
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    closeQuietly(serverSocket);
+    for (Socket connection : connections) {
+      closeQuietly(connection);
+    }
+    sessions.shutdown();
+    try {
+      sessions.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Accepts connections and starts a session for each, until the server is closed.
+   */
+  private void acceptUntilClosed() {
+    while (!closed) {
+      try {
+        Socket connection = serverSocket.accept();
+        connections.add(connection);
+        sessions.execute(() -> runSession(connection));
+      } catch (IOException e) {
+        if (!closed) {
+          Terminal.writeLine("Could not accept connection: " + e.getMessage());
+        }
+      } catch (RuntimeException e) {
+        break;  // Sessions are no longer accepted, as the server is closing
+      }
+    }
+  }
+
+  /**
+   * Runs the menus of one operator on the current thread, until the operator quits or
+   * disconnects.
+   */
+  private void runSession(Socket connection) {
+    try (connection) {
+      connection.setTcpNoDelay(true);
+      BufferedReader input = new BufferedReader(new InputStreamReader(
+          new SessionInput(connection.getInputStream()), StandardCharsets.UTF_8));
+      PrintStream output = new PrintStream(
+          new BufferedOutputStream(connection.getOutputStream()), false, StandardCharsets.UTF_8);
+      Terminal.bindSession(input, output);
+      try {
+        new Io(departureRegistry, delayPropagation, clock).run();
+      } finally {
+        output.flush();
+        Terminal.unbindSession();
+      }
+    } catch (IOException e) {
+      // The operator disconnected
+    } finally {
+      connections.remove(connection);
+    }
+  }
+
+  /**
+   * Closes a socket, ignoring errors.
+   */
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // Closed anyway
+    }
+  }
+
+  /**
+   * An input that ends when its connection fails, so a session sees a lost connection the same
+   * way as an operator that disconnects.
+   *
+   * <p>The input is wrapped instead of the reader, as a subclass of {@link BufferedReader} locks
+   * with a monitor, and a virtual thread waiting for input inside a monitor holds on to its
+   * carrier thread. Sessions waiting for their operators would then take up every carrier.
+   */
+  private static final class SessionInput extends FilterInputStream {
+
+    /**
+     * Constructs an input of a connection.
+     */
+    SessionInput(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() {
+      try {
+        return super.read();
+      } catch (IOException e) {
+        return -1;
+      }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      try {
+        return super.read(buffer, offset, length);
+      } catch (IOException e) {
+        return -1;
+      }
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package dev.jonas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The {@code FormatBuffer} class is a growable buffer of UTF-8 bytes for text that is written
+ * often, such as the lines of the departure board.
+ *
+ * <p>Times, numbers and padded text are written straight into the buffer. Digits are looked up in
+ * precomputed tables, two at a time, and strings are encoded to UTF-8 by hand, so formatting
+ * makes no objects. The buffer is meant to be cleared and reused, and only allocates when it has
+ * to grow.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     FormatBuffer buffer = new FormatBuffer(64);
+ *     buffer.appendTime(16 * 60 + 37).append(' ').appendPadded("Oslo S", 17).appendInt(1);
+ *     buffer.writeTo(System.out);  // "16:37 Oslo S            1"
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class FormatBuffer {
+
+  // Tens and ones digit of every number from 0 to 99
+  private static final byte[] TENS = new byte[100];
+  private static final byte[] ONES = new byte[100];
+
+  static {
+    for (int i = 0; i < 100; i++) {
+      TENS[i] = (byte) ('0' + i / 10);
+      ONES[i] = (byte) ('0' + i % 10);
+    }
+  }
+
+  private byte[] bytes;
+  private int length;
+
+  /**
+   * Constructs an empty buffer.
+   *
+   * @param capacity Number of bytes the buffer holds before it grows. Must be positive.
+   * @throws IllegalArgumentException if the capacity is not positive.
+   * @since 1.3.0
+   */
+  public FormatBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+    }
+    bytes = new byte[capacity];
+    length = 0;
+  }
+
+  /**
+   * Empties the buffer, keeping its capacity.
+   *
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer clear() {
+    length = 0;
+    return this;
+  }
+
+  /**
+   * Gets the number of bytes in the buffer.
+   *
+   * @return Number of bytes.
+   * @since 1.3.0
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Appends an ASCII character.
+   *
+   * @param c Character to append. Must be ASCII.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer append(char c) {
+    ensureCapacity(length + 1);
+    bytes[length++] = (byte) c;
+    return this;
+  }
+
+  /**
+   * Appends a string encoded as UTF-8.
+   *
+   * @param text Text to append. Cannot be null.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer append(String text) {
+    int count = text.length();
+    ensureCapacity(length + count * 3);  // No char needs more than three bytes
+    for (int i = 0; i < count; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        bytes[length++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[length++] = (byte) (0xC0 | c >> 6);
+        bytes[length++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i + 1 < count
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+        bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+        bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+        bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+      } else if (Character.isSurrogate(c)) {
+        bytes[length++] = '?';  // Half of a pair, as the standard encoder replaces it
+      } else {
+        bytes[length++] = (byte) (0xE0 | c >> 12);
+        bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+        bytes[length++] = (byte) (0x80 | c & 0x3F);
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Appends a string, followed by spaces up to the given width. Nothing is cut if the string is
+   * longer. The width is counted in chars, as {@link String#length()} does.
+   *
+   * @param text Text to append. Cannot be null.
+   * @param width Number of chars to pad to.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer appendPadded(String text, int width) {
+    append(text);
+    int spaces = width - text.length();
+    if (spaces > 0) {
+      ensureCapacity(length + spaces);
+      Arrays.fill(bytes, length, length + spaces, (byte) ' ');
+      length += spaces;
+    }
+    return this;
+  }
+
+  /**
+   * Appends an integer in decimal.
+   *
+   * @param value Number to append.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer appendInt(int value) {
+    if (value < 0) {
+      if (value == Integer.MIN_VALUE) {
+        return append("-2147483648");
+      }
+      append('-');
+      return appendInt(-value);
+    }
+    if (value < 100) {
+      ensureCapacity(length + 2);
+      if (value >= 10) {
+        bytes[length++] = TENS[value];
+      }
+      bytes[length++] = ONES[value];
+      return this;
+    }
+
+    // Writes two digits at a time from the end
+    int digits = 1;
+    for (int rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    ensureCapacity(length + digits);
+    int position = length + digits;
+    int rest = value;
+    while (rest >= 100) {
+      int pair = rest % 100;
+      rest /= 100;
+      bytes[--position] = ONES[pair];
+      bytes[--position] = TENS[pair];
+    }
+    bytes[--position] = ONES[rest];
+    if (rest >= 10) {
+      bytes[--position] = TENS[rest];
+    }
+    length += digits;
+    return this;
+  }
+
+  /**
+   * Appends a time as HH:MM. Minutes past midnight of the next day wrap around.
+   *
+   * @param minutes Non-negative time in minutes after midnight.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer appendTime(int minutes) {
+    int hour = minutes / 60 % 24;
+    int minute = minutes % 60;
+    ensureCapacity(length + 5);
+    bytes[length++] = TENS[hour];
+    bytes[length++] = ONES[hour];
+    bytes[length++] = ':';
+    bytes[length++] = TENS[minute];
+    bytes[length++] = ONES[minute];
+    return this;
+  }
+
+  /**
+   * Appends bytes that are already encoded, such as text encoded once and kept.
+   *
+   * @param source Bytes to append. Cannot be null.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer append(byte[] source) {
+    ensureCapacity(length + source.length);
+    System.arraycopy(source, 0, bytes, length, source.length);
+    length += source.length;
+    return this;
+  }
+
+  /**
+   * Appends the contents of another buffer.
+   *
+   * @param other Buffer to append. Cannot be null.
+   * @return This buffer.
+   * @since 1.3.0
+   */
+  public FormatBuffer append(FormatBuffer other) {
+    ensureCapacity(length + other.length);
+    System.arraycopy(other.bytes, 0, bytes, length, other.length);
+    length += other.length;
+    return this;
+  }
+
+  /**
+   * Checks if the buffer holds the same bytes as the start of an array.
+   *
+   * @param other Array to compare with.
+   * @param otherLength Number of bytes of the array to compare.
+   * @return True if the buffer holds exactly those bytes.
+   * @since 1.3.0
+   */
+  public boolean contentEquals(byte[] other, int otherLength) {
+    return otherLength == length && Arrays.equals(bytes, 0, length, other, 0, length);
+  }
+
+  /**
+   * Copies the bytes of the buffer into an array, growing the array if it is too small.
+   *
+   * @param target Array to copy into. May be null.
+   * @return The array the bytes were copied into.
+   * @since 1.3.0
+   */
+  public byte[] copyTo(byte[] target) {
+    byte[] copy = target;
+    if (copy == null || copy.length < length) {
+      copy = new byte[Math.max(length, 32)];
+    }
+    System.arraycopy(bytes, 0, copy, 0, length);
+    return copy;
+  }
+
+  /**
+   * Copies the bytes of the buffer into a new array of the same length.
+   *
+   * @return The bytes in the buffer.
+   * @since 1.3.0
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(bytes, length);
+  }
+
+  /**
+   * Writes the bytes of the buffer to a stream, with one write.
+   *
+   * @param out Stream to write to. Cannot be null.
+   * @throws IOException if the stream could not be written.
+   * @since 1.3.0
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes, 0, length);
+  }
+
+  /**
+   * Decodes the bytes of the buffer.
+   *
+   * @return The text in the buffer.
+   * @since 1.3.0
+   */
+  @Override
+  public String toString() {
+    return new String(bytes, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Grows the array to hold at least the given number of bytes.
+   */
+  private void ensureCapacity(int capacity) {
+    if (capacity > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+  }
+}
@@ -1,10 +1,16 @@
 package dev.jonas;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The {@code Interface} class represents the interface of the application.
@@ -19,7 +25,7 @@ import java.util.Objects;
  * </p>
  *
  * @author Jonas Birkeli
- * @version 1.2.0
+ * @version 1.3.0
  * @since 1.0.0
  */
 @SuppressWarnings({"ClassWithoutLogger", "PublicMethodWithoutLogging",
@@ -29,9 +35,15 @@ public class Io {
   // Variables used in this class
   private int state;
   private boolean running;
-  private ArrayList<TrainDeparture> trainDepartures;
+  private DepartureRegistry departureRegistry;
+  private DelayPropagation delayPropagation;
   private TrainDeparture selectedTrainDeparture;
-  private int[] currentTime;
+  // Current time in minutes after midnight, shared by every session of a server
+  private final AtomicInteger clock;
+  private Path snapshotPath;
+  private DepartureJournal journal;
+  private DelayFeed delayFeed;
+  private final BoardRenderer boardRenderer;
 
   // Constants for the different modes
   private static final int SELECTMODE = 0;
@@ -42,19 +54,80 @@ public class Io {
   private static final int SEARCH_TRAIN_BY_NUMBER_MODE = 5;
   private static final int SEARCH_TRAIN_BY_DESTINATION_MODE = 6;
   private static final int UPDATE_TIME_MODE = 7;
+  private static final int PLAN_TRACKS_MODE = 8;
+  private static final int STATISTICS_MODE = 9;
   private static final int QUIT_APPLICATION_MODE = 10;
 
+  // Timers of the menus, by mode. Time spent waiting for input is left out, see Terminal
+  private static final Metrics.Timer[] MENU_TIMERS = menuTimers("select", "view", "add",
+      "assign-track", "notify-delay", "search-number", "search-destination", "update-time",
+      "plan-tracks", "statistics", "quit");
+
+  // Time the clock starts at, in minutes after midnight
+  static final int START_MINUTES = 16 * 60 + 37;
+
+  // Index of the optional train number in the fields of a new train departure
+  private static final int TRAIN_NUMBER_FIELD = 5;
+
+  // Number of free tracks suggested when a track is taken
+  private static final int SUGGESTED_TRACKS = 5;
+
   /**
    * Constructs a new {@code Interface} with default fields.
    *
    * @since 1.0.0
    */
   public Io() {
+    this(new DepartureRegistry());
+  }
+
+  /**
+   * Constructs a new {@code Interface} that shows and changes the departures of a registry, which
+   * may be shared with other interfaces. Output is written to the {@link Terminal} of the thread
+   * that constructs it.
+   *
+   * @param departureRegistry Registry of departures. Cannot be null.
+   * @since 1.3.0
+   */
+  public Io(DepartureRegistry departureRegistry) {
+    this(departureRegistry, new DelayPropagation(departureRegistry));
+  }
+
+  /**
+   * Constructs a new {@code Interface} that shows and changes the departures of a registry, and
+   * passes delays on through the dependencies of a propagation. Both may be shared with other
+   * interfaces. Output is written to the {@link Terminal} of the thread that constructs it.
+   *
+   * @param departureRegistry Registry of departures. Cannot be null.
+   * @param delayPropagation Propagation of the registry. Cannot be null.
+   * @since 1.3.0
+   */
+  public Io(DepartureRegistry departureRegistry, DelayPropagation delayPropagation) {
+    this(departureRegistry, delayPropagation, new AtomicInteger(START_MINUTES));
+  }
+
+  /**
+   * Constructs a new {@code Interface} that also shares its clock with other interfaces, such as
+   * the sessions of a {@link DispatchServer}. Moving the clock forward removes the departures it
+   * has moved past from the registry, so every interface sharing the registry must share the
+   * clock as well.
+   *
+   * @param departureRegistry Registry of departures. Cannot be null.
+   * @param delayPropagation Propagation of the registry. Cannot be null.
+   * @param clock Current time in minutes after midnight. Cannot be null.
+   */
+  Io(DepartureRegistry departureRegistry, DelayPropagation delayPropagation,
+      AtomicInteger clock) {
     state = SELECTMODE;
-    trainDepartures = new ArrayList<>();
+    this.departureRegistry = departureRegistry;
+    this.delayPropagation = delayPropagation;
     selectedTrainDeparture = null;
     running = true;
-    currentTime = new int[]{16, 37};
+    this.clock = clock;
+    snapshotPath = null;
+    journal = null;
+    delayFeed = null;
+    boardRenderer = new BoardRenderer(Terminal.output());
   }
 
   /**
@@ -68,63 +141,225 @@ public class Io {
    * @see #notifyDelayMenu()
    * @see #updateTime()
    * @see #quitApplication()
+   * @see #run()
    * @see TrainDeparture
    * @since 1.0.0
    */
   public void start() {
-    TrainDeparture train = new TrainDeparture(
-        new int[]{16, 37},
-        "L1",
-        "Oslo S",
-        1
-    );
-    trainDepartures.add(train);
-    TrainDeparture train2 = new TrainDeparture(
-        new int[]{18, 58},
-        "L3",
-        "Lillestrøm",
-        2
-    );
-    trainDepartures.add(train2);
+    // Adds two sample departures when no timetable has been loaded
+    if (departureRegistry.size() == 0) {
+      TrainDeparture train = new TrainDeparture(
+          new int[]{16, 37},
+          "L1",
+          "Oslo S",
+          1
+      );
+      departureRegistry.add(train);
+      TrainDeparture train2 = new TrainDeparture(
+          new int[]{18, 58},
+          "L3",
+          "Lillestrøm",
+          2
+      );
+      departureRegistry.add(train2);
+    }
+    run();
+  }
 
+  /**
+   * Shows the menus until the user quits, without adding sample departures. Used by sessions that
+   * share a registry.
+   *
+   * @see #start()
+   * @since 1.3.0
+   */
+  public void run() {
     while (running) {
-      switch (state) {
-        case SELECTMODE -> showSelectModeMenu();
-        case VIEW_TRAIN_DEPARTURE_MODE -> showTrainDepartureMenu();
-        case ADD_TRAIN_DEPARTURE_MODE -> addTrainDepartureMenu();
-        case ASSIGN_TRACK_MODE -> assignTrackMenu();
-        case NOTIFY_DELAY_MODE -> notifyDelayMenu();
-        case SEARCH_TRAIN_BY_NUMBER_MODE -> searchTrainByNumberMenu();
-        case SEARCH_TRAIN_BY_DESTINATION_MODE -> searchTrainByDestinationMenu();
-        case UPDATE_TIME_MODE -> updateTime();
-        case QUIT_APPLICATION_MODE -> quitApplication();
-        default -> running = false;
+      Metrics.Sample sample = state >= 0 && state < MENU_TIMERS.length
+          ? MENU_TIMERS[state].start() : null;
+      try {
+        switch (state) {
+          case SELECTMODE -> showSelectModeMenu();
+          case VIEW_TRAIN_DEPARTURE_MODE -> showTrainDepartureMenu();
+          case ADD_TRAIN_DEPARTURE_MODE -> addTrainDepartureMenu();
+          case ASSIGN_TRACK_MODE -> assignTrackMenu();
+          case NOTIFY_DELAY_MODE -> notifyDelayMenu();
+          case SEARCH_TRAIN_BY_NUMBER_MODE -> searchTrainByNumberMenu();
+          case SEARCH_TRAIN_BY_DESTINATION_MODE -> searchTrainByDestinationMenu();
+          case UPDATE_TIME_MODE -> updateTime();
+          case PLAN_TRACKS_MODE -> planTracksMenu();
+          case STATISTICS_MODE -> statisticsMenu();
+          case QUIT_APPLICATION_MODE -> quitApplication();
+          default -> running = false;
+        }
+      } catch (RuntimeException e) {
+        // A menu that fails goes back to the main menu, so one bad command does not end the
+        // interface, or the session of an operator on a server
+        Terminal.writeLine("Error " + e + "\n");
+        state = SELECTMODE;
+      } finally {
+        if (sample != null) {
+          sample.stop();
+        }
       }
     }
   }
 
+  /**
+   * Loads every departure of a columnar timetable, so they show up in all menus.
+   *
+   * @param timetable Timetable to load. Cannot be null.
+   * @return Number of departures loaded.
+   * @see DepartureRegistry#addAll(ColumnarTimetable)
+   * @since 1.3.0
+   */
+  public int loadTimetable(ColumnarTimetable timetable) {
+    return departureRegistry.addAll(timetable);
+  }
+
+  /**
+   * Imports every departure of a CSV or TSV timetable file, so they show up in all menus.
+   *
+   * @param path Timetable file to import.
+   * @return Number of departures imported.
+   * @throws IOException if the file could not be read or is not in the expected format.
+   * @see TimetableImporter
+   * @since 1.3.0
+   */
+  public int importTimetable(Path path) throws IOException {
+    return loadTimetable(new TimetableImporter().importFile(path));
+  }
+
+  /**
+   * Uses a snapshot file to keep departures between runs. Loads the snapshot now if the file
+   * exists, and writes a new snapshot when the user quits the application.
+   *
+   * @param path Snapshot file.
+   * @return Number of departures loaded, 0 if the file does not exist yet.
+   * @throws IOException if the file exists but could not be read.
+   * @see TimetableSnapshot
+   * @since 1.3.0
+   */
+  public int useSnapshot(Path path) throws IOException {
+    snapshotPath = path;
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    return loadTimetable(TimetableSnapshot.read(path));
+  }
+
+  /**
+   * Writes a snapshot of every departure, sorted by effective departure time.
+   *
+   * @param path Snapshot file to write.
+   * @throws IOException if the file could not be written.
+   * @see TimetableSnapshot
+   * @since 1.3.0
+   */
+  public void saveSnapshot(Path path) throws IOException {
+    TimetableSnapshot.writeRecords(path,
+        departureRegistry.snapshot(Integer.MIN_VALUE, Integer.MAX_VALUE));
+  }
+
+  /**
+   * Logs every change to the departures to a journal file, so they survive a crash. Changes
+   * already in the journal are replayed first, so a journal should be used after the snapshot it
+   * belongs to is loaded. The journal is emptied when a snapshot is saved on quit.
+   *
+   * @param path Journal file. Created if it does not exist.
+   * @return Number of departures after the journal has been replayed.
+   * @throws IOException if the journal could not be opened or replayed.
+   * @see DepartureJournal
+   * @since 1.3.0
+   */
+  public int useJournal(Path path) throws IOException {
+    journal = DepartureJournal.open(path, departureRegistry);
+    return departureRegistry.size();
+  }
+
+  /**
+   * Follows a file of delay updates in the background, and applies them in batches while the
+   * interface runs. Every line of the file is a train number and a delay, such as "601 5". The
+   * delays are passed on to the departures that depend on the delayed ones.
+   *
+   * @param path Feed file. Followed from the start, and waited for if it does not exist yet.
+   * @see DelayFeed
+   * @since 1.3.0
+   */
+  public void useDelayFeed(Path path) {
+    if (delayFeed == null) {
+      delayFeed = new DelayFeed(delayPropagation);
+    }
+    delayFeed.follow(path);
+  }
+
+  /**
+   * Serves the interface to operators over TCP, with one session per connection, all sharing the
+   * departures and the clock of this interface. Blocks until the server is closed. Stopping the
+   * program closes the server, and saves the snapshot and closes the journal like quitting does.
+   *
+   * @param port Port to listen on, or 0 for any free port.
+   * @param messages Stream the port is written to once the server listens. Cannot be null.
+   * @throws IOException if the port could not be listened on.
+   * @see DispatchServer
+   * @since 1.3.0
+   */
+  public void serve(int port, PrintStream messages) throws IOException {
+    DispatchServer server = new DispatchServer(departureRegistry, delayPropagation, clock, port);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.close();
+      saveAndClose();
+    }, "dispatch-server-shutdown"));
+    server.start();
+    messages.println("Serving operators on port " + server.getPort());
+    try {
+      server.awaitClose();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      server.close();
+    }
+  }
+
+  /**
+   * Runs a script of commands without the menus, and writes the results in a machine-readable
+   * form. Starts at the current time of the interface, and saves the snapshot and closes the
+   * journal when the script ends, like quitting does.
+   *
+   * @param script Script to read commands from. Cannot be null.
+   * @param out Stream results are written to. Cannot be null.
+   * @return Number of commands that failed.
+   * @throws IOException if the script could not be read.
+   * @see BatchProcessor
+   * @since 1.3.0
+   */
+  public int runBatch(BufferedReader script, PrintStream out) throws IOException {
+    BatchProcessor batchProcessor = new BatchProcessor(departureRegistry, delayPropagation, out);
+    batchProcessor.setCurrentTime(clock.get());
+    int errors;
+    try {
+      errors = batchProcessor.run(script);
+    } finally {
+      clock.set(batchProcessor.getCurrentTime());
+      saveAndClose();
+    }
+    return errors;
+  }
+
   /**
    * Menu to search for a train departure by train number.
-   * Will ask user for index of train, and set the selected train to a refrenace to this train.
+   * Will ask user for the train number, and set the selected train to a refrenace to this train.
    *
-   * @see #getValidInputFromUser(String)
+   * @see #getTrainDepartureFromUser(String)
    * @since 1.2.0
    */
   private void searchTrainByNumberMenu() {
     printNumeratedTrainDepartures();
 
     // Gets input from user
-    String input = getValidInputFromUser("Enter train number: ");
-    if (input.isEmpty()) { // Checks if input is empty
-      exitToMenu();
-      return;
+    TrainDeparture trainDeparture = getTrainDepartureFromUser("Enter train number: ");
+    if (trainDeparture != null) {
+      selectedTrainDeparture = trainDeparture;
     }
-    int idx = Integer.parseInt(input);
-    if (idx < 0 || idx >= trainDepartures.size()) {
-      exitToMenu();
-      return;
-    }
-    selectedTrainDeparture = trainDepartures.get(idx);
 
     exitToMenu();
   }
@@ -132,13 +367,16 @@ public class Io {
 
   /**
    * Menu to search for a train departure by destination.
-   * Will ask user for index of train, and set the selected train to a refrenace to this train.
+   * Will ask user for the start of a destination, and list every matching train. If one train
+   * matches, it is selected. If more match, will ask user for index of train, and set the selected
+   * train to a refrenace to this train.
    *
+   * @see DepartureRegistry#searchByDestination(String)
    * @see #getValidInputFromUser(String)
    * @since 1.2.0
    */
   private void searchTrainByDestinationMenu() {
-    printNumeratedTrainDepartures();
+    clearScreen();
 
     // Gets input from user
     String input = getValidInputFromUser("Enter destination: ");
@@ -147,206 +385,254 @@ public class Io {
       return;
     }
 
-    int idx = Integer.parseInt(input);
+    List<TrainDeparture> matches = departureRegistry.searchByDestination(input);
+    if (matches.isEmpty()) {
+      Terminal.writeLine("No departures to " + input);
+      exitToMenuWithPrompt();
+      return;
+    }
+    if (matches.size() == 1) {
+      selectedTrainDeparture = matches.get(0);
+      exitToMenu();
+      return;
+    }
+
+    // Prints every match with indexes prefixed
+    for (int i = 0; i < matches.size(); i++) {
+      Terminal.write(i + " : ");
+      Terminal.writeLine(matches.get(i).toString());
+    }
 
-    if (idx < 0 || idx >= trainDepartures.size()) {
+    input = getValidInputFromUser("Enter index of train: ");
+    int idx;
+    try {
+      idx = Integer.parseInt(input);
+    } catch (NumberFormatException e) {
       exitToMenu();
       return;
     }
 
-    selectedTrainDeparture = trainDepartures.get(idx);
+    if (idx < 0 || idx >= matches.size()) {
+      exitToMenu();
+      return;
+    }
+
+    selectedTrainDeparture = matches.get(idx);
 
     exitToMenu();
   }
 
   /**
-   * Menu to assign a track to a train departure. Will ask user for index of train departure to
-   * assign track to. Will ask user for track number. Converts from string to int with overflow
+   * Menu to assign a track to a train departure. Will ask user for train number of train departure
+   * to assign track to. Will ask user for track number. Converts from string to int with overflow
    * check. Exits to menu when user presses enter.
    *
    * @see TrainDeparture
-   * @see TrainDeparture#setTrack(int)
+   * @see DepartureRegistry#trySetTrack(TrainDeparture, int)
    * @see TrainDeparture#getTrack()
-   * @see #getValidInputFromUser(String) 
+   * @see #getTrainDepartureFromUser(String)
    * @since 1.2.0
    */
   private void assignTrackMenu() {
-    // Prints a detailed list of every train departure in arraylist with indexes prefixed.
+    // Prints a detailed list of every train departure in the registry with numbers prefixed.
     printNumeratedTrainDepartures();
 
-    int index = Integer.parseInt(
-        getValidInputFromUser("Enter index of train to assign track to: ")
+    // Gets the train departure from the registry with the train number
+    TrainDeparture trainDeparture = getTrainDepartureFromUser(
+        "Enter number of train to assign track to: "
     );
+    if (trainDeparture == null) {
+      exitToMenu();
+      return;
+    }
 
-    // Gets the train departure from the arraylist with the index
-    TrainDeparture trainDeparture = trainDepartures.get(index);
-
-    int track = Integer.parseInt(
-        getValidInputFromUser("Enter track number: ") // Gets input from user
-    );
-    if (track == -1) {
+    int track = getNumberFromUser("Enter track number: ");
+    if (TrainDeparture.checkTrack(track) == -1) {
       Terminal.writeLine("Invalid input. Must be between 1 and 99");
       exitToMenuWithPrompt();
+      return;
     }
 
-    // Sets the track of the train departure
-    trainDeparture.setTrack(track);
+    // Sets the track of the train departure, unless another train occupies it at the same time
+    List<TrainDeparture> conflicts = departureRegistry.trySetTrack(trainDeparture, track);
+    if (!conflicts.isEmpty()) {
+      printTrackConflicts(track, conflicts);
+      printFreeTracks(trainDeparture);
+      exitToMenuWithPrompt();
+      return;
+    }
 
     // Exits the menu when user presses enter
     exitToMenu();
   }
 
   /**
-   * Prints a detailed list of every train departure in hashset with indexes prefixed.
+   * Prints the departures that occupy a track at the same time as another departure.
+   */
+  private void printTrackConflicts(int track, List<TrainDeparture> conflicts) {
+    Terminal.writeLine("Track " + track + " is taken at that time by:");
+    for (TrainDeparture conflict : conflicts) {
+      Terminal.write(conflict.getTrainNumber() + " : ");
+      Terminal.writeLine(conflict.toString());
+    }
+  }
+
+  /**
+   * Prints the tracks that are free at the effective departure time of a departure.
+   */
+  private void printFreeTracks(TrainDeparture trainDeparture) {
+    int effectiveMinutes = trainDeparture.getEffectiveMinutes();
+    List<Integer> freeTracks = departureRegistry.freeTracks(
+        effectiveMinutes - departureRegistry.getTrackHeadwayMinutes() + 1, effectiveMinutes + 1);
+    Terminal.writeLine("Free tracks: "
+        + freeTracks.subList(0, Math.min(SUGGESTED_TRACKS, freeTracks.size())));
+  }
+
+  /**
+   * Prints a detailed list of every train departure in the registry with train numbers prefixed.
+   * The departures are listed by effective departure time.
    */
   private void printNumeratedTrainDepartures() {
     clearScreen();  // Clears screen for a readable output
 
-    int i = 0; // Index counter
-    for (TrainDeparture trainDeparture : trainDepartures) {
-      Terminal.write(i + " : ");
+    for (TrainDeparture trainDeparture : departureRegistry.getDepartures()) {
+      Terminal.write(trainDeparture.getTrainNumber() + " : ");
       Terminal.writeLine(trainDeparture.toString());  // Prints the train departure info
-      i++;
     }
   }
 
   /**
-   * Menu to notify delay of a train departure. Will ask user for index of train departure to notify
-   * delay of. Will ask user for hour and minute of delay. Converts from string to int with overflow
-   * check. Exits to menu when user presses enter.
+   * Menu to notify delay of a train departure. Will ask user for train number of train departure
+   * to notify delay of. Will ask user for hour and minute of delay. Converts from string to int
+   * with overflow check. Exits to menu when user presses enter.
    *
    * @see TrainDeparture
    * @see TrainDeparture#setDelay(int[])
    * @see TrainDeparture#getDelay()
-   * @see #getValidInputFromUser(String) 
+   * @see #getTrainDepartureFromUser(String)
    * @since 1.2.0
    */
   private void notifyDelayMenu() {
-    // Prints a detailed list of every train departure in arraylist with indexes prefixed.
+    // Prints a detailed list of every train departure in the registry with numbers prefixed.
     printNumeratedTrainDepartures();
 
-    int index = Integer.parseInt(
-        getValidInputFromUser("Enter index of train to notify delay of: ")
+    // Gets the train departure from the registry with the train number
+    TrainDeparture trainDeparture = getTrainDepartureFromUser(
+        "Enter number of train to notify delay of: "
     );
-
-    // Gets the train departure from the arraylist with the index
-    TrainDeparture trainDeparture = trainDepartures.get(index);
+    if (trainDeparture == null) {
+      exitToMenu();
+      return;
+    }
 
     int[] delay = new int[2]; // Array to store the delay
 
-    delay[0] = Integer.parseInt(
-        getValidInputFromUser("Enter hour of delay: ") // Gets input from user
-    );
+    delay[0] = getNumberFromUser("Enter hour of delay: ");
+    delay[1] = getNumberFromUser("Enter minute of delay: ");
 
-    delay[1] = Integer.parseInt(
-        getValidInputFromUser("Enter minute of delay: ") // Gets input from user
-    );
+    // An invalid delay is set to 0, as TrainDeparture#setDelay(int[]) does
+    int delayMinutes = delay[0] >= 0 && delay[0] < 24 && delay[1] >= 0 && delay[1] < 60
+        ? delay[0] * 60 + delay[1] : 0;
 
-    // Sets the delay of the train departure
-    trainDeparture.setDelay(delay);
+    // Sets the delay of the train departure and of the trains that wait for it, and moves them to
+    // their new places on the board
+    int changed = delayPropagation.setDelay(trainDeparture.getTrainNumber(), delayMinutes);
+
+    // Warns if the delay has moved the train onto the time of another train on its track
+    List<TrainDeparture> conflicts = departureRegistry.findConflicts(trainDeparture);
+    if (!conflicts.isEmpty()) {
+      printTrackConflicts(trainDeparture.getTrack(), conflicts);
+    }
+    if (changed > 1) {
+      Terminal.writeLine((changed - 1) + " departures that wait for it are delayed as well");
+    }
+    if (!conflicts.isEmpty() || changed > 1) {
+      exitToMenuWithPrompt();
+      return;
+    }
 
     // Exits the menu when user presses enter
     exitToMenu();
   }
 
   /**
-   * Prints a detailed menu of each train departure and its info in a clean format. Waits for user
-   * input via terminal before going back to main menu.
+   * Prints a detailed menu of each upcoming train departure and its info in a clean format.
+   * Departures are listed by effective departure time, starting at the current time. The board is
+   * redrawn whenever a departure on it changes, such as by another operator or the delay feed,
+   * until the user presses enter to go back to the main menu.
    *
+   * @see BoardRenderer
+   * @see BoardView
    * @since 1.0.0
    */
   private void showTrainDepartureMenu() {
-    clearScreen();
+    // The board is drawn as at the time it was opened, by the redraw thread as well
+    int time = clock.get();
+    BoardView view = new BoardView();
+    Subscription subscription = departureRegistry.subscribe(
+        DepartureFilter.between(time, Integer.MAX_VALUE), view);
 
-    // Formats the current time to HH:MM
-    String formattedCurrentTime = getFormattedTimeWithInts(
-        currentTime[0],
-        currentTime[1]
-    );
+    // The menu has been drawn over the board since it was last shown
+    boardRenderer.invalidate();
+    long seen = view.getChanges();
+    boardRenderer.renderRecords(time, view.getDepartures(Integer.MAX_VALUE));
 
-    // Prints a nice header
-    StringBuilder header = new StringBuilder();
-    header.append("Train Dispatch System 1.0\n\n")
-        .append("Train departures\n\n")
-        .append("AVGANGER Departures")
-        .append("      ")
-        .append("SPOR Track")
-        .append("      ")
-        .append(formattedCurrentTime)
-        .append("\n");
-    Terminal.writeLine(header.toString());
-
-    // Iterates through every train departure,
-    // and gets the info to each train departure and prints it in a nice format
-    for (TrainDeparture trainDeparture : trainDepartures) {
-      // Formats the time to HH:MM, taking delay into account
-      String formattedTime = getFormattedTimeWithInts(
-          trainDeparture.getDepartureTime()[0] + trainDeparture.getDelay()[0],
-          trainDeparture.getDepartureTime()[1] + trainDeparture.getDelay()[1]
-      );
-      // Reverses the destination, needed to format the string with x amount of whitespaces.
-      StringBuilder footer = new StringBuilder();
-      footer.append(formattedTime)
-          .append(" ")
-          .append(trainDeparture.getLine())
-          .append(" ")
-          .append(appendWhitespaceToString(trainDeparture.getDestination(), 17))
-          // Leading whitespaces for fixed length
-          .append(" ")
-          .append(trainDeparture.getTrack());
-
-      // Prints the info in a nice format
-      Terminal.writeLine(footer.toString());
-    }
     // Makes a new line for the next menu
     Terminal.writeLine("\n\n\n");
-    // TODO implement terminal library
 
-    // Waits for user input before going back to main menu
-    exitToMenuWithPrompt();
+    // Only the redraw thread draws the board until it is joined. It is virtual, as it mostly
+    // waits, and every session of a server has one while its board is shown
+    Thread redraw = Thread.ofVirtual().name("board-redraw")
+        .start(() -> redrawOnChange(view, seen, time));
+    try {
+      // Waits for user input before going back to main menu
+      exitToMenuWithPrompt();
+    } finally {
+      subscription.close();
+      redraw.interrupt();
+      joinQuietly(redraw);
+    }
   }
 
   /**
-   * Appends x amount of whitespaces to a string. The amount of whitespaces is determined by the
-   * length parameter minus the length of the input.
-   *
-   * @param input  Beginning of string
-   * @param length Length of output string
-   * @return input with x amount of whitespaces appended
-   * @since 1.1.0
+   * Redraws the board as at a time whenever the view changes, until the thread is interrupted.
    */
-
-  private StringBuilder appendWhitespaceToString(String input, int length) {
-    // Reversing the input
-    StringBuilder inputReversed = new StringBuilder();
-    inputReversed.append(input);
-    inputReversed.reverse();
-
-    String whitespacesReversed = String.format("%1$" + length + "s", inputReversed);
-    // Catting the leading whitespaces to reversed destination
-    StringBuilder destination = new StringBuilder(whitespacesReversed);
-    return destination.reverse();
+  private void redrawOnChange(BoardView view, long seen, int time) {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        long changes = view.awaitChange(seen, Long.MAX_VALUE);
+        if (changes != seen) {
+          seen = changes;
+          boardRenderer.renderRecords(time, view.getDepartures(Integer.MAX_VALUE));
+        }
+      }
+    } catch (InterruptedException e) {
+      // The user left the board
+    } catch (UncheckedIOException e) {
+      // The terminal is gone, the prompt sees it as well
+    }
   }
 
   /**
-   * Makes a string in the format HH:MM. Hour cannot be more than 24, minute cannot be over 60.
-   * Complete overflow check.
-   *
-   * @param hour   Non-negative integer representing hour
-   * @param minute Non-negative integer representing minute
-   * @return String in format HH:MM
-   * @since 1.0.0
+   * Gets the timers of the menus, named after the menu of each mode.
    */
-  private static String getFormattedTimeWithInts(int hour, int minute) {
-    // Copies the hour and minute to new variables
-    int newHour = hour;
-    int newMinute = minute;
-
-    newHour += newMinute / 60;  // Floor division of minute added to Hour
-    newMinute = newMinute % 60;  // 60 minute overflow check
+  private static Metrics.Timer[] menuTimers(String... names) {
+    Metrics.Timer[] timers = new Metrics.Timer[names.length];
+    for (int mode = 0; mode < names.length; mode++) {
+      timers[mode] = Metrics.DEFAULT.timer("io.menu." + names[mode]);
+    }
+    return timers;
+  }
 
-    // Returns the formatted time
-    return String.format("%02d:%02d", newHour, newMinute);
+  /**
+   * Waits for a thread to end, keeping the interrupt status if interrupted while waiting.
+   */
+  private static void joinQuietly(Thread thread) {
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
   }
 
   /**
@@ -375,6 +661,8 @@ public class Io {
           6: Search for train based on destination
 
           7: Update time
+          8: Plan tracks of upcoming departures
+          9: View delay and track statistics
           10: Quit application
               """;
       clearScreen();
@@ -388,12 +676,14 @@ public class Io {
       // Catches any IOException
       try {
         choice = Terminal.readInt("Please enter value: ");
+      } catch (EOFException e) {
+        choice = QUIT_APPLICATION_MODE;  // Nothing more to read, such as at the end of a script
       } catch (NumberFormatException | NoSuchElementException | IllegalStateException
                | IOException e) {
         Terminal.writeLine("Invalid input, please try again.");
       }
 
-      if ((1 <= choice && choice <= 7) || choice == 10) {
+      if (1 <= choice && choice <= 10) {
         state = choice;
         stopLoop = true;
       } else {
@@ -404,8 +694,11 @@ public class Io {
 
   /**
    * Menu to update the time. Will ask user for input for hour and minute separately. Converts from
-   * string to int with overflow check.
+   * string to int with overflow check. When the time moves forward, departures that have left
+   * are removed, so the registry only holds the rest of the day. The sessions of a server share
+   * one clock, so the time moves for every operator at once.
    *
+   * @see DepartureRegistry#removeDepartedBefore(int)
    * @since 1.0.0
    */
   private void updateTime() {
@@ -417,7 +710,7 @@ public class Io {
     } catch (IOException e) {
       hourInput = "";  // Makes input empty, exits method below
     }
-    if (hourInput.isEmpty()) {  // Checks if input is empty
+    if (hourInput == null || hourInput.isEmpty()) {  // Checks if input is empty
       exitToMenu();
       return;
     }
@@ -430,23 +723,101 @@ public class Io {
     }
 
     // Prompts the user for minute input
-    if (minuteInput.isEmpty()) {  // Checks if input is empty
+    if (minuteInput == null || minuteInput.isEmpty()) {  // Checks if input is empty
       exitToMenu();
       return;
     }
-    int newHour = Integer.parseInt(hourInput);  // Converts from string to int
-    int newMinute = Integer.parseInt(minuteInput);  // Converts from string to int
+    int newHour;
+    int newMinute;
+    try {
+      newHour = Integer.parseInt(hourInput);  // Converts from string to int
+      newMinute = Integer.parseInt(minuteInput);  // Converts from string to int
+    } catch (NumberFormatException e) {
+      newHour = -1;
+      newMinute = -1;
+    }
+    if (newHour < 0 || newMinute < 0) {
+      Terminal.writeLine("Invalid input. Must be a number, and not negative");
+      exitToMenuWithPrompt();
+      return;
+    }
 
     // Overflow check
     newHour += newMinute / 60;  // Floor division of minute added to Hour
     newHour = newHour % 24;  // 24 hour overflow check
     newMinute = newMinute % 60;  // 60 minute overflow check
 
-    // Sets the new time
-    currentTime = new int[]{newHour, newMinute};
+    // Sets the new time, and removes the departures the clock has moved past. A time set back,
+    // such as after midnight, removes nothing
+    int newTime = newHour * 60 + newMinute;
+    if (newTime > clock.getAndSet(newTime)) {
+      departureRegistry.removeDepartedBefore(newTime);
+    }
     exitToMenu();
   }
 
+  /**
+   * Menu to plan the tracks of every departure from the current time, so no two trains occupy a
+   * track at the same time. Departures keep their tracks where they can. Waits for user input via
+   * terminal before going back to main menu.
+   *
+   * @see TrackPlanner
+   * @since 1.3.0
+   */
+  private void planTracksMenu() {
+    TrackPlanner trackPlanner = new TrackPlanner(departureRegistry);
+    TrackPlanner.Plan plan = trackPlanner.plan(clock.get(), Integer.MAX_VALUE);
+    int changed = trackPlanner.apply(plan);
+
+    Terminal.writeLine("Planned tracks of " + plan.size() + " departures");
+    Terminal.writeLine("Moved " + plan.getChanges() + " departures to another track, and gave "
+        + (changed - plan.getChanges()) + " departures a track");
+    if (plan.getConflicts() > 0) {
+      Terminal.writeLine(plan.getConflicts() + " departures still share a track, as too many "
+          + "trains leave at once");
+    }
+    exitToMenuWithPrompt();
+  }
+
+  /**
+   * Menu to view live statistics of the departures: how many are delayed, the average delay of
+   * each line and how busy each track is. Waits for user input via terminal before going back to
+   * main menu.
+   *
+   * @see DepartureStatistics
+   * @since 1.3.0
+   */
+  private void statisticsMenu() {
+    DepartureStatistics statistics = departureRegistry.getStatistics();
+    Terminal.writeLine("Departures: " + statistics.getDepartures());
+    Terminal.writeLine("Delayed: " + statistics.getDelayedDepartures() + ", of which "
+        + statistics.getLateDepartures() + " by " + DepartureStatistics.LATE_MINUTES
+        + " minutes or more");
+    Terminal.writeLine(String.format("Average delay: %.1f minutes",
+        statistics.getAverageDelayMinutes()));
+
+    Terminal.writeLine("");
+    Terminal.writeLine("Line    Departures  Late  Average delay");
+    for (int lineId = 0; lineId < SymbolTable.LINES.size(); lineId++) {
+      String line = SymbolTable.LINES.get(lineId);
+      if (statistics.getDepartures(line) > 0) {
+        Terminal.writeLine(String.format("%-7s %10d %5d %9.1f min", line,
+            statistics.getDepartures(line), statistics.getLateDepartures(line),
+            statistics.getAverageDelayMinutes(line)));
+      }
+    }
+
+    Terminal.writeLine("");
+    Terminal.writeLine("Track   Departures  Occupied");
+    for (int track = 1; track <= TrackOccupancy.MAX_TRACK; track++) {
+      if (statistics.getTrackDepartures(track) > 0) {
+        Terminal.writeLine(String.format("%-7d %10d %7.0f %%", track,
+            statistics.getTrackDepartures(track), statistics.getTrackUtilisation(track) * 100));
+      }
+    }
+    exitToMenuWithPrompt();
+  }
+
   /**
    * Menu to add train departures. Will ask user for input for every field. Handles every input type
    * conversion exceptions with while true. Can exit loop at any moment.
@@ -459,12 +830,14 @@ public class Io {
     String input;
     String[] results = new String[6];
 
+    // Same order as the fields of TrainDeparture(String[])
     String[] inputFields = {
         "Hour for planned departure:",
         "Minute for planned departure: ",
-        "Destination for departure: ",
         "Line of train departure: ",
         "Train-track for departure:",
+        "Destination for departure: ",
+        "Train number (enter for next free number): ",
     };
 
     // Prints a nice header
@@ -474,7 +847,7 @@ public class Io {
     for (int i = 0; i < inputFields.length; i++) {
       // Gets input from user with a while loop to handle any exception
       input = getValidInputFromUser(inputFields[i]);
-      if (input.isEmpty()) {  // Checks if input is empty
+      if (input.isEmpty() && i < TRAIN_NUMBER_FIELD) {  // Checks if input is empty
         exitToMenu();
         return;
       }
@@ -482,21 +855,72 @@ public class Io {
     }
 
     // Creates a new train departure with the results array,
-    // and adds to the trainDepartures arraylist collection
+    // and adds to the departure registry
     TrainDeparture trainDeparture = new TrainDeparture(results);
-    trainDepartures.add(trainDeparture);
+    List<TrainDeparture> conflicts;
+    try {
+      conflicts = departureRegistry.tryAdd(trainDeparture);
+    } catch (IllegalArgumentException e) {
+      Terminal.writeLine(e.getMessage());  // Train number already in use
+      exitToMenuWithPrompt();
+      return;
+    }
+    if (!conflicts.isEmpty()) {
+      // Not added, as another train occupies its track at the same time
+      printTrackConflicts(trainDeparture.getTrack(), conflicts);
+      printFreeTracks(trainDeparture);
+      exitToMenuWithPrompt();
+      return;
+    }
 
     exitToMenu();
   }
 
   /**
-   * Notifies the user before quitting the application.
+   * Notifies the user before quitting the application. Stops the menus instead of the whole
+   * program, so quitting a session leaves the other sessions running.
    *
    * @since 1.0.0
    */
   private void quitApplication() {
+    saveAndClose();
     Terminal.writeLine("Exiting application");
-    System.exit(0);
+    running = false;
+  }
+
+  /**
+   * Applies the last delays of the feed, saves the snapshot and closes the journal, if they are
+   * used. Errors are written to the user.
+   */
+  private void saveAndClose() {
+    if (delayFeed != null) {
+      try {
+        delayFeed.close();
+      } catch (IOException e) {
+        Terminal.writeLine("Could not apply delays from feed: " + e.getMessage());
+      }
+      delayFeed = null;
+    }
+    if (snapshotPath != null) {
+      try {
+        // Changes made while the snapshot is written are logged after the mark, and kept
+        long mark = journal == null ? 0 : journal.mark();
+        saveSnapshot(snapshotPath);
+        if (journal != null) {
+          journal.reset(mark);  // Every change before the mark is in the snapshot now
+        }
+      } catch (IOException e) {
+        Terminal.writeLine("Could not save snapshot: " + e.getMessage());
+      }
+    }
+    if (journal != null) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        Terminal.writeLine("Could not close journal: " + e.getMessage());
+      }
+      journal = null;
+    }
   }
 
   /**
@@ -524,7 +948,7 @@ public class Io {
    * from user.
    *
    * @param inputMessage A message the user will be prompted with when waiting for input.
-   * @return Null if input is empty, input-string if something
+   * @return Empty string if input is empty or standard input has ended, input-string if something
    *
    * @see #getValidInputFromUser(String) .
    */
@@ -539,6 +963,9 @@ public class Io {
     do {
       try {
         input = Terminal.readString(inputMessage);
+        if (input == null) {
+          input = "";  // Standard input has ended, handled like empty input
+        }
 
         retry = false;
       } catch (NoSuchElementException | IllegalStateException | IOException e) {
@@ -550,6 +977,42 @@ public class Io {
     return input;
   }
 
+  /**
+   * Gets a registered train departure from user by its train number.
+   *
+   * @param inputMessage A message the user will be prompted with when waiting for input.
+   * @return The train departure, or null if input is empty, not a number or no train has the
+   *     number.
+   * @see DepartureRegistry#get(int)
+   * @since 1.3.0
+   */
+  private TrainDeparture getTrainDepartureFromUser(String inputMessage) {
+    String input = getValidInputFromUser(inputMessage);
+    if (input.isEmpty()) {
+      return null;
+    }
+    try {
+      return departureRegistry.get(Integer.parseInt(input));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Gets a number from user.
+   *
+   * @param inputMessage A message the user will be prompted with when waiting for input.
+   * @return The number, or -1 if input is empty or not a number.
+   * @since 1.3.0
+   */
+  private int getNumberFromUser(String inputMessage) {
+    try {
+      return Integer.parseInt(getValidInputFromUser(inputMessage));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   /**
    * Clears the terminal of any previously written output.
    * Used for cleaner output.
@@ -575,9 +1038,9 @@ public class Io {
     if (!(o instanceof Io io)) {
       return false;
     }
-    return state == io.state && running == io.running && Objects.equals(trainDepartures,
-        io.trainDepartures) && Objects.equals(selectedTrainDeparture,
-        io.selectedTrainDeparture) && Arrays.equals(currentTime, io.currentTime);
+    return state == io.state && running == io.running && Objects.equals(departureRegistry,
+        io.departureRegistry) && Objects.equals(selectedTrainDeparture,
+        io.selectedTrainDeparture) && clock.get() == io.clock.get();
   }
 
   /**
@@ -587,8 +1050,6 @@ public class Io {
    */
   @Override
   public int hashCode() {
-    int result = Objects.hash(state, running, trainDepartures, selectedTrainDeparture);
-    result = 31 * result + Arrays.hashCode(currentTime);
-    return result;
+    return Objects.hash(state, running, departureRegistry, selectedTrainDeparture, clock.get());
   }
 }
\ No newline at end of file
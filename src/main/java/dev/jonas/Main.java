@@ -1,8 +1,162 @@
 package dev.jonas;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 public class Main {
+
+  /**
+   * Starts the application. Accepts these options before the interface starts:
+   * <blockquote><pre>
+   *   --snapshot &lt;file&gt; Loads departures from a snapshot if it exists, and saves them
+   *                     to it on quit, see {@link TimetableSnapshot}
+   *   --journal &lt;file&gt;  Replays and logs every change to a journal, see
+   *                     {@link DepartureJournal}
+   *   --import &lt;file&gt;   Imports a CSV or TSV timetable, see {@link TimetableImporter}
+   *   --feed &lt;file&gt;     Follows a file of delay updates and applies them as it grows, see
+   *                     {@link DelayFeed}
+   *   --batch &lt;file&gt;    Runs a command script instead of the menus, "-" reads standard
+   *                     input, see {@link BatchProcessor}
+   *   --serve &lt;port&gt;    Serves the menus to operators over TCP instead of the terminal,
+   *                     see {@link DispatchServer}
+   *   --metrics &lt;secs&gt;  Writes the timings of menus, board frames and input reads to
+   *                     standard error every few seconds, see {@link Metrics}. They can
+   *                     also be watched over JMX
+   * </pre></blockquote>
+   * The snapshot is always loaded first and the journal replayed on top of it, whatever the order
+   * of the options. In batch mode, results are written to standard output and everything else to
+   * standard error, and the exit status is 1 if any command failed.
+   *
+   * @param args Command line options.
+   */
   public static void main(String[] args) {
+    Path snapshotPath = null;
+    Path journalPath = null;
+    Path importPath = null;
+    Path feedPath = null;
+    String batchScript = null;
+    int servePort = -1;
+    int metricsSeconds = -1;
+    for (int i = 0; i < args.length; i++) {
+      if ("--snapshot".equals(args[i]) && i + 1 < args.length) {
+        snapshotPath = Path.of(args[++i]);
+      } else if ("--journal".equals(args[i]) && i + 1 < args.length) {
+        journalPath = Path.of(args[++i]);
+      } else if ("--import".equals(args[i]) && i + 1 < args.length) {
+        importPath = Path.of(args[++i]);
+      } else if ("--feed".equals(args[i]) && i + 1 < args.length) {
+        feedPath = Path.of(args[++i]);
+      } else if ("--batch".equals(args[i]) && i + 1 < args.length) {
+        batchScript = args[++i];
+      } else if ("--serve".equals(args[i]) && i + 1 < args.length) {
+        servePort = parsePort(args[++i]);
+      } else if ("--metrics".equals(args[i]) && i + 1 < args.length) {
+        metricsSeconds = parseSeconds(args[++i]);
+      } else {
+        Terminal.writeLine("Unknown option: " + args[i]);
+        System.exit(1);
+      }
+    }
+
+    if (metricsSeconds > 0) {
+      Metrics.DEFAULT.dumpEvery(System.err, metricsSeconds * 1000L);
+    }
+
+    // Keeps standard output for results in batch mode
+    PrintStream messages = batchScript == null ? System.out : System.err;
     Io io = new Io();
-   io.start();
+    if (snapshotPath != null) {
+      try {
+        int loaded = io.useSnapshot(snapshotPath);
+        messages.println("Loaded " + loaded + " departures from " + snapshotPath);
+      } catch (IOException e) {
+        messages.println("Could not load " + snapshotPath + ": " + e.getMessage());
+        System.exit(1);
+      }
+    }
+    if (journalPath != null) {
+      try {
+        int departures = io.useJournal(journalPath);
+        messages.println("Replayed " + journalPath + ", " + departures + " departures");
+      } catch (IOException e) {
+        messages.println("Could not replay " + journalPath + ": " + e.getMessage());
+        System.exit(1);
+      }
+    }
+    if (importPath != null) {
+      try {
+        int imported = io.importTimetable(importPath);
+        messages.println("Imported " + imported + " departures from " + importPath);
+      } catch (IOException e) {
+        messages.println("Could not import " + importPath + ": " + e.getMessage());
+        System.exit(1);
+      }
+    }
+    if (feedPath != null) {
+      io.useDelayFeed(feedPath);
+      messages.println("Following delays in " + feedPath);
+    }
+    if (servePort >= 0) {
+      try {
+        io.serve(servePort, messages);
+      } catch (IOException e) {
+        messages.println("Could not serve on port " + servePort + ": " + e.getMessage());
+        System.exit(1);
+      }
+      return;
+    }
+    if (batchScript == null) {
+      io.start();
+      return;
+    }
+
+    try (BufferedReader script = "-".equals(batchScript)
+        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+        : Files.newBufferedReader(Path.of(batchScript), StandardCharsets.UTF_8)) {
+      int errors = io.runBatch(script, System.out);
+      System.exit(errors == 0 ? 0 : 1);
+    } catch (IOException e) {
+      messages.println("Could not run " + batchScript + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Parses a positive number of seconds, and exits if it is not valid.
+   */
+  private static int parseSeconds(String text) {
+    try {
+      int seconds = Integer.parseInt(text);
+      if (seconds > 0) {
+        return seconds;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    Terminal.writeLine("Not a valid number of seconds: " + text);
+    System.exit(1);
+    return -1;
+  }
+
+  /**
+   * Parses a port number, and exits if it is not valid.
+   */
+  private static int parsePort(String text) {
+    try {
+      int port = Integer.parseInt(text);
+      if (port >= 0 && port <= 65535) {
+        return port;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    Terminal.writeLine("Not a valid port: " + text);
+    System.exit(1);
+    return -1;
   }
-}
\ No newline at end of file
+}
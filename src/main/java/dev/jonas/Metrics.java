@@ -0,0 +1,495 @@
+package dev.jonas;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The {@code Metrics} class times operations of the program, such as menu actions, board frames
+ * and input reads, so it can be seen where the time goes without attaching a profiler.
+ *
+ * <p>Every operation has a named {@link Timer}, which counts how often it ran, how long it took
+ * and how many bytes the running thread allocated during it. The JVM does not count the bytes of
+ * a virtual thread, such as a session of a {@link DispatchServer}, so runs on one are left out of
+ * the bytes per run. Times are kept in a histogram of
+ * buckets that grow with the value, with 16 buckets for every power of two, so every percentile
+ * is within about 6% of the true time while the histogram stays a fixed size. Recording only adds
+ * to counters and never locks, so timers can be used on every menu action and every frame.
+ *
+ * <p>A sample that waits, such as for a line typed by the user, is stopped with
+ * {@link Sample#stopWaiting()}. Its time is still recorded in its own timer, but left out of every
+ * sample running around it on the same thread, so the timer of a menu shows the time spent working
+ * and not the time the user took to type.
+ *
+ * <p>The timers of {@link #DEFAULT} are registered as MXBeans under {@code dev.jonas:type=Timer},
+ * so they can be watched with JConsole or any other JMX client, and all timers can be written as
+ * text with {@link #dump(PrintStream)}, or every so often with
+ * {@link #dumpEvery(PrintStream, long)}.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     Metrics.Timer timer = Metrics.DEFAULT.timer("io.menu.view");
+ *     Metrics.Sample sample = timer.start();
+ *     showTrainDepartureMenu();
+ *     sample.stop();
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class Metrics {
+
+  /**
+   * Metrics of the program, registered with the platform MBean server.
+   *
+   * @since 1.3.0
+   */
+  public static final Metrics DEFAULT = new Metrics("dev.jonas");
+
+  // Bits of each value kept below its highest bit, so each power of two has 16 buckets
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final boolean ALLOCATIONS_SUPPORTED = allocationsSupported();
+  // Nanoseconds each thread has spent in samples stopped with Sample#stopWaiting()
+  private static final ThreadLocal<long[]> WAITED_NANOS =
+      ThreadLocal.withInitial(() -> new long[1]);
+
+  // Domain the timers are registered in, or null if they are not registered
+  private final String jmxDomain;
+  private final ConcurrentHashMap<String, Timer> timers;
+
+  /**
+   * Constructs metrics that are not registered with JMX, such as for tests.
+   *
+   * @since 1.3.0
+   */
+  public Metrics() {
+    this(null);
+  }
+
+  /**
+   * Constructs metrics that register their timers in a JMX domain.
+   */
+  private Metrics(String jmxDomain) {
+    this.jmxDomain = jmxDomain;
+    timers = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Gets the timer of an operation, making it the first time the name is used.
+   *
+   * @param name Name of the operation, such as "io.menu.view".
+   * @return The timer.
+   * @since 1.3.0
+   */
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    return timer != null ? timer : timers.computeIfAbsent(name, this::newTimer);
+  }
+
+  /**
+   * Writes one line for every timer, sorted by name, with how often it ran, its mean, median,
+   * 99th percentile and longest time in microseconds, and the bytes it allocated per run:
+   * <blockquote><pre>
+   *   name  count  mean-us  p50-us  p99-us  max-us  bytes-per-run
+   * </pre></blockquote>
+   * Fields are separated by tabs.
+   *
+   * @param out Stream to write to. Cannot be null.
+   * @since 1.3.0
+   */
+  public void dump(PrintStream out) {
+    StringBuilder text = new StringBuilder(64 * (timers.size() + 1));
+    for (Timer timer : new TreeMap<>(timers).values()) {
+      text.append(timer.name).append('\t')
+          .append(timer.getCount()).append('\t')
+          .append(timer.getMeanMicros()).append('\t')
+          .append(timer.getPercentileMicros(50)).append('\t')
+          .append(timer.getPercentileMicros(99)).append('\t')
+          .append(timer.getMaxMicros()).append('\t')
+          .append(timer.getAllocatedBytesPerCall()).append('\n');
+    }
+    out.append(text);
+    out.flush();
+  }
+
+  /**
+   * Writes every timer with {@link #dump(PrintStream)} at a fixed interval, from a daemon thread,
+   * until the thread is interrupted.
+   *
+   * @param out Stream to write to. Cannot be null.
+   * @param periodMillis Milliseconds between dumps. Must be positive.
+   * @return The started thread, to interrupt to stop the dumps.
+   * @throws IllegalArgumentException if {@code periodMillis} is not positive.
+   * @since 1.3.0
+   */
+  public Thread dumpEvery(PrintStream out, long periodMillis) {
+    if (periodMillis <= 0) {
+      throw new IllegalArgumentException("Period must be positive, was " + periodMillis);
+    }
+    Thread dumper = new Thread(() -> {
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          Thread.sleep(periodMillis);
+          dump(out);
+        }
+      } catch (InterruptedException e) {
+        // Stopped
+      }
+    }, "metrics-dump");
+    dumper.setDaemon(true);
+    dumper.start();
+    return dumper;
+  }
+
+  /**
+   * Makes the timer of a name, and registers it with JMX if these metrics are registered. A timer
+   * that cannot be registered still records.
+   */
+  private Timer newTimer(String name) {
+    Timer timer = new Timer(name);
+    if (jmxDomain != null) {
+      try {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(jmxDomain + ":type=Timer,name="
+            + ObjectName.quote(name));
+        if (!server.isRegistered(objectName)) {
+          server.registerMBean(timer, objectName);
+        }
+      } catch (JMException | SecurityException e) {
+        // Not visible over JMX, but still in the dumps
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * Gets the bytes the current thread has allocated so far, or -1 if the JVM cannot tell, as for
+   * a virtual thread.
+   */
+  private static long allocatedBytes() {
+    if (!ALLOCATIONS_SUPPORTED || Thread.currentThread().isVirtual()) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+  }
+
+  /**
+   * Checks if the JVM can count the bytes each thread allocates, and turns counting on.
+   */
+  private static boolean allocationsSupported() {
+    try {
+      if (THREADS instanceof com.sun.management.ThreadMXBean threads
+          && threads.isThreadAllocatedMemorySupported()) {
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return true;
+      }
+    } catch (UnsupportedOperationException | SecurityException e) {
+      // Not counted
+    }
+    return false;
+  }
+
+  /**
+   * Gets the bucket of a value. Values below 16 have a bucket each, and every power of two above
+   * is split into 16 buckets of equal width.
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) Math.max(value, 0);
+    }
+    int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int shift = highestBit - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * Gets the highest value of a bucket.
+   */
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+
+  /**
+   * The attributes of a {@link Timer} shown over JMX.
+   *
+   * @since 1.3.0
+   */
+  public interface TimerMXBean {
+
+    /**
+     * Gets how often the operation ran.
+     *
+     * @return Number of runs.
+     * @since 1.3.0
+     */
+    long getCount();
+
+    /**
+     * Gets the mean time of the operation.
+     *
+     * @return Mean time in microseconds, or 0 if it never ran.
+     * @since 1.3.0
+     */
+    long getMeanMicros();
+
+    /**
+     * Gets the median time of the operation.
+     *
+     * @return Median time in microseconds, or 0 if it never ran.
+     * @since 1.3.0
+     */
+    long getMedianMicros();
+
+    /**
+     * Gets the time 99% of the runs of the operation took at most.
+     *
+     * @return 99th percentile in microseconds, or 0 if it never ran.
+     * @since 1.3.0
+     */
+    long get99thPercentileMicros();
+
+    /**
+     * Gets the longest time of the operation.
+     *
+     * @return Longest time in microseconds, or 0 if it never ran.
+     * @since 1.3.0
+     */
+    long getMaxMicros();
+
+    /**
+     * Gets the mean bytes the running thread allocated during the operation, over the runs whose
+     * allocations were counted.
+     *
+     * @return Bytes per run, or 0 if no run had its allocations counted.
+     * @since 1.3.0
+     */
+    long getAllocatedBytesPerCall();
+
+    /**
+     * Forgets every run of the operation.
+     *
+     * @since 1.3.0
+     */
+    void reset();
+  }
+
+  /**
+   * The runs of one operation. Recording is lock-free, and any number of threads may record at
+   * once.
+   *
+   * @since 1.3.0
+   */
+  public static final class Timer implements TimerMXBean {
+    private final String name;
+    private final LongAdder count;
+    private final LongAdder totalNanos;
+    private final LongAdder allocatedBytes;
+    // Runs whose allocations were counted
+    private final LongAdder allocationRuns;
+    private final AtomicLong maxNanos;
+    private final AtomicLongArray histogram;
+
+    /**
+     * Constructs a timer that has not recorded anything.
+     */
+    private Timer(String name) {
+      this.name = name;
+      count = new LongAdder();
+      totalNanos = new LongAdder();
+      allocatedBytes = new LongAdder();
+      allocationRuns = new LongAdder();
+      maxNanos = new AtomicLong();
+      histogram = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Starts timing one run of the operation on the current thread.
+     *
+     * @return The sample to stop once the operation is done.
+     * @since 1.3.0
+     */
+    public Sample start() {
+      return new Sample(this, System.nanoTime(), WAITED_NANOS.get()[0], allocatedBytes());
+    }
+
+    /**
+     * Records one run of the operation.
+     *
+     * @param nanos Time the operation took, in nanoseconds.
+     * @param bytes Bytes the operation allocated, or -1 if they were not counted.
+     * @since 1.3.0
+     */
+    public void record(long nanos, long bytes) {
+      long time = Math.max(nanos, 0);
+      count.increment();
+      totalNanos.add(time);
+      if (bytes >= 0) {
+        allocatedBytes.add(bytes);
+        allocationRuns.increment();
+      }
+      histogram.incrementAndGet(bucketOf(time));
+      long max = maxNanos.get();
+      while (time > max && !maxNanos.compareAndSet(max, time)) {
+        max = maxNanos.get();
+      }
+    }
+
+    /**
+     * Gets the name of the operation.
+     *
+     * @return The name.
+     * @since 1.3.0
+     */
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public long getCount() {
+      return count.sum();
+    }
+
+    @Override
+    public long getMeanMicros() {
+      long runs = count.sum();
+      return runs == 0 ? 0 : totalNanos.sum() / runs / 1000;
+    }
+
+    @Override
+    public long getMedianMicros() {
+      return getPercentileMicros(50);
+    }
+
+    @Override
+    public long get99thPercentileMicros() {
+      return getPercentileMicros(99);
+    }
+
+    @Override
+    public long getMaxMicros() {
+      return maxNanos.get() / 1000;
+    }
+
+    @Override
+    public long getAllocatedBytesPerCall() {
+      long runs = allocationRuns.sum();
+      return runs == 0 ? 0 : allocatedBytes.sum() / runs;
+    }
+
+    /**
+     * Gets the time a share of the runs of the operation took at most, within the width of a
+     * histogram bucket.
+     *
+     * @param percentile Share of the runs, between 0 and 100.
+     * @return The time in microseconds, or 0 if it never ran.
+     * @since 1.3.0
+     */
+    public long getPercentileMicros(double percentile) {
+      long[] counts = new long[BUCKETS];
+      long total = 0;
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        counts[bucket] = histogram.get(bucket);
+        total += counts[bucket];
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+      long seen = 0;
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        seen += counts[bucket];
+        if (seen >= rank) {
+          return Math.min(highestValueOf(bucket), maxNanos.get()) / 1000;
+        }
+      }
+      return maxNanos.get() / 1000;
+    }
+
+    @Override
+    public void reset() {
+      count.reset();
+      totalNanos.reset();
+      allocatedBytes.reset();
+      allocationRuns.reset();
+      maxNanos.set(0);
+      for (int bucket = 0; bucket < BUCKETS; bucket++) {
+        histogram.set(bucket, 0);
+      }
+    }
+  }
+
+  /**
+   * One run of an operation being timed, started with {@link Timer#start()}.
+   *
+   * @since 1.3.0
+   */
+  public static final class Sample {
+    private final Timer timer;
+    private final long startNanos;
+    // Time the thread had waited when the sample started
+    private final long startWaitedNanos;
+    private final long startBytes;
+
+    /**
+     * Constructs a sample started now.
+     */
+    private Sample(Timer timer, long startNanos, long startWaitedNanos, long startBytes) {
+      this.timer = timer;
+      this.startNanos = startNanos;
+      this.startWaitedNanos = startWaitedNanos;
+      this.startBytes = startBytes;
+    }
+
+    /**
+     * Stops timing, and records the run, leaving out the time of every sample stopped with
+     * {@link #stopWaiting()} while it ran. Must be called on the thread that started it, for the
+     * allocated bytes and the waits to be right.
+     *
+     * @since 1.3.0
+     */
+    public void stop() {
+      long waited = WAITED_NANOS.get()[0] - startWaitedNanos;
+      timer.record(System.nanoTime() - startNanos - waited, allocatedSince());
+    }
+
+    /**
+     * Stops timing a wait, such as for user input, and records the whole run. The time is left
+     * out of every sample running around it on the same thread. Must be called on the thread that
+     * started it.
+     *
+     * @since 1.3.0
+     */
+    public void stopWaiting() {
+      long nanos = System.nanoTime() - startNanos;
+      timer.record(nanos, allocatedSince());
+      // Counts any wait within this one once
+      WAITED_NANOS.get()[0] = startWaitedNanos + nanos;
+    }
+
+    /**
+     * Gets the bytes the thread has allocated since the sample started, or -1 if they are not
+     * counted.
+     */
+    private long allocatedSince() {
+      return startBytes < 0 ? -1 : allocatedBytes() - startBytes;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package dev.jonas;
+
+import java.util.function.Consumer;
+
+/**
+ * The {@code Subscription} class is a registration of a subscriber with a
+ * {@link DepartureRegistry}, made by
+ * {@link DepartureRegistry#subscribe(DepartureFilter, Consumer)}. The subscriber is told
+ * about every change to the departures that match the filter until the subscription is closed.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class Subscription implements AutoCloseable {
+
+  private final DepartureRegistry registry;
+  private final DepartureFilter filter;
+  private final Consumer<DepartureEvent> subscriber;
+  private volatile boolean open;
+
+  /**
+   * Constructs an open subscription.
+   */
+  Subscription(DepartureRegistry registry, DepartureFilter filter,
+      Consumer<DepartureEvent> subscriber) {
+    this.registry = registry;
+    this.filter = filter;
+    this.subscriber = subscriber;
+    open = true;
+  }
+
+  /**
+   * Checks if the subscriber is still told about changes.
+   *
+   * @return True until the subscription is closed.
+   * @since 1.3.0
+   */
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Stops telling the subscriber about changes. Closing a closed subscription does nothing.
+   *
+   * @since 1.3.0
+   */
+  @Override
+  public void close() {
+    open = false;
+    registry.unsubscribe(this);
+  }
+
+  /**
+   * Tells the subscriber how a departure changed, if the change is seen through the filter.
+   *
+   * @param previous Record before the change, or null if the departure was added.
+   * @param current Record after the change, or null if the departure was removed.
+   */
+  void publish(DepartureRecord previous, DepartureRecord current) {
+    if (!open) {
+      return;  // Closed while a change was being told
+    }
+    boolean matched = previous != null && filter.matches(previous);
+    boolean matches = current != null && filter.matches(current);
+    if (matched && matches) {
+      subscriber.accept(new DepartureEvent(DepartureEvent.Type.CHANGED, previous, current));
+    } else if (matches) {
+      subscriber.accept(new DepartureEvent(DepartureEvent.Type.ADDED, null, current));
+    } else if (matched) {
+      subscriber.accept(new DepartureEvent(DepartureEvent.Type.REMOVED, previous, null));
+    }
+  }
+}
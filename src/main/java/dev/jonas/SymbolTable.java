@@ -0,0 +1,147 @@
+package dev.jonas;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SymbolTable} class maps strings to compact integer ids, and keeps one canonical
+ * instance of every distinct string.
+ *
+ * <p>A station has few distinct lines and destinations, but many departures. Departures store
+ * the id instead of the string, so every departure to "Oslo S" shares one {@code String}, and
+ * comparing or grouping by line or destination compares two ints.
+ *
+ * <p>Ids are handed out from 0 and upwards, and are never reused. The empty string always has id
+ * 0. Looking up and adding symbols is safe from several threads.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     int id = SymbolTable.DESTINATIONS.idOf("Oslo S");
+ *     String destination = SymbolTable.DESTINATIONS.get(id);
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class SymbolTable {
+
+  /**
+   * Symbols for the lines of train departures.
+   *
+   * @since 1.3.0
+   */
+  public static final SymbolTable LINES = new SymbolTable();
+
+  /**
+   * Symbols for the destinations of train departures.
+   *
+   * @since 1.3.0
+   */
+  public static final SymbolTable DESTINATIONS = new SymbolTable();
+
+  private final ConcurrentHashMap<String, Integer> ids;
+  private volatile String[] symbols;
+  private int size;
+
+  /**
+   * Constructs a new {@code SymbolTable} that only holds the empty string.
+   *
+   * @since 1.3.0
+   */
+  public SymbolTable() {
+    ids = new ConcurrentHashMap<>();
+    symbols = new String[16];
+    size = 0;
+    idOf("");
+  }
+
+  /**
+   * Gets the id of a string, adding the string to the table if it is new.
+   * Null is treated as the empty string.
+   *
+   * @param symbol String to look up.
+   * @return Id of the string.
+   * @since 1.3.0
+   */
+  public int idOf(String symbol) {
+    String value = symbol == null ? "" : symbol;
+    Integer id = ids.get(value);
+    if (id != null) {
+      return id;
+    }
+    return add(value);
+  }
+
+  /**
+   * Gets the id of a string without adding it to the table.
+   *
+   * @param symbol String to look up.
+   * @return Id of the string, or -1 if it is not in the table.
+   * @since 1.3.0
+   */
+  public int find(String symbol) {
+    Integer id = ids.get(symbol == null ? "" : symbol);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Gets the canonical instance of a string, adding the string to the table if it is new.
+   *
+   * @param symbol String to intern.
+   * @return Canonical instance equal to the string. Never null.
+   * @since 1.3.0
+   */
+  public String intern(String symbol) {
+    return get(idOf(symbol));
+  }
+
+  /**
+   * Gets the string with the given id.
+   *
+   * @param id Id from {@link #idOf(String)}.
+   * @return Canonical string with the id.
+   * @throws IndexOutOfBoundsException if no string has the id.
+   * @since 1.3.0
+   */
+  public String get(int id) {
+    String[] current = symbols;
+    String symbol = id >= 0 && id < current.length ? current[id] : null;
+    if (symbol == null) {
+      throw new IndexOutOfBoundsException("No symbol with id " + id);
+    }
+    return symbol;
+  }
+
+  /**
+   * Gets the number of strings in the table.
+   *
+   * @return Number of symbols, including the empty string.
+   * @since 1.3.0
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Adds a string to the table unless another thread got there first. The symbol is stored in the
+   * array before its id is published in the map, so any id read from the map can be looked up.
+   */
+  private synchronized int add(String value) {
+    Integer existing = ids.get(value);
+    if (existing != null) {
+      return existing;
+    }
+    int id = size;
+    String[] current = symbols;
+    if (id == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+    }
+    current[id] = value;
+    symbols = current;
+    size++;
+    ids.put(value, id);
+    return id;
+  }
+}
@@ -1,7 +1,9 @@
 package dev.jonas;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.nio.charset.Charset;
@@ -14,12 +16,100 @@ import java.util.List;
  *
  * It has convenience methods for reading strings and integers, as well as writing string representations of objects. Many of these methods are wrappers for {@link PrintStream} and {@link BufferedReader}.
  *
+ * Standard input is read through one long-lived {@link BufferedReader}, so input piped in quickly is read in large blocks, and nothing read ahead is lost between calls.
+ *
+ * A thread can be bound to a session with its own input and output, such as a network connection, with {@link #bindSession(BufferedReader, PrintStream)}. Every method called on that thread then reads from and writes to the session instead of standard input and output, so many sessions can run at the same time.
+ *
  * @since  0.1.0
  */
 @SuppressWarnings({"ClassWithoutLogger", "PublicMethodWithoutLogging",
     "WeakerAccess"})
 public final class Terminal
 {
+  /**
+   * The reader every line of standard input is read through, kept between calls so bytes it has
+   * read ahead are not lost.
+   *
+   * @since 1.3.0
+   */
+  private static BufferedReader reader;
+
+  /**
+   * The standard input the reader reads from.
+   *
+   * @since 1.3.0
+   */
+  private static InputStream readerInput;
+
+  /**
+   * The character set the reader decodes with.
+   *
+   * @since 1.3.0
+   */
+  private static Charset readerCharset;
+
+  /**
+   * The input of the session bound to each thread, if any.
+   *
+   * @since 1.3.0
+   */
+  private static final ThreadLocal<BufferedReader> sessionReader = new ThreadLocal<>();
+
+  /**
+   * The output of the session bound to each thread, if any.
+   *
+   * @since 1.3.0
+   */
+  private static final ThreadLocal<PrintStream> sessionOutput = new ThreadLocal<>();
+
+  /**
+   * Times every line read, including the time spent waiting for the user, which is left out of
+   * the timers of the menus around it.
+   *
+   * @since 1.3.0
+   */
+  private static final Metrics.Timer readTimer = Metrics.DEFAULT.timer("terminal.read");
+
+  /**
+   * Binds the current thread to a session, so every method called on the thread reads from and writes to the session until it is unbound.
+   *
+   * @param input  reader of the session's input
+   * @param output stream of the session's output
+   *
+   * @since 1.3.0
+   *
+   * @see #unbindSession()
+   */
+  public static void bindSession(final BufferedReader input, final PrintStream output)
+  {
+    sessionReader.set(input);
+    sessionOutput.set(output);
+  }
+
+  /**
+   * Unbinds the current thread from its session, so it uses standard input and output again.
+   *
+   * @since 1.3.0
+   */
+  public static void unbindSession()
+  {
+    sessionReader.remove();
+    sessionOutput.remove();
+  }
+
+  /**
+   * Gets the stream output is written to on the current thread, which is the output of its session, or standard output if it has none.
+   *
+   * @return The output stream.
+   *
+   * @since 1.3.0
+   */
+  public static PrintStream output()
+  {
+    final PrintStream output = sessionOutput.get();
+    return output == null ? System.out : output;
+  }
+
   /**
    * Writes the string representation of a given object to standard output, and ends with a new line.
    *
@@ -31,7 +121,7 @@ public final class Terminal
    */
   public static void writeLine(final Object object)
   {
-    System.out.println(object);
+    output().println(object);
   }
 
   /**
@@ -45,7 +135,7 @@ public final class Terminal
    */
   public static void write(final Object object)
   {
-    System.out.print(object);
+    output().print(object);
   }
 
   /**
@@ -54,7 +144,7 @@ public final class Terminal
    * @param prompt  string to write to standard output before waiting for input, for example "What is your name? " before waiting for the user to input their name
    * @param charset which character set to use when parsing input
    *
-   * @return The user input using the chosen character set.
+   * @return The user input using the chosen character set, or null if standard input has ended.
    *
    * @throws IOException if reading from standard input failed.
    *
@@ -65,20 +155,18 @@ public final class Terminal
   @SuppressWarnings("WeakerAccess")
   public static String readString(final String prompt, final Charset charset)	throws IOException
   {
+    final PrintStream output = output();
+    output.print(prompt);
+    output.flush();
 
-    System.out.print(prompt);
-
-    // Use our InputStream decorator instead of raw System.in.
-    System.setIn(new UnclosableInputStream(System.in));
-
-    try (final BufferedReader br = new BufferedReader(new InputStreamReader(System.in, charset)))
+    final Metrics.Sample sample = readTimer.start();
+    try
     {
-      return br.readLine();
+      return reader(charset).readLine();
     }
     finally
     {
-      // Reset System.in.
-      System.setIn(System.in);
+      sample.stopWaiting();
     }
   }
 
@@ -144,6 +232,7 @@ public final class Terminal
    * @return The user input as an integer.
    *
    * @throws IOException           if reading from standard input failed.
+   * @throws EOFException          if standard input has ended.
    * @throws NumberFormatException if user input failed to be converted to an integer.
    *
    * @since //todo next version
@@ -158,6 +247,10 @@ public final class Terminal
     while (!validInput)
     {
       final String rawInput = readString(prompt);
+      if (rawInput == null)
+      {
+        throw new EOFException("Standard input has ended");
+      }
       try
       {
         intInput = Integer.parseInt(rawInput);
@@ -274,6 +367,43 @@ public final class Terminal
     return readBoolean(prompt, StandardCharsets.UTF_8, truthyValues);
   }
 
+  /**
+   * Gets the reader of the current thread's session, or the reader for standard input if it has none.
+   *
+   * @param charset which character set to use when parsing standard input
+   *
+   * @return The reader to read lines from.
+   *
+   * @since 1.3.0
+   */
+  private static BufferedReader reader(final Charset charset)
+  {
+    final BufferedReader session = sessionReader.get();
+    return session == null ? standardInputReader(charset) : session;
+  }
+
+  /**
+   * Gets the reader for standard input, and makes a new one if standard input or the character
+   * set has changed since the last call. Standard input is wrapped in an
+   * {@link UnclosableInputStream}, so it stays open whatever happens to the reader.
+   *
+   * @param charset which character set to use when parsing input
+   *
+   * @return The reader to read lines from.
+   *
+   * @since 1.3.0
+   */
+  private static synchronized BufferedReader standardInputReader(final Charset charset)
+  {
+    if (reader == null || readerInput != System.in || !readerCharset.equals(charset))
+    {
+      readerInput = System.in;
+      readerCharset = charset;
+      reader = new BufferedReader(new InputStreamReader(new UnclosableInputStream(System.in), charset));
+    }
+    return reader;
+  }
+
   /**
    * Empty constructor, only for preventing instantiation.
    *
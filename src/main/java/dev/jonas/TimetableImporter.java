@@ -0,0 +1,356 @@
+package dev.jonas;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The {@code TimetableImporter} class loads a full timetable from a CSV or TSV file into a
+ * {@link ColumnarTimetable}.
+ *
+ * <p>Every row has the fields in the same order as {@link TrainDeparture#TrainDeparture(String[])}:
+ * <blockquote><pre>
+ *   HH,mm,line,track,destination[,trainNumber]
+ * </pre></blockquote>
+ * Fields are separated by tab, semicolon or comma, whichever the first data row uses. Blank lines
+ * and lines starting with {@code #} are skipped, and so is a first row that does not start with a
+ * number, so a header is allowed. Fields cannot be quoted. Two rows cannot have the same train
+ * number; rows without one are given a free number when they are registered, see
+ * {@link DepartureRegistry#addAll(ColumnarTimetable)}.
+ *
+ * <p>The file is memory-mapped with {@link FileChannel#map}, and fields are parsed straight from
+ * the mapped bytes. Numbers never become strings, and a line or destination is only decoded the
+ * first time its bytes are seen, so no objects are made per row.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     ColumnarTimetable timetable = new TimetableImporter().importFile(Path.of("day.csv"));
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class TimetableImporter {
+
+  // Largest part of the file mapped at a time
+  private static final int MAX_CHUNK = 1 << 30;
+  // Rough size of one row, used to size the timetable before parsing
+  private static final int ESTIMATED_ROW_BYTES = 24;
+  private static final int MAX_FIELDS = 6;
+
+  // Start and end of every field in the current row, reused for every row
+  private final int[] fieldStarts = new int[MAX_FIELDS];
+  private final int[] fieldEnds = new int[MAX_FIELDS];
+
+  private final ByteSymbolCache lines = new ByteSymbolCache(SymbolTable.LINES);
+  private final ByteSymbolCache destinations = new ByteSymbolCache(SymbolTable.DESTINATIONS);
+
+  private ColumnarTimetable timetable;
+  // Train number and line number of every row with a train number, as number << 32 | line
+  private long[] numberedRows;
+  private int numberedCount;
+  private byte separator;
+  private boolean firstRow;
+  private long lineNumber;
+
+  /**
+   * Imports every row of a timetable file.
+   *
+   * @param path File to import.
+   * @return Timetable with one row per departure in the file.
+   * @throws IOException if the file could not be read, or a row is not in the expected format.
+   * @since 1.3.0
+   */
+  public ColumnarTimetable importFile(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      timetable = new ColumnarTimetable((int) Math.min(size / ESTIMATED_ROW_BYTES + 1, 1 << 24));
+      separator = 0;
+      firstRow = true;
+      lineNumber = 0;
+      numberedRows = new long[64];
+      numberedCount = 0;
+
+      // Maps the file in chunks that each end after a line feed, so no row is split
+      long position = 0;
+      while (position < size) {
+        int length = (int) Math.min(MAX_CHUNK, size - position);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        int end = length;
+        if (position + length < size) {
+          end = lastIndexOf(buffer, (byte) '\n', length) + 1;
+          if (end == 0) {
+            throw new IOException("Line " + (lineNumber + 1) + " is too long");
+          }
+        }
+        parseRows(buffer, end);
+        position += end;
+      }
+      checkTrainNumbers();
+      return timetable;
+    }
+  }
+
+  /**
+   * Parses every line in the first {@code end} bytes of the buffer.
+   */
+  private void parseRows(MappedByteBuffer buffer, int end) throws IOException {
+    int position = 0;
+    while (position < end) {
+      int lineEnd = indexOf(buffer, (byte) '\n', position, end);
+      int rowEnd = lineEnd;
+      if (rowEnd > position && buffer.get(rowEnd - 1) == '\r') {
+        rowEnd--;
+      }
+      lineNumber++;
+      parseRow(buffer, position, rowEnd);
+      position = lineEnd + 1;
+    }
+  }
+
+  /**
+   * Parses one row, and adds it to the timetable unless it is blank, a comment or a header.
+   */
+  private void parseRow(MappedByteBuffer buffer, int start, int end) throws IOException {
+    int from = skipSpaces(buffer, start, end);
+    if (from == end || buffer.get(from) == '#') {
+      return;
+    }
+    boolean header = firstRow && !isDigit(buffer.get(from));
+    firstRow = false;
+    if (header) {
+      return;
+    }
+    if (separator == 0) {
+      separator = findSeparator(buffer, from, end);
+    }
+
+    // Splits the row into fields
+    int fields = 0;
+    int fieldStart = from;
+    for (int i = from; i <= end; i++) {
+      if (i == end || buffer.get(i) == separator) {
+        if (fields == MAX_FIELDS) {
+          throw new IOException("Line " + lineNumber + " has more than " + MAX_FIELDS + " fields");
+        }
+        fieldStarts[fields] = fieldStart;
+        fieldEnds[fields] = i;
+        fields++;
+        fieldStart = i + 1;
+      }
+    }
+
+    if (fields < MAX_FIELDS - 1) {
+      throw new IOException("Line " + lineNumber + " has " + fields + " fields, expected "
+          + (MAX_FIELDS - 1) + " or " + MAX_FIELDS);
+    }
+
+    int hour = parseInt(buffer, 0);
+    int minute = parseInt(buffer, 1);
+    int lineId = lines.idOf(buffer, fieldStarts[2], fieldEnds[2]);
+    int track = parseInt(buffer, 3);
+    int destinationId = destinations.idOf(buffer, fieldStarts[4], fieldEnds[4]);
+    int trainNumber = -1;
+    if (fields == MAX_FIELDS && skipSpaces(buffer, fieldStarts[5], fieldEnds[5]) < fieldEnds[5]) {
+      trainNumber = parseInt(buffer, 5);
+    }
+    if (trainNumber > 0) {
+      if (numberedCount == numberedRows.length) {
+        numberedRows = Arrays.copyOf(numberedRows, numberedCount * 2);
+      }
+      numberedRows[numberedCount++] = (long) trainNumber << 32 | (lineNumber & 0xFFFFFFFFL);
+    }
+    timetable.addWithIds(trainNumber, hour * 60 + minute, lineId, destinationId, track);
+  }
+
+  /**
+   * Checks that no two rows have the same train number, by sorting the numbered rows so rows
+   * with the same number are next to each other.
+   */
+  private void checkTrainNumbers() throws IOException {
+    long[] sorted = Arrays.copyOf(numberedRows, numberedCount);
+    Arrays.sort(sorted);
+    for (int i = 1; i < sorted.length; i++) {
+      if (sorted[i] >>> 32 == sorted[i - 1] >>> 32) {
+        throw new IOException("Line " + (sorted[i] & 0xFFFFFFFFL) + ": train number "
+            + (sorted[i] >>> 32) + " is already used on line " + (sorted[i - 1] & 0xFFFFFFFFL));
+      }
+    }
+  }
+
+  /**
+   * Parses a field of the current row as a non-negative integer, ignoring spaces around it.
+   */
+  private int parseInt(MappedByteBuffer buffer, int field) throws IOException {
+    int from = skipSpaces(buffer, fieldStarts[field], fieldEnds[field]);
+    int to = fieldEnds[field];
+    while (to > from && buffer.get(to - 1) == ' ') {
+      to--;
+    }
+    if (from == to || to - from > 9) {
+      throw new IOException("Line " + lineNumber + ": field " + (field + 1) + " is not a number");
+    }
+    int value = 0;
+    for (int i = from; i < to; i++) {
+      byte b = buffer.get(i);
+      if (!isDigit(b)) {
+        throw new IOException("Line " + lineNumber + ": field " + (field + 1)
+            + " is not a number");
+      }
+      value = value * 10 + (b - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Picks the separator of the file from the first row: tab, then semicolon, then comma.
+   */
+  private static byte findSeparator(MappedByteBuffer buffer, int from, int to) {
+    byte found = ',';
+    for (int i = from; i < to; i++) {
+      byte b = buffer.get(i);
+      if (b == '\t') {
+        return b;
+      }
+      if (b == ';') {
+        found = b;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Gets the first index from {@code from} that is not a space, or {@code to} if there is none.
+   */
+  private static int skipSpaces(MappedByteBuffer buffer, int from, int to) {
+    int i = from;
+    while (i < to && buffer.get(i) == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Checks if a byte is an ASCII digit.
+   */
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  /**
+   * Finds the first index of a byte in a range, or {@code to} if it is not in the range.
+   */
+  private static int indexOf(MappedByteBuffer buffer, byte value, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (buffer.get(i) == value) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  /**
+   * Finds the last index of a byte before {@code to}, or -1 if it is not there.
+   */
+  private static int lastIndexOf(MappedByteBuffer buffer, byte value, int to) {
+    for (int i = to - 1; i >= 0; i--) {
+      if (buffer.get(i) == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Maps the raw UTF-8 bytes of a field to its id in a {@link SymbolTable}. A field is only
+   * decoded to a string the first time its bytes are seen.
+   */
+  private static final class ByteSymbolCache {
+    private final SymbolTable symbolTable;
+    private int[] hashes = new int[64];
+    private byte[][] keys = new byte[64][];
+    private int[] ids = new int[64];
+    private int size;
+
+    ByteSymbolCache(SymbolTable symbolTable) {
+      this.symbolTable = symbolTable;
+    }
+
+    /**
+     * Gets the symbol id of the bytes between {@code from} and {@code to}, ignoring spaces
+     * around them.
+     */
+    int idOf(MappedByteBuffer buffer, int from, int to) {
+      int start = skipSpaces(buffer, from, to);
+      int end = to;
+      while (end > start && buffer.get(end - 1) == ' ') {
+        end--;
+      }
+
+      int hash = 0x811C9DC5;  // FNV-1a
+      for (int i = start; i < end; i++) {
+        hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+      }
+
+      int mask = keys.length - 1;
+      int slot = hash & mask;
+      while (keys[slot] != null) {
+        if (hashes[slot] == hash && matches(keys[slot], buffer, start, end)) {
+          return ids[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+
+      // First time these bytes are seen
+      byte[] key = new byte[end - start];
+      buffer.get(start, key);
+      int id = symbolTable.idOf(new String(key, StandardCharsets.UTF_8));
+      hashes[slot] = hash;
+      keys[slot] = key;
+      ids[slot] = id;
+      if (++size * 2 > keys.length) {
+        grow();
+      }
+      return id;
+    }
+
+    private static boolean matches(byte[] key, MappedByteBuffer buffer, int from, int to) {
+      if (key.length != to - from) {
+        return false;
+      }
+      for (int i = 0; i < key.length; i++) {
+        if (key[i] != buffer.get(from + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void grow() {
+      int[] oldHashes = hashes;
+      byte[][] oldKeys = keys;
+      int[] oldIds = ids;
+      hashes = new int[oldKeys.length * 2];
+      keys = new byte[oldKeys.length * 2][];
+      ids = new int[oldKeys.length * 2];
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          int slot = oldHashes[i] & mask;
+          while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          hashes[slot] = oldHashes[i];
+          keys[slot] = oldKeys[i];
+          ids[slot] = oldIds[i];
+        }
+      }
+    }
+  }
+}
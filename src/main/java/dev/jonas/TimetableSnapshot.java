@@ -0,0 +1,274 @@
+package dev.jonas;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code TimetableSnapshot} class writes every departure to a compact binary file, and reads
+ * it back into a {@link ColumnarTimetable}.
+ *
+ * <p>The file has four sections, all big-endian:
+ * <blockquote><pre>
+ *   Header      magic "TDSS", version, record count, line count, destination count,
+ *               dictionary length                                  (6 x int)
+ *   Dictionary  every line, then every destination, as an unsigned short length
+ *               followed by the UTF-8 bytes
+ *   Records     one fixed-width record per departure:
+ *               train number (int), scheduled minutes (short), delay minutes (short),
+ *               line index (int), destination index (int), track (byte), padding (3 bytes)
+ *   Checksum    CRC-32 of everything before it                     (int)
+ * </pre></blockquote>
+ * Line and destination indexes point into the dictionary of the same file, so a snapshot does not
+ * depend on the ids of the running process.
+ *
+ * <p>The writer fills one buffer and writes it to a temporary file with a single channel write,
+ * which then replaces the snapshot, so a crash never leaves half a snapshot behind. The reader
+ * memory-maps the file and copies the records straight into the timetable's columns.
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public final class TimetableSnapshot {
+
+  /**
+   * First four bytes of every snapshot, "TDSS" in ASCII.
+   *
+   * @since 1.3.0
+   */
+  public static final int MAGIC = 0x54445353;
+
+  /**
+   * Version of the format written by this class.
+   *
+   * @since 1.3.0
+   */
+  public static final int VERSION = 1;
+
+  private static final int HEADER_BYTES = 6 * Integer.BYTES;
+  private static final int RECORD_BYTES = 20;
+  private static final int CHECKSUM_BYTES = Integer.BYTES;
+
+  /**
+   * Writes a snapshot of the given departures, replacing any file at the path. Every departure is
+   * copied to a record once before anything is written.
+   *
+   * @param path File to write.
+   * @param trainDepartures Departures to write, in the order they should be read back.
+   * @throws IOException if the file could not be written.
+   * @see #writeRecords(Path, Collection)
+   * @since 1.3.0
+   */
+  public static void write(Path path, Collection<? extends TrainDeparture> trainDepartures)
+      throws IOException {
+    List<DepartureRecord> records = new ArrayList<>(trainDepartures.size());
+    for (TrainDeparture trainDeparture : trainDepartures) {
+      records.add(DepartureRecord.of(trainDeparture, 0));
+    }
+    writeRecords(path, records);
+  }
+
+  /**
+   * Writes a snapshot of the given departure records, replacing any file at the path. Records do
+   * not change, so the dictionary and the records of the file always agree, even if the
+   * departures change while the snapshot is written. A registry gives its records without
+   * locking, see {@link DepartureRegistry#snapshot(int, int)}.
+   *
+   * @param path File to write.
+   * @param records Records to write, in the order they should be read back.
+   * @throws IOException if the file could not be written.
+   * @since 1.3.0
+   */
+  public static void writeRecords(Path path, Collection<DepartureRecord> records)
+      throws IOException {
+    // Gives every line and destination in use an index in this file's dictionary
+    int[] lineIndexes = new int[SymbolTable.LINES.size()];
+    int[] destinationIndexes = new int[SymbolTable.DESTINATIONS.size()];
+    ByteBuffer lines = ByteBuffer.allocate(1024);
+    ByteBuffer destinations = ByteBuffer.allocate(1024);
+    int lineCount = 0;
+    int destinationCount = 0;
+    for (DepartureRecord record : records) {
+      int lineId = record.lineId();
+      if (lineId >= lineIndexes.length) {
+        lineIndexes = Arrays.copyOf(lineIndexes, SymbolTable.LINES.size());
+      }
+      if (lineIndexes[lineId] == 0) {
+        lines = putString(lines, record.line());
+        lineIndexes[lineId] = ++lineCount;  // Stored plus one, so 0 means not given yet
+      }
+      int destinationId = record.destinationId();
+      if (destinationId >= destinationIndexes.length) {
+        destinationIndexes = Arrays.copyOf(destinationIndexes,
+            SymbolTable.DESTINATIONS.size());
+      }
+      if (destinationIndexes[destinationId] == 0) {
+        destinations = putString(destinations, record.destination());
+        destinationIndexes[destinationId] = ++destinationCount;
+      }
+    }
+    lines.flip();
+    destinations.flip();
+
+    int recordCount = records.size();
+    int dictionaryBytes = lines.remaining() + destinations.remaining();
+    long totalBytes = (long) HEADER_BYTES + dictionaryBytes
+        + (long) recordCount * RECORD_BYTES + CHECKSUM_BYTES;
+    if (totalBytes > Integer.MAX_VALUE) {
+      throw new IOException("Too many departures for one snapshot: " + recordCount);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate((int) totalBytes);
+    buffer.putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(recordCount)
+        .putInt(lineCount)
+        .putInt(destinationCount)
+        .putInt(dictionaryBytes);
+    buffer.put(lines).put(destinations);
+    for (DepartureRecord record : records) {
+      buffer.putInt(record.trainNumber())
+          .putShort((short) record.scheduledMinutes())
+          .putShort((short) record.delayMinutes())
+          .putInt(lineIndexes[record.lineId()] - 1)
+          .putInt(destinationIndexes[record.destinationId()] - 1)
+          .put((byte) record.track())
+          .put((byte) 0)
+          .putShort((short) 0);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) crc.getValue());
+    buffer.flip();
+
+    // Writes next to the snapshot first, so the old snapshot is intact until the new one is done
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a snapshot into a new timetable. Departures keep their train number, time, delay, line,
+   * destination and track, and come back in the order they were written.
+   *
+   * @param path Snapshot file to read.
+   * @return Timetable with one row per departure in the snapshot.
+   * @throws IOException if the file could not be read, is not a snapshot, has an unsupported
+   *     version or does not match its checksum.
+   * @since 1.3.0
+   */
+  public static ColumnarTimetable read(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_BYTES + CHECKSUM_BYTES || size > Integer.MAX_VALUE) {
+        throw new IOException(path + " is not a timetable snapshot");
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException(path + " is not a timetable snapshot");
+      }
+      int version = buffer.getInt(4);
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version + " in " + path);
+      }
+      int checksumAt = (int) size - CHECKSUM_BYTES;
+      CRC32 crc = new CRC32();
+      crc.update(buffer.slice(0, checksumAt));
+      if ((int) crc.getValue() != buffer.getInt(checksumAt)) {
+        throw new IOException("Checksum of snapshot " + path + " does not match");
+      }
+
+      buffer.position(8);
+      int recordCount = buffer.getInt();
+      int lineCount = buffer.getInt();
+      int destinationCount = buffer.getInt();
+      int dictionaryBytes = buffer.getInt();
+      if ((long) HEADER_BYTES + dictionaryBytes + (long) recordCount * RECORD_BYTES
+          != checksumAt) {
+        throw new IOException("Size of snapshot " + path + " does not match its header");
+      }
+
+      // Maps the indexes of this file to the ids of this process
+      int[] lineIds = new int[lineCount];
+      for (int i = 0; i < lineCount; i++) {
+        lineIds[i] = SymbolTable.LINES.idOf(getString(buffer));
+      }
+      int[] destinationIds = new int[destinationCount];
+      for (int i = 0; i < destinationCount; i++) {
+        destinationIds[i] = SymbolTable.DESTINATIONS.idOf(getString(buffer));
+      }
+
+      ColumnarTimetable timetable = new ColumnarTimetable(recordCount);
+      for (int i = 0; i < recordCount; i++) {
+        int trainNumber = buffer.getInt();
+        int scheduledMinutes = buffer.getShort();
+        int delayMinutes = buffer.getShort();
+        int lineIndex = buffer.getInt();
+        int destinationIndex = buffer.getInt();
+        int track = buffer.get();
+        buffer.position(buffer.position() + 3);  // Padding
+
+        int row = timetable.addWithIds(trainNumber, scheduledMinutes, lineIds[lineIndex],
+            destinationIds[destinationIndex], track);
+        timetable.setDelayMinutes(row, delayMinutes);
+      }
+      return timetable;
+    } catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+      throw new IOException("Snapshot " + path + " is corrupt", e);
+    }
+  }
+
+  /**
+   * Appends a string to a buffer as an unsigned short length and UTF-8 bytes, growing the buffer
+   * if needed.
+   */
+  private static ByteBuffer putString(ByteBuffer buffer, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > 0xFFFF) {
+      throw new IOException("Name too long for snapshot: " + string.substring(0, 32) + "...");
+    }
+    ByteBuffer target = buffer;
+    if (target.remaining() < Short.BYTES + bytes.length) {
+      int needed = target.position() + Short.BYTES + bytes.length;
+      int capacity = Math.max(target.capacity() * 2, needed);
+      target = ByteBuffer.allocate(capacity).put(buffer.flip());
+    }
+    return target.putShort((short) bytes.length).put(bytes);
+  }
+
+  /**
+   * Reads a string written by {@link #putString(ByteBuffer, String)}.
+   */
+  private static String getString(ByteBuffer buffer) {
+    int length = Short.toUnsignedInt(buffer.getShort());
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Empty constructor, only for preventing instantiation.
+   */
+  private TimetableSnapshot() { }
+}
@@ -0,0 +1,217 @@
+package dev.jonas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The {@code TrackOccupancy} class keeps which train departures occupy each track, and when, so
+ * two trains are not given the same track at the same time.
+ *
+ * <p>A departure occupies its track for the headway before it leaves: from {@code headway - 1}
+ * minutes before its effective departure time, up to and including the minute it leaves. Two
+ * departures on the same track conflict if they leave less than the headway apart. With a headway
+ * of one minute, only departures that leave in the same minute conflict.
+ *
+ * <p>Every track has a skip list of its departures, sorted by effective departure time, so
+ * checking a track for conflicts is O(log n + k) where k is the number of conflicts, and finding
+ * every free track in a time window is O(t log n) for t tracks. The index is thread-safe, as
+ * departures on different tracks, or at different times, can be added and removed at once.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     TrackOccupancy occupancy = new TrackOccupancy(3);
+ *     occupancy.add(2, 16 * 60 + 37, trainDeparture);
+ *     occupancy.isFree(2, 16 * 60 + 30, 16 * 60 + 40);  // False
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class TrackOccupancy {
+
+  /**
+   * Highest track number.
+   *
+   * @since 1.3.0
+   */
+  public static final int MAX_TRACK = 99;
+
+  /**
+   * Minutes a departure occupies its track for, unless another headway is given.
+   *
+   * @since 1.3.0
+   */
+  public static final int DEFAULT_HEADWAY_MINUTES = 3;
+
+  private final int headwayMinutes;
+  // Departures of every track by effective time, then train number. Index 0 is not used
+  private final List<ConcurrentSkipListMap<Long, TrainDeparture>> tracks;
+
+  /**
+   * Constructs an empty index with the default headway.
+   *
+   * @since 1.3.0
+   */
+  public TrackOccupancy() {
+    this(DEFAULT_HEADWAY_MINUTES);
+  }
+
+  /**
+   * Constructs an empty index.
+   *
+   * @param headwayMinutes Minutes a departure occupies its track for. Must be positive.
+   * @throws IllegalArgumentException if {@code headwayMinutes} is not positive.
+   * @since 1.3.0
+   */
+  public TrackOccupancy(int headwayMinutes) {
+    if (headwayMinutes <= 0) {
+      throw new IllegalArgumentException("Headway must be at least one minute, was "
+          + headwayMinutes);
+    }
+    this.headwayMinutes = headwayMinutes;
+    tracks = new ArrayList<>(MAX_TRACK + 1);
+    for (int track = 0; track <= MAX_TRACK; track++) {
+      tracks.add(new ConcurrentSkipListMap<>());
+    }
+  }
+
+  /**
+   * Gets the minutes a departure occupies its track for.
+   *
+   * @return The headway, in minutes.
+   * @since 1.3.0
+   */
+  public int getHeadwayMinutes() {
+    return headwayMinutes;
+  }
+
+  /**
+   * Marks a track as occupied by a departure. A departure without a track is not indexed.
+   *
+   * @param track Track of the departure, or -1 if none.
+   * @param effectiveMinutes Effective departure time, in minutes after midnight.
+   * @param trainDeparture Departure that occupies the track. Cannot be null.
+   * @since 1.3.0
+   */
+  public void add(int track, int effectiveMinutes, TrainDeparture trainDeparture) {
+    if (isTrack(track)) {
+      tracks.get(track).put(keyOf(effectiveMinutes, trainDeparture.getTrainNumber()),
+          trainDeparture);
+    }
+  }
+
+  /**
+   * Marks a track as no longer occupied by a departure, with the track and time it was added
+   * with.
+   *
+   * @param track Track the departure was added with.
+   * @param effectiveMinutes Effective departure time the departure was added with.
+   * @param trainDeparture Departure to remove. Cannot be null.
+   * @return True if the departure was indexed, false otherwise.
+   * @since 1.3.0
+   */
+  public boolean remove(int track, int effectiveMinutes, TrainDeparture trainDeparture) {
+    return isTrack(track) && tracks.get(track).remove(
+        keyOf(effectiveMinutes, trainDeparture.getTrainNumber()), trainDeparture);
+  }
+
+  /**
+   * Finds the departures that would conflict with a departure on a track at a time.
+   *
+   * @param track Track to check.
+   * @param effectiveMinutes Effective departure time, in minutes after midnight.
+   * @param except Departure to leave out, such as the one being checked. May be null.
+   * @return List of conflicting departures, sorted by effective time. Empty if the track is not
+   *     valid.
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> conflicts(int track, int effectiveMinutes, TrainDeparture except) {
+    List<TrainDeparture> conflicts = new ArrayList<>();
+    if (!isTrack(track)) {
+      return conflicts;
+    }
+    long fromKey = (long) (effectiveMinutes - headwayMinutes + 1) << 32;
+    long toKey = (long) (effectiveMinutes + headwayMinutes) << 32;
+    for (TrainDeparture trainDeparture : tracks.get(track).subMap(fromKey, toKey).values()) {
+      if (trainDeparture != except) {
+        conflicts.add(trainDeparture);
+      }
+    }
+    return conflicts;
+  }
+
+  /**
+   * Finds the departures on a track that leave within a window, such as to list a track.
+   *
+   * @param track Track to list.
+   * @param fromMinutes Start of the window, in minutes after midnight.
+   * @param toMinutes End of the window, in minutes after midnight, not included.
+   * @return List of departures, sorted by effective time. Empty if the track is not valid.
+   * @since 1.3.0
+   */
+  public List<TrainDeparture> departuresBetween(int track, int fromMinutes, int toMinutes) {
+    if (!isTrack(track) || fromMinutes >= toMinutes) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(tracks.get(track)
+        .subMap((long) fromMinutes << 32, (long) toMinutes << 32).values());
+  }
+
+  /**
+   * Checks if no departure occupies a track at any time within a window.
+   *
+   * @param track Track to check.
+   * @param fromMinutes Start of the window, in minutes after midnight.
+   * @param toMinutes End of the window, in minutes after midnight, not included.
+   * @return True if the track is free for the whole window, false if it is occupied or not valid.
+   * @since 1.3.0
+   */
+  public boolean isFree(int track, int fromMinutes, int toMinutes) {
+    if (!isTrack(track)) {
+      return false;
+    }
+    if (fromMinutes >= toMinutes) {
+      return true;
+    }
+    // A departure occupies the window if it leaves in it, or within the headway after it
+    long fromKey = (long) fromMinutes << 32;
+    long toKey = (long) (toMinutes + headwayMinutes - 1) << 32;
+    return tracks.get(track).subMap(fromKey, toKey).isEmpty();
+  }
+
+  /**
+   * Finds every track that no departure occupies within a window, such as to suggest a track for
+   * a departure.
+   *
+   * @param fromMinutes Start of the window, in minutes after midnight.
+   * @param toMinutes End of the window, in minutes after midnight, not included.
+   * @return List of free tracks, lowest first.
+   * @since 1.3.0
+   */
+  public List<Integer> freeTracks(int fromMinutes, int toMinutes) {
+    List<Integer> free = new ArrayList<>();
+    for (int track = 1; track <= MAX_TRACK; track++) {
+      if (isFree(track, fromMinutes, toMinutes)) {
+        free.add(track);
+      }
+    }
+    return free;
+  }
+
+  /**
+   * Checks that a track is between 1 and {@link #MAX_TRACK}.
+   */
+  private static boolean isTrack(int track) {
+    return track >= 1 && track <= MAX_TRACK;
+  }
+
+  /**
+   * Gets the key of a departure, sorted by effective time, then train number.
+   */
+  private static long keyOf(int effectiveMinutes, int trainNumber) {
+    return ((long) effectiveMinutes << 32) | (trainNumber & 0xFFFFFFFFL);
+  }
+}
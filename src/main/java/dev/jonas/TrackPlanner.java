@@ -0,0 +1,508 @@
+package dev.jonas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The {@code TrackPlanner} class assigns tracks to every departure in a time window at once, so
+ * no two trains occupy a track at the same time, while moving as few trains as possible from the
+ * track they already have.
+ *
+ * <p>Departures conflict as in {@link TrackOccupancy}: two departures on the same track conflict
+ * if they leave less than the headway of the registry apart. Planning runs in two steps:
+ * <ol>
+ *   <li>The window is cut into slices, which are planned in parallel on a fork-join pool. Each
+ *   slice is planned greedily in order of departure, as in interval partitioning: a departure
+ *   keeps its track if the track is free, and otherwise gets the free track that another
+ *   departure needs latest, so moving one train seldom moves the next.</li>
+ *   <li>The slices are joined, and a local search repairs the conflicts where slices meet and
+ *   with departures just outside the window, and then moves every train that was moved back to
+ *   its own track if that track has become free.</li>
+ * </ol>
+ * A plan only has conflicts if more trains leave within a headway than there are tracks.
+ *
+ * <p>A plan is made from records read without locking, and does not change the registry until it
+ * is applied. A departure that has changed between planning and applying, such as by a delay,
+ * keeps its track, and so does a departure whose planned track another change has taken, so an
+ * old plan never moves a train into a conflict.
+ *
+ * <p><br>
+ *   <blockquote><pre>
+ *     TrackPlanner planner = new TrackPlanner(registry);
+ *     TrackPlanner.Plan plan = planner.plan(16 * 60, 24 * 60);
+ *     planner.apply(plan);
+ *   </pre></blockquote>
+ * </p>
+ *
+ * @author Jonas Birkeli
+ * @version 1.3.0
+ * @since 1.3.0
+ */
+public class TrackPlanner {
+
+  /**
+   * Minutes of departures planned together in one slice, unless another length is given.
+   *
+   * @since 1.3.0
+   */
+  public static final int DEFAULT_SLICE_MINUTES = 60;
+
+  // Effective time far enough before any departure that a track is free after it
+  private static final int LONG_AGO = Integer.MIN_VALUE / 2;
+  private static final int NEVER = Integer.MAX_VALUE;
+
+  private final DepartureRegistry departureRegistry;
+  private final ForkJoinPool pool;
+  private final int sliceMinutes;
+
+  /**
+   * Constructs a planner that plans on the common fork-join pool.
+   *
+   * @param departureRegistry Registry to plan the departures of. Cannot be null.
+   * @since 1.3.0
+   */
+  public TrackPlanner(DepartureRegistry departureRegistry) {
+    this(departureRegistry, ForkJoinPool.commonPool(), DEFAULT_SLICE_MINUTES);
+  }
+
+  /**
+   * Constructs a planner.
+   *
+   * @param departureRegistry Registry to plan the departures of. Cannot be null.
+   * @param pool Pool the slices are planned on. Cannot be null.
+   * @param sliceMinutes Minutes of departures planned together. Must be positive.
+   * @throws IllegalArgumentException if {@code sliceMinutes} is not positive.
+   * @since 1.3.0
+   */
+  public TrackPlanner(DepartureRegistry departureRegistry, ForkJoinPool pool, int sliceMinutes) {
+    if (sliceMinutes <= 0) {
+      throw new IllegalArgumentException("Slices must be at least one minute, was "
+          + sliceMinutes);
+    }
+    this.departureRegistry = departureRegistry;
+    this.pool = pool;
+    this.sliceMinutes = sliceMinutes;
+  }
+
+  /**
+   * Plans the tracks of every departure with an effective departure time within a window.
+   * Departures just outside the window keep their tracks, and are planned around.
+   *
+   * @param fromMinutes Start of the window, in minutes after midnight.
+   * @param toMinutes End of the window, in minutes after midnight, not included.
+   * @return The plan.
+   * @since 1.3.0
+   */
+  public Plan plan(int fromMinutes, int toMinutes) {
+    int headway = departureRegistry.getTrackHeadwayMinutes();
+    Plan plan = new Plan(departureRegistry.snapshotBetween(fromMinutes, toMinutes));
+    if (plan.size() == 0) {
+      return plan;
+    }
+    // Slices only the time the departures cover, so an open-ended window is not cut up
+    pool.invoke(new SliceTask(plan, headway, plan.effectiveMinutes[0],
+        plan.effectiveMinutes[plan.size() - 1] + 1));
+
+    List<DepartureRecord> fixed = new ArrayList<>(
+        departureRegistry.snapshotBetween(fromMinutes - headway + 1, fromMinutes));
+    if (toMinutes <= Integer.MAX_VALUE - headway) {
+      fixed.addAll(departureRegistry.snapshotBetween(toMinutes, toMinutes + headway - 1));
+    }
+    new Repair(plan, fixed, headway).run();
+    return plan;
+  }
+
+  /**
+   * Gives every departure of a plan its planned track, if it does not have it already. A
+   * departure that has changed since it was planned is skipped, as is one whose planned track is
+   * no longer free.
+   *
+   * @param plan Plan to apply. Cannot be null.
+   * @return Number of departures given a new track.
+   * @since 1.3.0
+   */
+  public int apply(Plan plan) {
+    Map<Integer, Integer> indexes = new HashMap<>(plan.size() * 2);
+    for (int i = 0; i < plan.size(); i++) {
+      indexes.put(plan.trainNumbers[i], i);
+    }
+    int changed = 0;
+    for (int i = 0; i < plan.size(); i++) {
+      if (plan.tracks[i] == plan.previousTracks[i]) {
+        continue;
+      }
+      TrainDeparture trainDeparture = departureRegistry.get(plan.trainNumbers[i]);
+      if (trainDeparture != null && isFreeOnceApplied(plan, indexes, trainDeparture, plan.tracks[i])
+          && departureRegistry.setTrackIfUnchanged(plan.trainNumbers[i], plan.versions[i],
+              plan.tracks[i])) {
+        changed++;
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Checks if a track is free for a departure once a plan is applied: every departure on it
+   * within the headway must be in the plan, unchanged since, and planned to leave the track.
+   */
+  private boolean isFreeOnceApplied(Plan plan, Map<Integer, Integer> indexes,
+      TrainDeparture trainDeparture, int track) {
+    for (TrainDeparture other : departureRegistry.findConflicts(trainDeparture, track)) {
+      Integer index = indexes.get(other.getTrainNumber());
+      DepartureRecord record = departureRegistry.getRecord(other.getTrainNumber());
+      if (index == null || record == null || record.version() != plan.versions[index]
+          || plan.tracks[index] == track) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The tracks planned for the departures of a window, sorted by effective departure time.
+   *
+   * @since 1.3.0
+   */
+  public static final class Plan {
+
+    private final int[] trainNumbers;
+    private final int[] effectiveMinutes;
+    private final int[] previousTracks;
+    private final int[] tracks;
+    // Versions of the records planned from, to find departures changed before the plan is applied
+    private final long[] versions;
+    private int conflicts;
+
+    /**
+     * Constructs a plan where every departure keeps its track.
+     */
+    private Plan(List<DepartureRecord> records) {
+      int size = records.size();
+      trainNumbers = new int[size];
+      effectiveMinutes = new int[size];
+      previousTracks = new int[size];
+      tracks = new int[size];
+      versions = new long[size];
+      for (int i = 0; i < size; i++) {
+        DepartureRecord record = records.get(i);
+        trainNumbers[i] = record.trainNumber();
+        effectiveMinutes[i] = record.effectiveMinutes();
+        previousTracks[i] = record.track();
+        tracks[i] = record.track();
+        versions[i] = record.version();
+      }
+      conflicts = 0;
+    }
+
+    /**
+     * Gets the number of departures in the plan.
+     *
+     * @return Number of departures.
+     * @since 1.3.0
+     */
+    public int size() {
+      return trainNumbers.length;
+    }
+
+    /**
+     * Gets the train number of a departure in the plan.
+     *
+     * @param index Index of the departure, in order of effective departure time.
+     * @return The train number.
+     * @since 1.3.0
+     */
+    public int getTrainNumber(int index) {
+      return trainNumbers[index];
+    }
+
+    /**
+     * Gets the track planned for a departure.
+     *
+     * @param index Index of the departure, in order of effective departure time.
+     * @return The planned track.
+     * @since 1.3.0
+     */
+    public int getTrack(int index) {
+      return tracks[index];
+    }
+
+    /**
+     * Gets the track a departure had when it was planned.
+     *
+     * @param index Index of the departure, in order of effective departure time.
+     * @return The track, or -1 if it had none.
+     * @since 1.3.0
+     */
+    public int getPreviousTrack(int index) {
+      return previousTracks[index];
+    }
+
+    /**
+     * Gets the number of departures moved from the track they had. Departures that had no track
+     * are not counted.
+     *
+     * @return Number of departures moved.
+     * @since 1.3.0
+     */
+    public int getChanges() {
+      int changes = 0;
+      for (int i = 0; i < tracks.length; i++) {
+        if (previousTracks[i] != -1 && tracks[i] != previousTracks[i]) {
+          changes++;
+        }
+      }
+      return changes;
+    }
+
+    /**
+     * Gets the number of departures that still conflict with the next departure on their track,
+     * because too many trains leave at once.
+     *
+     * @return Number of conflicts.
+     * @since 1.3.0
+     */
+    public int getConflicts() {
+      return conflicts;
+    }
+  }
+
+  /**
+   * Plans the slices of a range of departures, splitting the range in two while it covers more
+   * than one slice.
+   */
+  private final class SliceTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Plan plan;
+    private final int headway;
+    private final int fromMinutes;
+    private final int toMinutes;
+
+    /**
+     * Constructs a task that plans the departures within a window.
+     */
+    SliceTask(Plan plan, int headway, int fromMinutes, int toMinutes) {
+      this.plan = plan;
+      this.headway = headway;
+      this.fromMinutes = fromMinutes;
+      this.toMinutes = toMinutes;
+    }
+
+    @Override
+    protected void compute() {
+      if (toMinutes - fromMinutes <= sliceMinutes) {
+        planSlice(plan, headway, indexOf(plan, fromMinutes), indexOf(plan, toMinutes));
+        return;
+      }
+      int middle = fromMinutes + (toMinutes - fromMinutes) / 2;
+      invokeAll(new SliceTask(plan, headway, fromMinutes, middle),
+          new SliceTask(plan, headway, middle, toMinutes));
+    }
+  }
+
+  /**
+   * Plans the departures from one index up to another greedily, in order of departure. Every
+   * slice writes only its own departures of the plan.
+   */
+  private static void planSlice(Plan plan, int headway, int from, int to) {
+    if (from == to) {
+      return;
+    }
+    // The times each track is needed by the departures that already have it, and the next one
+    int[] ownerCounts = new int[TrackOccupancy.MAX_TRACK + 2];
+    for (int i = from; i < to; i++) {
+      if (plan.previousTracks[i] != -1) {
+        ownerCounts[plan.previousTracks[i] + 1]++;
+      }
+    }
+    for (int track = 1; track < ownerCounts.length; track++) {
+      ownerCounts[track] += ownerCounts[track - 1];
+    }
+    int[] ownerTimes = new int[ownerCounts[ownerCounts.length - 1]];
+    int[] fill = ownerCounts.clone();
+    for (int i = from; i < to; i++) {
+      if (plan.previousTracks[i] != -1) {
+        ownerTimes[fill[plan.previousTracks[i]]++] = plan.effectiveMinutes[i];
+      }
+    }
+    int[] nextOwner = ownerCounts.clone();
+
+    int[] lastLeaves = new int[TrackOccupancy.MAX_TRACK + 1];
+    Arrays.fill(lastLeaves, LONG_AGO);
+    for (int i = from; i < to; i++) {
+      int effective = plan.effectiveMinutes[i];
+      int track = plan.previousTracks[i];
+      if (track == -1 || effective - lastLeaves[track] < headway) {
+        track = freeTrack(effective, headway, lastLeaves, ownerTimes, ownerCounts, nextOwner);
+      }
+      plan.tracks[i] = track;
+      lastLeaves[track] = effective;
+    }
+  }
+
+  /**
+   * Picks a track for a departure that cannot keep its own: the free track that another
+   * departure needs latest, or the track that was left the longest ago if none is free.
+   */
+  private static int freeTrack(int effective, int headway, int[] lastLeaves, int[] ownerTimes,
+      int[] ownerCounts, int[] nextOwner) {
+    int best = -1;
+    int bestNeeded = -1;
+    int leastUsed = 1;
+    for (int track = 1; track <= TrackOccupancy.MAX_TRACK; track++) {
+      if (lastLeaves[track] < lastLeaves[leastUsed]) {
+        leastUsed = track;
+      }
+      if (effective - lastLeaves[track] < headway) {
+        continue;
+      }
+      // Skips the times the track was needed that have passed
+      int end = ownerCounts[track + 1];
+      while (nextOwner[track] < end && ownerTimes[nextOwner[track]] < effective) {
+        nextOwner[track]++;
+      }
+      int needed = nextOwner[track] < end ? ownerTimes[nextOwner[track]] : NEVER;
+      if (needed > bestNeeded) {
+        best = track;
+        bestNeeded = needed;
+      }
+    }
+    return best != -1 ? best : leastUsed;
+  }
+
+  /**
+   * Gets the index of the first departure of a plan at or after a time.
+   */
+  private static int indexOf(Plan plan, int minutes) {
+    int low = 0;
+    int high = plan.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (plan.effectiveMinutes[middle] < minutes) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Repairs the conflicts left between slices and with the departures around the window, and
+   * moves departures back to their own tracks where they have become free.
+   */
+  private static final class Repair {
+
+    private final Plan plan;
+    private final int headway;
+    // Departures of every track, by effective time then index. Fixed departures have indexes
+    // from the size of the plan
+    private final List<TreeSet<Long>> departuresByTrack;
+
+    /**
+     * Constructs a repair of a plan, with the departures around the window that keep their
+     * tracks.
+     */
+    Repair(Plan plan, List<DepartureRecord> fixed, int headway) {
+      this.plan = plan;
+      this.headway = headway;
+      departuresByTrack = new ArrayList<>(TrackOccupancy.MAX_TRACK + 1);
+      for (int track = 0; track <= TrackOccupancy.MAX_TRACK; track++) {
+        departuresByTrack.add(new TreeSet<>());
+      }
+      for (int i = 0; i < plan.size(); i++) {
+        departuresByTrack.get(plan.tracks[i]).add(keyOf(plan.effectiveMinutes[i], i));
+      }
+      for (int j = 0; j < fixed.size(); j++) {
+        DepartureRecord record = fixed.get(j);
+        if (record.track() != -1) {
+          departuresByTrack.get(record.track())
+              .add(keyOf(record.effectiveMinutes(), plan.size() + j));
+        }
+      }
+    }
+
+    /**
+     * Runs the repair.
+     */
+    void run() {
+      // Moves every departure that conflicts, preferring its own track
+      for (int i = 0; i < plan.size(); i++) {
+        if (!isFree(plan.tracks[i], i)) {
+          int track = plan.previousTracks[i] != -1 && isFree(plan.previousTracks[i], i)
+              ? plan.previousTracks[i] : lowestFreeTrack(i);
+          if (track != -1) {
+            move(i, track);
+          }
+        }
+      }
+      // Moves departures back to their own tracks where they have become free
+      for (int i = 0; i < plan.size(); i++) {
+        int own = plan.previousTracks[i];
+        if (own != -1 && plan.tracks[i] != own && isFree(own, i)) {
+          move(i, own);
+        }
+      }
+      int conflicts = 0;
+      for (int i = 0; i < plan.size(); i++) {
+        Long next = departuresByTrack.get(plan.tracks[i])
+            .higher(keyOf(plan.effectiveMinutes[i], i));
+        if (next != null && (int) (next >> 32) - plan.effectiveMinutes[i] < headway) {
+          conflicts++;
+        }
+      }
+      plan.conflicts = conflicts;
+    }
+
+    /**
+     * Checks if no other departure is on a track within the headway of a departure.
+     */
+    private boolean isFree(int track, int index) {
+      int effective = plan.effectiveMinutes[index];
+      long self = keyOf(effective, index);
+      for (long key : departuresByTrack.get(track).subSet(
+          keyOf(effective - headway + 1, 0), keyOf(effective + headway, 0))) {
+        if (key != self) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets the lowest track that is free for a departure, or -1 if none is.
+     */
+    private int lowestFreeTrack(int index) {
+      for (int track = 1; track <= TrackOccupancy.MAX_TRACK; track++) {
+        if (isFree(track, index)) {
+          return track;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * Moves a departure to another track.
+     */
+    private void move(int index, int track) {
+      long key = keyOf(plan.effectiveMinutes[index], index);
+      departuresByTrack.get(plan.tracks[index]).remove(key);
+      departuresByTrack.get(track).add(key);
+      plan.tracks[index] = track;
+    }
+
+    /**
+     * Gets the key of a departure, sorted by effective time, then index.
+     */
+    private static long keyOf(int effectiveMinutes, int index) {
+      return ((long) effectiveMinutes << 32) | index;
+    }
+  }
+}
@@ -1,28 +1,34 @@
 package dev.jonas;
 
 
-import java.util.Objects;
-
 /**
  * The {@code TrainDeparture} class represents a train on a station.
- * All {@code TrainDeparture}s has a departuretime, delay, line, destination and track.
+ * All {@code TrainDeparture}s has a train number, departuretime, delay, line, destination and
+ * track.
  *
- * <p>The {@code TrainDeparture} class has three constructors:
+ * <p>The {@code TrainDeparture} class has four public constructors:
  * <blockquote><pre>
  *   TrainDeparture trainDeparture = new TrainDeparture();
  *   TrainDeparture trainDeparture = new TrainDeparture({23, 56}, "L1", "Hamburg", 3);
- *   TrainDeparture trainDeparture = new TrainDeparture({23, 56, "L1", "Hamburg", 3});
+ *   TrainDeparture trainDeparture = new TrainDeparture(601, {23, 56}, "L1", "Hamburg", 3);
+ *   TrainDeparture trainDeparture = new TrainDeparture({"23", "56", "L1", "3", "Hamburg"});
  * </pre></blockquote>
  *
+ * <p>Times are stored as primitive minutes after midnight, so a departure holds no arrays.
+ * The {@code int[]} accessors are kept for convenience, and build a new array on every call.
+ * Line and destination are stored as ids in {@link SymbolTable#LINES} and
+ * {@link SymbolTable#DESTINATIONS}, so departures share one instance of each name.
+ *
  * @author Jonas Birkeli
- * @version 1.1.0
+ * @version 1.3.0
  * @since 1.0.0
  */
 public class TrainDeparture {
-  private int[] departureTime;
-  private int[] delay;
-  private String line;
-  private String destination;
+  private int trainNumber;
+  private int departureMinutes;
+  private int delayMinutes;
+  private int lineId;
+  private int destinationId;
   private int track;
 
   /**
@@ -39,11 +45,32 @@ public class TrainDeparture {
       String destination,
       int track
   ) {
+    this(-1, departureTime, line, destination, track);
+  }
+
+  /**
+   * Constructs a new {@code TrainDeparture} with the given parameters and a train number.
+   *
+   * @param trainNumber Number identifying the train. Set to -1 if not positive.
+   * @param departureTime  Scheduled time for departure of train.
+   * @param line Scheduled line of train
+   * @param destination End-destination of train.
+   * @param track Number of the departure-track.
+   * @since 1.3.0
+   */
+  public TrainDeparture(
+      int trainNumber,
+      int[] departureTime,
+      String line,
+      String destination,
+      int track
+  ) {
+    setTrainNumber(trainNumber);
     setDepartureTime(departureTime);
     setLine(line);
     setDestination(destination);
     setTrack(track);
-    setDelay(new int[]{0, 0});
+    setDelayMinutes(0);
   }
 
   /**
@@ -52,11 +79,25 @@ public class TrainDeparture {
    * @since 1.0.1
    */
   public TrainDeparture() {
-    setDepartureTime(new int[]{0, 0});
-    setLine("");
-    setDestination("");
-    setTrack(-1);
-    setDelay(new int[]{0, 0});
+    this(true);
+  }
+
+  /**
+   * Constructs a new {@code TrainDeparture}, optionally without setting any fields. Used by views
+   * that keep their fields somewhere else and override every getter and setter.
+   *
+   * @param initialize Whether to set the default fields, as {@link #TrainDeparture()} does.
+   * @since 1.3.0
+   */
+  TrainDeparture(boolean initialize) {
+    if (initialize) {
+      setTrainNumber(-1);
+      setScheduledMinutes(0);
+      setLine("");
+      setDestination("");
+      setTrack(-1);
+      setDelayMinutes(0);
+    }
   }
 
   /**
@@ -64,43 +105,92 @@ public class TrainDeparture {
    * "{<br>
    * departureHour,
    * departureMinute,<br>
-   * departureLinedeparture,<br>
+   * departureLine,<br>
+   * departureTrack,<br>
    * Destination,<br>
-   * departureTrack<br>
+   * trainNumber<br>
    * }".
+   * The train number is optional. Fields not given keep their default value.
    *
-   * @param fields List of fields in the format "{HH, mm, line, destination, track}".
-   *               Cannot be null.
+   * @param fields List of fields in the format "{HH, mm, line, track, destination, number}".
+   *               If null, every field is default.
    *
    * @since 1.1.0
    */
   public TrainDeparture(String[] fields) {
+    this(true);
     if (fields == null) {
       return;
     }
-    setDepartureTime(new int[]{Integer.parseInt(fields[0]), Integer.parseInt(fields[1])});
+    setScheduledMinutes(Integer.parseInt(fields[0]) * 60 + Integer.parseInt(fields[1]));
     setLine(fields[2]);
     setTrack(Integer.parseInt(fields[3]));
     setDestination(fields[4]);
-    setDelay(new int[]{0, 0});
+    if (fields.length > 5 && fields[5] != null && !fields[5].isEmpty()) {
+      setTrainNumber(Integer.parseInt(fields[5]));
+    }
+  }
+
+  /**
+   * Gets the number identifying the train. The number must not be changed while the departure
+   * is in a {@link DepartureRegistry}.
+   *
+   * @return Positive train number, or -1 if undeclared.
+   * @since 1.3.0
+   */
+  public int getTrainNumber() {
+    return trainNumber;
+  }
+
+  /**
+   * Sets the number identifying the train. Value set to -1 if not positive.
+   *
+   * @param trainNumber Train number. Example: 601
+   * @since 1.3.0
+   */
+  public void setTrainNumber(int trainNumber) {
+    this.trainNumber = trainNumber > 0 ? trainNumber : -1;
   }
 
   /**
    * Gets the scheduled departure-time of the train departure.
    *
    * @return Formatted departure-time as am integer array of "{HH, mm}". Cannot be null.
+   * @see #getScheduledMinutes()
    */
   public int[] getDepartureTime() {
-    return departureTime;
+    int minutes = getScheduledMinutes();
+    return new int[]{minutes / 60, minutes % 60};
   }
 
   /**
    * Sets a time of departure of the train given by an integer array.
    *
    * @param departureTime Needs to be in the format "{HH, mm}". Cannot be null.
+   * @see #setScheduledMinutes(int)
    */
   public void setDepartureTime(int[] departureTime) {
-    this.departureTime = departureTime;
+    setScheduledMinutes(departureTime[0] * 60 + departureTime[1]);
+  }
+
+  /**
+   * Gets the scheduled departure-time of the train departure as minutes after midnight.
+   *
+   * @return Scheduled time in minutes. For example 16:37 is 997.
+   * @since 1.3.0
+   */
+  public int getScheduledMinutes() {
+    return departureMinutes;
+  }
+
+  /**
+   * Sets the scheduled departure-time of the train departure as minutes after midnight.
+   *
+   * @param departureMinutes Scheduled time in minutes. For example 16:37 is 997.
+   * @since 1.3.0
+   */
+  public void setScheduledMinutes(int departureMinutes) {
+    this.departureMinutes = departureMinutes;
   }
 
   /**
@@ -108,9 +198,11 @@ public class TrainDeparture {
    * Needs to be added to the scheduled departure-time. Cannot be negative.
    *
    * @return Delay of train departure.
+   * @see #getDelayMinutes()
    */
   public int[] getDelay() {
-    return delay;
+    int minutes = getDelayMinutes();
+    return new int[]{minutes / 60, minutes % 60};
   }
 
   /**
@@ -118,22 +210,69 @@ public class TrainDeparture {
    * Must not be over 24 hours or negative.
    *
    * @param delay Delay in the format "{HH, mm}". Cannot be null.
+   * @see #setDelayMinutes(int)
    */
   public void setDelay(int[] delay) {
     if (delay[0] < 24 && delay[1] < 60 && delay[0] >= 0 && delay[1] >= 0) {
-      this.delay = delay;
+      setDelayMinutes(delay[0] * 60 + delay[1]);
     } else {
-      this.delay = new int[]{0, 0};
+      setDelayMinutes(0);
     }
   }
 
+  /**
+   * Gets the departure-delay of the train departure in minutes. Cannot be negative.
+   *
+   * @return Delay of train departure in minutes.
+   * @since 1.3.0
+   */
+  public int getDelayMinutes() {
+    return delayMinutes;
+  }
+
+  /**
+   * Sets the {@code delay} of the train departure in minutes.
+   * Must be under 24 hours and not negative, otherwise the delay is set to 0.
+   *
+   * @param delayMinutes Delay in minutes.
+   * @since 1.3.0
+   */
+  public void setDelayMinutes(int delayMinutes) {
+    this.delayMinutes = checkDelayMinutes(delayMinutes);
+  }
+
+  /**
+   * Checks that a delay is under 24 hours and not negative.
+   *
+   * @param delayMinutes Delay in minutes.
+   * @return The delay if valid, otherwise 0.
+   * @since 1.3.0
+   */
+  static int checkDelayMinutes(int delayMinutes) {
+    if (delayMinutes >= 0 && delayMinutes < 24 * 60) {
+      return delayMinutes;
+    }
+    return 0;
+  }
+
+  /**
+   * Gets the effective departure-time, which is the scheduled time with the delay added.
+   * A delay may push the result past midnight, in which case it is 1440 or more.
+   *
+   * @return Effective departure-time in minutes after midnight.
+   * @since 1.3.0
+   */
+  public int getEffectiveMinutes() {
+    return getScheduledMinutes() + getDelayMinutes();
+  }
+
   /**
    * Gets the scheduled line of the train. Might be empty if not decalred.
    *
    * @return Line of train as a full or empty string.
    */
   public String getLine() {
-    return line;
+    return SymbolTable.LINES.get(getLineId());
   }
 
   /**
@@ -143,7 +282,18 @@ public class TrainDeparture {
    * @param line Scheduled line of train
    */
   public void setLine(String line) {
-    this.line = Objects.requireNonNullElse(line, "");
+    this.lineId = SymbolTable.LINES.idOf(line);
+  }
+
+  /**
+   * Gets the id of the line in {@link SymbolTable#LINES}. Two departures have the same line
+   * exactly when they have the same line id.
+   *
+   * @return Id of the line. The empty line has id 0.
+   * @since 1.3.0
+   */
+  public int getLineId() {
+    return lineId;
   }
 
   /**
@@ -152,7 +302,7 @@ public class TrainDeparture {
    * @return End-destination of train given in the format: "Start - End" or empty if not declared.
    */
   public String getDestination() {
-    return destination;
+    return SymbolTable.DESTINATIONS.get(getDestinationId());
   }
 
   /*** Sets the {@code Destination}. If empty or null, destination is set to empty.
@@ -162,7 +312,18 @@ public class TrainDeparture {
    * @since 1.0.0
    */
   public void setDestination(String destination) {
-    this.destination = Objects.requireNonNullElse(destination, "");
+    this.destinationId = SymbolTable.DESTINATIONS.idOf(destination);
+  }
+
+  /**
+   * Gets the id of the destination in {@link SymbolTable#DESTINATIONS}. Two departures have the
+   * same destination exactly when they have the same destination id.
+   *
+   * @return Id of the destination. The empty destination has id 0.
+   * @since 1.3.0
+   */
+  public int getDestinationId() {
+    return destinationId;
   }
 
   /**
@@ -187,15 +348,26 @@ public class TrainDeparture {
    * @since 1.0.0
    */
   public void setTrack(int track) {
+    this.track = checkTrack(track);
+  }
+
+  /**
+   * Checks that a track is between 1 and 99.
+   *
+   * @param track Track of departure.
+   * @return The track if valid, otherwise -1.
+   * @since 1.3.0
+   */
+  static int checkTrack(int track) {
     if (track <= 0 || track > 99) {
-      this.track = -1;
-    } else {
-      this.track = track;
+      return -1;
     }
+    return track;
   }
 
   @Override
   public String toString() {
+    int departureMinutes = getScheduledMinutes();
     StringBuilder objectInformation;
     objectInformation = new StringBuilder();
     objectInformation
@@ -203,9 +375,9 @@ public class TrainDeparture {
         .append(" ")
         .append(getTrack())
         .append(" ")
-        .append(getDepartureTime()[0])
+        .append(departureMinutes / 60)
         .append(":")
-        .append(getDepartureTime()[1])
+        .append(departureMinutes % 60)
         .append(" ")
         .append(getDestination());
     return objectInformation.toString();
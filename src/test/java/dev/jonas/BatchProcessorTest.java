@@ -0,0 +1,129 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchProcessorTest {
+
+  private DepartureRegistry registry;
+  private ByteArrayOutputStream output;
+  private BatchProcessor processor;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+    output = new ByteArrayOutputStream();
+    processor = new BatchProcessor(registry,
+        new PrintStream(output, false, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void run_ScriptOfCommands_AppliedInOrder() throws IOException {
+    int errors = processor.run(new BufferedReader(new StringReader("""
+        # Morning
+        add 16:37 L1 1 601 Oslo S
+        add 18:58 L3 - - Lillestrøm
+
+        delay 601 0:05
+        track 1 2
+        time 16:40
+        board
+        """)));
+
+    assertEquals(0, errors);
+    assertEquals(5, registry.get(601).getDelayMinutes());
+    assertEquals(2, registry.get(1).getTrack());
+    assertEquals(16 * 60 + 40, processor.getCurrentTime());
+    assertTrue(output.toString(StandardCharsets.UTF_8).endsWith("""
+        departure\t601\t16:42\t5\tL1\t1\tOslo S
+        departure\t1\t18:58\t0\tL3\t2\tLillestrøm
+        ok\t8
+        """));
+  }
+
+  @Test
+  void execute_TimeMovedForward_DepartedTrainsRemoved() {
+    assertTrue(processor.execute("add 16:00 L1 1 601 Oslo S"));
+    assertTrue(processor.execute("add 16:30 L1 2 602 Drammen"));
+    assertTrue(processor.execute("delay 602 20"));
+    assertTrue(processor.execute("time 16:45"));
+
+    assertNull(registry.get(601));
+    assertNotNull(registry.get(602));  // Leaves at 16:50
+    assertTrue(processor.execute("time 08:00"));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  void execute_DelayOfTrainOthersDependOn_PassedOn() {
+    assertTrue(processor.execute("add 16:00 L1 1 601 Oslo S"));
+    assertTrue(processor.execute("add 16:30 L1 2 602 Drammen"));
+    assertTrue(processor.execute("depend 602 601 10"));
+    assertTrue(processor.execute("delay 601 25"));
+
+    assertEquals(5, registry.get(602).getDelayMinutes());
+    assertFalse(processor.execute("depend 601 602 10 connection"));
+    assertFalse(processor.execute("depend 602 601 10 bus"));
+  }
+
+  @Test
+  void execute_QueryWithConditions_MatchingDeparturesListedInOrder() {
+    assertTrue(processor.execute("add 16:00 L1 1 601 Oslo S"));
+    assertTrue(processor.execute("add 16:10 L1 2 602 Drammen"));
+    assertTrue(processor.execute("add 16:20 L2 1 603 Ski"));
+    assertTrue(processor.execute("delay 601 5"));
+    assertTrue(processor.execute("delay 602 20"));
+    output.reset();
+
+    assertTrue(processor.execute("query line=L1 delayed sort=delay to=17:00 limit=1"));
+    assertEquals("departure\t602\t16:30\t20\tL1\t2\tDrammen\nok\t6\n",
+        output.toString(StandardCharsets.UTF_8));
+    assertFalse(processor.execute("query sort=line"));
+    assertFalse(processor.execute("query track="));
+  }
+
+  @Test
+  void execute_PlanOfTrainsOnSameTrack_MovedTrainsListed() {
+    assertTrue(processor.execute("add 16:00 L1 1 601 Oslo S"));
+    assertTrue(processor.execute("add 15:50 L1 1 602 Drammen"));
+    assertTrue(processor.execute("delay 602 11"));  // Moved onto the time of 601
+    output.reset();
+
+    assertTrue(processor.execute("plan 16:00 17:00"));
+    assertEquals(1, registry.get(601).getTrack());
+    assertEquals("departure\t602\t16:01\t11\tL1\t2\tDrammen\nok\t4\n",
+        output.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void execute_BadCommands_ErrorWithLineNumberAndScriptGoesOn() {
+    assertFalse(processor.execute("delay 601 5"));
+    assertFalse(processor.execute("track 601"));
+    assertFalse(processor.execute("launch 601"));
+    assertTrue(processor.execute("add 16:37 L1 1 601 Oslo S"));
+    assertFalse(processor.execute("add 16:37 L1 1 601 Oslo S"));
+
+    String result = output.toString(StandardCharsets.UTF_8);
+    assertTrue(result.startsWith("error\t1\tNo departure with train number 601\n"));
+    assertTrue(result.contains("error\t2\tUsage: track number track\n"));
+    assertTrue(result.contains("error\t3\tUnknown command: launch\n"));
+    assertTrue(result.endsWith("error\t5\tTrain number 601 is already in use\n"));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  void execute_TrackOutOfRange_NotApplied() {
+    processor.execute("add 16:37 L1 1 601 Oslo S");
+
+    assertFalse(processor.execute("track 601 100"));
+    assertEquals(1, registry.get(601).getTrack());
+  }
+}
@@ -0,0 +1,78 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BoardRendererTest {
+
+  private ByteArrayOutputStream output;
+  private BoardRenderer renderer;
+  private TrainDeparture first;
+  private TrainDeparture second;
+
+  @BeforeEach
+  void setUp() {
+    output = new ByteArrayOutputStream();
+    renderer = new BoardRenderer(new PrintStream(output, true, StandardCharsets.UTF_8));
+    first = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    second = new TrainDeparture(602, new int[]{18, 58}, "L3", "Lillestrøm", 2);
+  }
+
+  @Test
+  void render_FirstFrame_ClearsScreenAndDrawsEveryLine() {
+    int written = renderer.render(16 * 60, List.of(first, second));
+
+    String frame = output.toString(StandardCharsets.UTF_8);
+    assertEquals(8, written);
+    assertTrue(frame.startsWith("\033[H\033[2J"));
+    assertTrue(frame.contains("16:37 L1 Oslo S            1"));
+    assertTrue(frame.contains("18:58 L3 Lillestrøm        2"));
+  }
+
+  @Test
+  void render_NothingChanged_WritesNoLines() {
+    renderer.render(16 * 60, List.of(first, second));
+
+    assertEquals(0, renderer.render(16 * 60, List.of(first, second)));
+  }
+
+  @Test
+  void render_OneDelay_RewritesOnlyThatLine() {
+    renderer.render(16 * 60, List.of(first, second));
+    output.reset();
+    second.setDelayMinutes(5);
+
+    int written = renderer.render(16 * 60, List.of(first, second));
+
+    String frame = output.toString(StandardCharsets.UTF_8);
+    assertEquals(1, written);
+    assertTrue(frame.contains("\033[8;1H19:03 L3 Lillestrøm        2\033[K"));
+    assertFalse(frame.contains("Oslo S"));
+  }
+
+  @Test
+  void render_DepartedTrain_LineCleared() {
+    renderer.render(16 * 60, List.of(first, second));
+    output.reset();
+
+    int written = renderer.render(17 * 60, List.of(second));
+
+    String frame = output.toString(StandardCharsets.UTF_8);
+    assertEquals(3, written);  // Clock, the train moving up, and the line left over
+    assertTrue(frame.contains("\033[8;1H\033[K"));
+  }
+
+  @Test
+  void invalidate_NextFrameDrawsEveryLine_True() {
+    renderer.render(16 * 60, List.of(first, second));
+    renderer.invalidate();
+
+    assertEquals(8, renderer.render(16 * 60, List.of(first, second)));
+  }
+}
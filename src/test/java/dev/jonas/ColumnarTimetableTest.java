@@ -0,0 +1,53 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class ColumnarTimetableTest {
+
+  @Test
+  void add_RowReadsBackFromColumns_True() {
+    ColumnarTimetable timetable = new ColumnarTimetable(1);
+    int row = timetable.add(16 * 60 + 37, "L1", "Oslo S", 1);
+    timetable.add(18 * 60 + 58, "L3", "Lillestrøm", 2);
+
+    assertEquals(2, timetable.size());
+    assertEquals(16 * 60 + 37, timetable.getScheduledMinutes(row));
+    assertEquals("L1", timetable.getLine(row));
+    assertEquals("Oslo S", timetable.getDestination(row));
+    assertEquals(1, timetable.getTrack(row));
+    assertEquals(0, timetable.getDelayMinutes(row));
+  }
+
+  @Test
+  void view_WritesThroughToColumns_True() {
+    ColumnarTimetable timetable = new ColumnarTimetable();
+    int row = timetable.add(16 * 60 + 37, "L1", "Oslo S", 1);
+
+    TrainDeparture view = timetable.view(row);
+    view.setDelay(new int[]{0, 5});
+    view.setTrack(100);
+
+    assertEquals(5, timetable.getDelayMinutes(row));
+    assertEquals(-1, timetable.getTrack(row));
+    assertEquals(16 * 60 + 42, view.getEffectiveMinutes());
+    assertEquals("L1 -1 16:37 Oslo S", view.toString());
+  }
+
+  @Test
+  void rowsByEffectiveTime_DelayedRowSortedLast_True() {
+    ColumnarTimetable timetable = new ColumnarTimetable();
+    int first = timetable.add(10 * 60, "L1", "Oslo S", 1);
+    int second = timetable.add(10 * 60 + 5, "L1", "Oslo S", 1);
+    timetable.setDelayMinutes(first, 10);
+
+    assertArrayEquals(new int[]{second, first}, timetable.rowsByEffectiveTime());
+  }
+
+  @Test
+  void getLine_UnknownRow_Throws() {
+    ColumnarTimetable timetable = new ColumnarTimetable();
+    assertThrows(IndexOutOfBoundsException.class, () -> timetable.getLine(0));
+  }
+}
@@ -0,0 +1,149 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DelayFeedTest {
+
+  private DepartureRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+    registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{18, 58}, "L3", "Lillestrøm", 2));
+  }
+
+  @Test
+  void submit_ManyUpdatesToSameTrain_LatestApplied() throws Exception {
+    try (DelayFeed feed = new DelayFeed(registry)) {
+      for (int delay = 0; delay <= 1000; delay++) {
+        feed.submit(601, delay);
+      }
+      feed.flush();
+
+      assertEquals(1000, registry.get(601).getDelayMinutes());
+      assertEquals(1001, feed.getReceived());
+      assertEquals(1001, feed.getApplied() + feed.getCoalesced());
+      assertEquals(registry.get(601), registry.getDepartures().get(1));
+    }
+  }
+
+  @Test
+  void read_LinesWithMinutesAndTime_BadLinesRejected() throws Exception {
+    String lines = "# Morning\n601 5\n\n602 01:10\n603 5\n602 late\n601 -3\n";
+    try (DelayFeed feed = new DelayFeed(registry)) {
+      int submitted = feed.read(new BufferedReader(new StringReader(lines)));
+      feed.flush();
+
+      assertEquals(3, submitted);
+      assertEquals(5, registry.get(601).getDelayMinutes());
+      assertEquals(70, registry.get(602).getDelayMinutes());
+      assertEquals(3, feed.getRejected());  // Two bad lines, and train 603 is not registered
+    }
+  }
+
+  @Test
+  void submit_FeedFull_WaitsUntilBatchTaken() throws Exception {
+    CountDownLatch applying = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    registry.addListener(new DepartureListener() {
+      @Override
+      public void delayChanged(TrainDeparture trainDeparture, int previousDelayMinutes) {
+        applying.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    registry.add(new TrainDeparture(603, new int[]{19, 0}, "L3", "Asker", 3));
+
+    try (DelayFeed feed = new DelayFeed(registry, 1, applied -> { })) {
+      feed.submit(601, 1);
+      assertTrue(applying.await(5, TimeUnit.SECONDS));  // Applier is held in the listener
+      feed.submit(602, 2);  // Fills the feed
+      feed.submit(602, 3);  // Same train, so it is coalesced without waiting
+
+      Thread producer = new Thread(() -> {
+        try {
+          feed.submit(603, 4);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      producer.start();
+      producer.join(200);
+      assertTrue(producer.isAlive());
+
+      release.countDown();
+      producer.join(5000);
+      assertFalse(producer.isAlive());
+      feed.flush();
+      assertEquals(3, registry.get(602).getDelayMinutes());
+      assertEquals(4, registry.get(603).getDelayMinutes());
+    }
+  }
+
+  @Test
+  void follow_LinesAppendedToFile_Applied() throws Exception {
+    Path file = Files.createTempFile("delays", ".feed");
+    try (DelayFeed feed = new DelayFeed(registry)) {
+      Files.writeString(file, "601 5\n602 ", StandardCharsets.UTF_8);
+      feed.follow(file);
+      waitForApplied(feed, 1);
+      assertEquals(0, registry.get(602).getDelayMinutes());  // Line is not finished yet
+
+      Files.writeString(file, "7\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+      waitForApplied(feed, 2);
+      assertEquals(5, registry.get(601).getDelayMinutes());
+      assertEquals(7, registry.get(602).getDelayMinutes());
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  void submit_FeedWithPropagation_DependentTrainDelayed() throws Exception {
+    DelayPropagation propagation = new DelayPropagation(registry);
+    propagation.addDependency(602, 601, 10, DelayPropagation.Kind.ROLLING_STOCK);
+
+    try (DelayFeed feed = new DelayFeed(propagation)) {
+      feed.submit(601, 150);  // Leaves 19:07, so train 602 cannot leave before 19:17
+      feed.flush();
+
+      assertEquals(150, registry.get(601).getDelayMinutes());
+      assertEquals(19, registry.get(602).getDelayMinutes());
+      assertEquals(0, propagation.getReportedDelay(602));
+      assertEquals(1, feed.getApplied());
+
+      feed.submit(601, 0);
+      feed.flush();
+      assertEquals(0, registry.get(602).getDelayMinutes());  // Knock-on delay given back
+    }
+  }
+
+  /**
+   * Waits up to five seconds for the feed to have applied a number of delays.
+   */
+  private static void waitForApplied(DelayFeed feed, long applied) throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (feed.getApplied() < applied && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    feed.flush();
+    assertEquals(applied, feed.getApplied());
+  }
+}
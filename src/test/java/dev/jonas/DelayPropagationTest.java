@@ -0,0 +1,107 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DelayPropagationTest {
+
+  private DepartureRegistry registry;
+  private DelayPropagation propagation;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+    registry.add(new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{16, 30}, "L1", "Drammen", 2));
+    registry.add(new TrainDeparture(603, new int[]{17, 0}, "L3", "Lillestrøm", 3));
+    propagation = new DelayPropagation(registry);
+    propagation.addDependency(602, 601, 10, DelayPropagation.Kind.ROLLING_STOCK);
+    propagation.addDependency(603, 602, 5, DelayPropagation.Kind.CONNECTION);
+  }
+
+  @Test
+  void setDelay_Chain_KnockOnDelaysAbsorbedBySlack() {
+    assertEquals(2, propagation.setDelay(601, 25));
+
+    assertEquals(25, registry.get(601).getDelayMinutes());
+    assertEquals(5, registry.get(602).getDelayMinutes());  // 16:25 and 10 minutes to turn
+    assertEquals(0, registry.get(603).getDelayMinutes());  // 16:40 and 5 minutes is before 17:00
+    assertEquals(0, propagation.getReportedDelay(602));
+  }
+
+  @Test
+  void setDelay_DelayReducedAgain_KnockOnDelaysGivenBack() {
+    assertEquals(3, propagation.setDelay(601, 60));
+    assertEquals(40, registry.get(602).getDelayMinutes());
+    assertEquals(15, registry.get(603).getDelayMinutes());
+
+    assertEquals(3, propagation.setDelay(601, 0));
+    assertEquals(0, registry.get(602).getDelayMinutes());
+    assertEquals(0, registry.get(603).getDelayMinutes());
+  }
+
+  @Test
+  void setDelay_ReportedDelayLargerThanKnockOn_ReportedDelayKept() {
+    registry.setDelayMinutes(603, 30);  // Set outside the propagation
+
+    assertEquals(2, propagation.setDelay(601, 60));
+    assertEquals(30, registry.get(603).getDelayMinutes());
+    assertEquals(30, propagation.getReportedDelay(603));
+
+    propagation.setDelay(601, 90);
+    assertEquals(45, registry.get(603).getDelayMinutes());
+  }
+
+  @Test
+  void removeDepartedBefore_DelayedDepartureEvicted_DelaysKeptForItDropped() {
+    propagation.setDelay(601, 25);
+    assertEquals(2, registry.removeDepartedBefore(16 * 60 + 40));  // Trains 601 and 602
+
+    // A new train 602 delayed outside the propagation, by the knock-on delay the old one had
+    registry.add(new TrainDeparture(602, new int[]{16, 30}, "L1", "Drammen", 2));
+    registry.setDelayMinutes(602, 5);
+    assertEquals(5, propagation.getReportedDelay(602));
+  }
+
+  @Test
+  void setDelay_TrainNumberReusedAfterRemoval_DependenciesNotInherited() {
+    registry.remove(registry.get(601));
+    registry.add(new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 1));
+
+    assertEquals(1, propagation.setDelay(601, 60));
+    assertEquals(0, registry.get(602).getDelayMinutes());
+    assertTrue(propagation.getDependencies(602).isEmpty());
+    assertEquals(1, propagation.getDependencies(603).size());
+  }
+
+  @Test
+  void addDependency_Cycle_ThrowsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () ->
+        propagation.addDependency(601, 603, 5, DelayPropagation.Kind.TRACK));
+    assertThrows(IllegalArgumentException.class, () ->
+        propagation.addDependency(601, 601, 5, DelayPropagation.Kind.TRACK));
+    assertTrue(propagation.getDependencies(601).isEmpty());
+  }
+
+  @Test
+  void setDelay_LongChain_EveryTrainMovedOnce() {
+    registry = new DepartureRegistry();
+    propagation = new DelayPropagation(registry);
+    int trains = 5000;
+    for (int i = 0; i < trains; i++) {
+      registry.add(new TrainDeparture(1000 + i, new int[]{0, 0}, "L" + i % 8, "Oslo S", -1));
+      if (i > 0) {
+        propagation.addDependency(1000 + i, 1000 + i - 1, 0, DelayPropagation.Kind.TRACK);
+      }
+    }
+
+    assertEquals(trains, propagation.setDelay(1000, 90));
+    assertEquals(90, registry.get(1000 + trains - 1).getDelayMinutes());
+    assertEquals(trains / 2,
+        propagation.removeDependency(1000 + trains / 2, 1000 + trains / 2 - 1));
+    assertEquals(0, registry.get(1000 + trains - 1).getDelayMinutes());
+    assertEquals(-1, propagation.removeDependency(1000 + trains / 2, 1000 + trains / 2 - 1));
+  }
+}
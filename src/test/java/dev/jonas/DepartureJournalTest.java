@@ -0,0 +1,163 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DepartureJournalTest {
+
+  private Path file;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    file = Files.createTempFile("departures", ".journal");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void open_ReplaysEveryLoggedChange_True() throws IOException {
+    DepartureRegistry registry = new DepartureRegistry();
+    try (DepartureJournal journal = DepartureJournal.open(file, registry)) {
+      registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+      registry.add(new TrainDeparture(602, new int[]{18, 58}, "L3", "Lillestrøm", 2));
+      registry.add(new TrainDeparture(603, new int[]{19, 0}, "L3", "Asker", 3));
+      registry.setDelayMinutes(601, 12);
+      registry.setTrack(602, 4);
+      registry.setDestination(registry.get(602), "Eidsvoll");
+      registry.setDepartureTime(registry.get(601), new int[]{17, 0});
+      registry.remove(registry.get(603));
+      journal.sync();
+    }
+
+    DepartureRegistry replayed = new DepartureRegistry();
+    DepartureJournal.open(file, replayed).close();
+
+    assertEquals(2, replayed.size());
+    assertEquals(17 * 60, replayed.get(601).getScheduledMinutes());
+    assertEquals(12, replayed.get(601).getDelayMinutes());
+    assertEquals(4, replayed.get(602).getTrack());
+    assertEquals("Eidsvoll", replayed.get(602).getDestination());
+    assertNull(replayed.get(603));
+  }
+
+  @Test
+  void open_ReplayOnTopOfSameState_SameResult() throws IOException {
+    DepartureRegistry registry = new DepartureRegistry();
+    try (DepartureJournal journal = DepartureJournal.open(file, registry)) {
+      registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+      registry.setDelayMinutes(601, 5);
+      journal.sync();
+    }
+
+    // The registry already has the changes, as if they were in a snapshot
+    DepartureJournal.open(file, registry).close();
+
+    assertEquals(1, registry.size());
+    assertEquals(5, registry.get(601).getDelayMinutes());
+  }
+
+  @Test
+  void open_RecordCutOffByCrash_IgnoredAndTruncated() throws IOException {
+    DepartureRegistry registry = new DepartureRegistry();
+    try (DepartureJournal journal = DepartureJournal.open(file, registry)) {
+      registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+      journal.sync();
+    }
+    long whole = Files.size(file);
+    Files.write(file, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+    DepartureRegistry replayed = new DepartureRegistry();
+    DepartureJournal.open(file, replayed).close();
+
+    assertEquals(1, replayed.size());
+    assertEquals(whole, Files.size(file));
+  }
+
+  @Test
+  void reset_ReplaysNothing_True() throws IOException {
+    DepartureRegistry registry = new DepartureRegistry();
+    try (DepartureJournal journal = DepartureJournal.open(file, registry)) {
+      registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+      journal.reset();
+    }
+
+    DepartureRegistry replayed = new DepartureRegistry();
+    DepartureJournal.open(file, replayed).close();
+
+    assertEquals(0, replayed.size());
+  }
+
+  @Test
+  void reset_ChangeLoggedAfterMark_Replayed() throws IOException {
+    DepartureRegistry registry = new DepartureRegistry();
+    try (DepartureJournal journal = DepartureJournal.open(file, registry)) {
+      registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+      long mark = journal.mark();
+      registry.add(new TrainDeparture(602, new int[]{16, 45}, "L2", "Bergen", 2));
+      journal.reset(mark);
+    }
+
+    DepartureRegistry replayed = new DepartureRegistry();
+    DepartureJournal.open(file, replayed).close();
+
+    assertEquals(1, replayed.size());
+    assertEquals(2, replayed.get(602).getTrack());
+  }
+
+  @Test
+  void open_ChangesFromManyThreadsPastBufferSize_EveryChangeReplayed()
+      throws IOException, InterruptedException {
+    DepartureRegistry registry = new DepartureRegistry();
+    String destination = "Oslo S".repeat(50);
+    try (DepartureJournal journal = DepartureJournal.open(file, registry, 60_000)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int first = 1000 * (t + 1);
+        String line = "L" + t;
+        threads.add(new Thread(() -> {
+          for (int i = 0; i < 500; i++) {
+            registry.add(new TrainDeparture(first + i, new int[]{i / 60, i % 60}, line,
+                destination, 1 + i % 9));
+            registry.setDelayMinutes(first + i, i % 30);
+          }
+        }));
+      }
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      journal.sync();
+    }
+
+    DepartureRegistry replayed = new DepartureRegistry();
+    DepartureJournal.open(file, replayed).close();
+
+    List<DepartureRecord> expected =
+        new ArrayList<>(registry.snapshot(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    List<DepartureRecord> actual =
+        new ArrayList<>(replayed.snapshot(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    expected.sort(Comparator.comparingInt(DepartureRecord::trainNumber));
+    actual.sort(Comparator.comparingInt(DepartureRecord::trainNumber));
+    assertEquals(2000, actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).trainNumber(), actual.get(i).trainNumber());
+      assertEquals(expected.get(i).delayMinutes(), actual.get(i).delayMinutes());
+      assertEquals(expected.get(i).track(), actual.get(i).track());
+    }
+  }
+}
@@ -0,0 +1,170 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DepartureQueryTest {
+
+  private DepartureRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+    registry.add(new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{16, 10}, "L1", "Drammen", 2));
+    registry.add(new TrainDeparture(603, new int[]{16, 20}, "L2", "Oslo Lufthavn", 1));
+    registry.add(new TrainDeparture(604, new int[]{17, 0}, "L2", "Ski", -1));
+    registry.setDelayMinutes(601, 30);
+    registry.setDelayMinutes(603, 5);
+  }
+
+  @Test
+  void query_AllDepartures_SortedByEffectiveTime() {
+    List<DepartureRecord> records = registry.query(DepartureQuery.all());
+
+    assertEquals(List.of(602, 603, 601, 604), trainNumbers(records));
+  }
+
+  @Test
+  void query_ConditionsTogether_OnlyDeparturesMeetingAll() {
+    DepartureQuery query = DepartureQuery.all()
+        .destination("oslo")
+        .delayedOnly()
+        .scheduledBetween(16 * 60, 16 * 60 + 30)
+        .orderBy(DepartureQuery.Order.DELAY);
+
+    assertEquals(List.of(601, 603), trainNumbers(registry.query(query)));
+    assertEquals(List.of(603), trainNumbers(registry.query(query.line("L2"))));
+    assertEquals(List.of(601), trainNumbers(registry.query(query.limit(1))));
+    assertTrue(registry.query(query.track(2)).isEmpty());
+  }
+
+  @Test
+  void accessFor_QueryConditions_MostSelectiveIndexPicked() {
+    DepartureQuery query = DepartureQuery.all().line("L1");
+
+    assertEquals(DepartureRegistry.Access.SCAN, registry.accessFor(query));
+    assertEquals(DepartureRegistry.Access.TIME_INDEX,
+        registry.accessFor(query.effectiveBetween(16 * 60, 17 * 60)));
+    assertEquals(DepartureRegistry.Access.TRACK_INDEX,
+        registry.accessFor(query.effectiveBetween(16 * 60, 17 * 60).track(1)));
+    assertEquals(DepartureRegistry.Access.DESTINATION_INDEX,
+        registry.accessFor(query.track(1).destination("oslo")));
+    assertEquals(List.of(603, 601), trainNumbers(registry.query(DepartureQuery.all()
+        .track(1).effectiveBetween(16 * 60 + 25, 17 * 60))));
+  }
+
+  @Test
+  void query_LargeRegistry_SameResultsAsCheckingEveryDeparture() {
+    Random random = new Random(7);
+    for (int i = 0; i < DepartureRegistry.PARALLEL_QUERY_SIZE; i++) {
+      int minutes = random.nextInt(24 * 60);
+      int track = random.nextInt(10) == 0 ? -1 : 1 + random.nextInt(20);
+      registry.add(new TrainDeparture(1000 + i, new int[]{minutes / 60, minutes % 60},
+          "L" + i % 12, "Oslo S", track));
+      if (random.nextInt(4) == 0) {
+        registry.setDelayMinutes(1000 + i, random.nextInt(60));
+      }
+    }
+    List<DepartureQuery> queries = List.of(
+        DepartureQuery.all().line("L3").delayedOnly(),
+        DepartureQuery.all().orderBy(DepartureQuery.Order.DELAY).limit(50),
+        DepartureQuery.all().track(7).orderBy(DepartureQuery.Order.TRAIN_NUMBER),
+        DepartureQuery.all().effectiveBetween(8 * 60, 9 * 60).line("L5"),
+        DepartureQuery.all().scheduledBetween(12 * 60, 13 * 60)
+            .orderBy(DepartureQuery.Order.SCHEDULED_TIME));
+    assertEquals(DepartureRegistry.Access.PARALLEL_SCAN, registry.accessFor(queries.get(0)));
+
+    List<DepartureRecord> every = registry.query(DepartureQuery.all());
+    for (DepartureQuery query : queries) {
+      List<DepartureRecord> expected = new ArrayList<>();
+      for (DepartureRecord record : every) {
+        if (query.matches(record)) {
+          expected.add(record);
+        }
+      }
+      expected.sort(query.getOrder().comparator());
+      expected = expected.subList(0, Math.min(expected.size(), query.getLimit()));
+
+      assertEquals(expected, registry.query(query));
+    }
+  }
+
+  @Test
+  void subscribe_QueryWithDestination_OnlyMatchingDestinations() {
+    List<DepartureEvent> events = new ArrayList<>();
+    registry.subscribe(DepartureQuery.all().destination("oslo"), events::add);
+    assertEquals(List.of(603, 601), trainNumbersOf(events));
+    events.clear();
+
+    registry.setDestination(registry.get(602), "Oslo S");
+    registry.setDestination(registry.get(601), "Lillestrøm");
+    registry.setDelayMinutes(604, 3);
+
+    assertEquals(List.of(602, 601), trainNumbersOf(events));
+    assertEquals(DepartureEvent.Type.REMOVED, events.get(1).type());
+    assertEquals(List.of(602, 603), trainNumbers(
+        registry.query(DepartureQuery.all().destination("OSLO"))));
+  }
+
+  @Test
+  void line_UnknownLine_MatchesNothingAndNotInterned() {
+    int lines = SymbolTable.LINES.size();
+
+    List<DepartureRecord> records = registry.query(DepartureQuery.all().line("No such line"));
+
+    assertTrue(records.isEmpty());
+    assertEquals(lines, SymbolTable.LINES.size());
+  }
+
+  @Test
+  void query_InvertedOrEmptyWindow_NothingFound() {
+    assertTrue(registry.query(DepartureQuery.all().effectiveBetween(17 * 60, 16 * 60)).isEmpty());
+    assertTrue(registry.query(DepartureQuery.all().effectiveBetween(16 * 60, 16 * 60)).isEmpty());
+  }
+
+  @Test
+  void line_LineFirstAddedAfterQueryMade_Found() {
+    DepartureQuery query = DepartureQuery.all().line("L-first-added-later");
+    List<DepartureEvent> events = new ArrayList<>();
+    registry.subscribe(query, events::add);
+
+    registry.add(new TrainDeparture(605, new int[]{18, 0}, "L-first-added-later", "Ski", 3));
+
+    assertEquals(List.of(605), trainNumbers(registry.query(query)));
+    assertEquals(List.of(605), trainNumbersOf(events));
+  }
+
+  @Test
+  void limitAndTrack_OutOfRange_ThrowIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> DepartureQuery.all().limit(-1));
+    assertThrows(IllegalArgumentException.class, () -> DepartureQuery.all().track(100));
+  }
+
+  /**
+   * Gets the train numbers of events, in order.
+   */
+  private static List<Integer> trainNumbersOf(List<DepartureEvent> events) {
+    List<Integer> trainNumbers = new ArrayList<>();
+    for (DepartureEvent event : events) {
+      trainNumbers.add(event.trainNumber());
+    }
+    return trainNumbers;
+  }
+
+  /**
+   * Gets the train numbers of records, in order.
+   */
+  private static List<Integer> trainNumbers(List<DepartureRecord> records) {
+    List<Integer> trainNumbers = new ArrayList<>();
+    for (DepartureRecord record : records) {
+      trainNumbers.add(record.trainNumber());
+    }
+    return trainNumbers;
+  }
+}
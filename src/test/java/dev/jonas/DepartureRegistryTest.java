@@ -0,0 +1,345 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DepartureRegistryTest {
+
+  private DepartureRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+  }
+
+  @Test
+  void getDepartures_SortedByEffectiveTime_True() {
+    TrainDeparture late = new TrainDeparture(new int[]{18, 58}, "L3", "Lillestrøm", 2);
+    TrainDeparture early = new TrainDeparture(new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(late);
+    registry.add(early);
+
+    List<TrainDeparture> departures = registry.getDepartures();
+    assertSame(early, departures.get(0));
+    assertSame(late, departures.get(1));
+  }
+
+  @Test
+  void add_SameDepartureTwice_False() {
+    TrainDeparture trainDeparture = new TrainDeparture(new int[]{16, 37}, "L1", "Oslo S", 1);
+    assertTrue(registry.add(trainDeparture));
+    assertFalse(registry.add(trainDeparture));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  void setDelay_DelayReordersDeparture_True() {
+    TrainDeparture first = new TrainDeparture(new int[]{16, 37}, "L1", "Oslo S", 1);
+    TrainDeparture second = new TrainDeparture(new int[]{16, 45}, "L3", "Lillestrøm", 2);
+    registry.add(first);
+    registry.add(second);
+
+    registry.setDelay(first, new int[]{0, 10});
+
+    List<TrainDeparture> departures = registry.getDepartures();
+    assertSame(second, departures.get(0));
+    assertSame(first, departures.get(1));
+  }
+
+  @Test
+  void nextDepartures_OnlyAtOrAfterTimeAndLimited_True() {
+    for (int minute = 0; minute < 10; minute++) {
+      registry.add(new TrainDeparture(new int[]{12, minute}, "L1", "Oslo S", 1));
+    }
+
+    List<TrainDeparture> next = registry.nextDepartures(12 * 60 + 5, 3);
+    assertEquals(3, next.size());
+    assertEquals(5, next.get(0).getDepartureTime()[1]);
+    assertEquals(7, next.get(2).getDepartureTime()[1]);
+  }
+
+  @Test
+  void remove_RemovedDepartureNotListed_True() {
+    TrainDeparture trainDeparture = new TrainDeparture(new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(trainDeparture);
+    assertTrue(registry.remove(trainDeparture));
+    assertFalse(registry.contains(trainDeparture));
+    assertEquals(0, registry.getDepartures().size());
+  }
+
+  @Test
+  void searchByDestination_PrefixIgnoresCaseAndAccents_True() {
+    TrainDeparture lillestrom = new TrainDeparture(new int[]{18, 58}, "L3", "Lillestrøm", 2);
+    TrainDeparture airport = new TrainDeparture(new int[]{16, 37}, "F1", "Oslo Lufthavn", 1);
+    registry.add(lillestrom);
+    registry.add(airport);
+
+    assertEquals(List.of(lillestrom), registry.searchByDestination("lilles"));
+    assertEquals(List.of(lillestrom), registry.searchByDestination("LILLESTROM"));
+    assertEquals(List.of(airport), registry.searchByDestination("lufthavn"));
+    assertEquals(List.of(airport, lillestrom), registry.searchByDestination(""));
+  }
+
+  @Test
+  void setDestination_IndexFollowsNewDestination_True() {
+    TrainDeparture trainDeparture = new TrainDeparture(new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(trainDeparture);
+
+    registry.setDestination(trainDeparture, "Drammen");
+
+    assertTrue(registry.searchByDestination("oslo").isEmpty());
+    assertEquals(List.of(trainDeparture), registry.searchByDestination("dram"));
+  }
+
+  @Test
+  void add_DepartureWithoutNumberGetsFreeNumber_True() {
+    TrainDeparture numbered = new TrainDeparture(1, new int[]{16, 37}, "L1", "Oslo S", 1);
+    TrainDeparture unnumbered = new TrainDeparture(new int[]{16, 40}, "L1", "Oslo S", 1);
+    registry.add(numbered);
+    registry.add(unnumbered);
+
+    assertEquals(2, unnumbered.getTrainNumber());
+    assertSame(unnumbered, registry.get(2));
+  }
+
+  @Test
+  void add_DuplicateTrainNumber_Throws() {
+    registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+    TrainDeparture duplicate = new TrainDeparture(601, new int[]{17, 0}, "L2", "Ski", 2);
+
+    assertThrows(IllegalArgumentException.class, () -> registry.add(duplicate));
+    assertFalse(registry.contains(duplicate));
+  }
+
+  @Test
+  void setDelayMinutes_ByTrainNumber_True() {
+    TrainDeparture trainDeparture = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(trainDeparture);
+
+    assertTrue(registry.setDelayMinutes(601, 5));
+    assertFalse(registry.setDelayMinutes(602, 5));
+    assertEquals(5, trainDeparture.getDelayMinutes());
+  }
+
+  @Test
+  void setDelayMinutes_BatchSkipsUnknownAndReorders_True() {
+    TrainDeparture first = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    TrainDeparture second = new TrainDeparture(602, new int[]{16, 45}, "L3", "Lillestrøm", 2);
+    registry.add(first);
+    registry.add(second);
+
+    int applied = registry.setDelayMinutes(new int[]{601, 999, 602}, new int[]{20, 5, 1}, 3);
+
+    assertEquals(2, applied);
+    assertEquals(List.of(second, first), registry.getDepartures());
+    assertEquals(20, registry.getRecord(601).delayMinutes());
+  }
+
+  @Test
+  void addListener_ToldAboutDelayWithPreviousValue_True() {
+    TrainDeparture train = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(train);
+    int[] previous = {-1};
+    registry.addListener(new DepartureListener() {
+      @Override
+      public void delayChanged(TrainDeparture trainDeparture, int previousDelayMinutes) {
+        previous[0] = previousDelayMinutes;
+      }
+    });
+
+    registry.setDelayMinutes(train, 5);
+    registry.setDelayMinutes(train, 7);
+
+    assertEquals(5, previous[0]);
+  }
+
+  @Test
+  void getRecord_PublishedAfterEveryChange_True() {
+    TrainDeparture train = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(train);
+    DepartureRecord added = registry.getRecord(601);
+
+    registry.setDelayMinutes(train, 5);
+    registry.setTrack(train, 3);
+
+    DepartureRecord changed = registry.getRecord(601);
+    assertEquals(0, added.delayMinutes());
+    assertEquals(16 * 60 + 42, changed.effectiveMinutes());
+    assertEquals(3, changed.track());
+    assertEquals("Oslo S", changed.destination());
+    assertTrue(changed.version() > added.version());
+    assertEquals(registry.version(), changed.version());
+  }
+
+  @Test
+  void snapshot_WritersOnManyThreads_EveryDepartureOnceAndSorted() throws InterruptedException {
+    int departures = 2000;
+    for (int i = 0; i < departures; i++) {
+      registry.add(new TrainDeparture(i + 1, new int[]{(i / 60) % 24, i % 60},
+          "L" + (i % 16), "Oslo S", 1));
+    }
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> writers = new ArrayList<>();
+    for (int w = 0; w < 4; w++) {
+      int offset = w;
+      Thread writer = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; running.get(); i++) {
+          int trainNumber = (i * 7 + offset) % departures + 1;
+          registry.setDelayMinutes(trainNumber, (i + offset) % 90);
+        }
+      });
+      writer.start();
+      writers.add(writer);
+    }
+
+    start.countDown();
+    try {
+      for (int read = 0; read < 200; read++) {
+        List<DepartureRecord> snapshot = registry.snapshot(0, Integer.MAX_VALUE);
+        assertEquals(departures, snapshot.size());
+        Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+          assertTrue(seen.add(snapshot.get(i).trainNumber()));
+          if (i > 0) {
+            assertTrue(snapshot.get(i - 1).effectiveMinutes()
+                <= snapshot.get(i).effectiveMinutes());
+          }
+        }
+      }
+    } finally {
+      running.set(false);
+      for (Thread writer : writers) {
+        writer.join();
+      }
+    }
+    assertEquals(departures, registry.getDepartures().size());
+  }
+
+  @Test
+  void removeDepartedBefore_DelayedPastTime_Kept() {
+    TrainDeparture departed = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    TrainDeparture delayed = new TrainDeparture(602, new int[]{16, 50}, "L3", "Lillestrøm", 2);
+    TrainDeparture later = new TrainDeparture(603, new int[]{18, 58}, "L1", "Drammen", 3);
+    registry.add(departed);
+    registry.add(delayed);
+    registry.add(later);
+    registry.setDelayMinutes(delayed, 20);
+
+    assertEquals(1, registry.removeDepartedBefore(17 * 60));
+    assertEquals(0, registry.removeDepartedBefore(17 * 60));
+    assertNull(registry.get(601));
+    assertEquals(List.of(delayed, later), registry.getDepartures());
+    assertTrue(registry.searchByDestination("oslo").isEmpty());
+  }
+
+  @Test
+  void snapshotBetween_Window_OnlyDeparturesInWindow() {
+    registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{16, 50}, "L3", "Lillestrøm", 2));
+    registry.add(new TrainDeparture(603, new int[]{17, 0}, "L1", "Drammen", 3));
+    registry.setDelayMinutes(601, 15);
+
+    List<DepartureRecord> window = registry.snapshotBetween(16 * 60 + 45, 17 * 60);
+    assertEquals(2, window.size());
+    assertEquals(602, window.get(0).trainNumber());
+    assertEquals(601, window.get(1).trainNumber());
+    assertTrue(registry.snapshotBetween(17 * 60, 17 * 60).isEmpty());
+  }
+
+  @Test
+  void findConflicts_DelayMovesTrainIntoHeadway_ConflictFound() {
+    TrainDeparture first = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 2);
+    TrainDeparture second = new TrainDeparture(602, new int[]{16, 45}, "L3", "Lillestrøm", 2);
+    registry.add(first);
+    registry.add(second);
+    assertTrue(registry.findConflicts(first).isEmpty());
+
+    registry.setDelayMinutes(first, 6);  // Leaves at 16:43, within three minutes of 16:45
+    assertEquals(List.of(second), registry.findConflicts(first));
+    assertEquals(List.of(first), registry.findConflicts(second));
+    assertTrue(registry.findConflicts(first, 3).isEmpty());
+
+    registry.setTrack(second, 3);
+    assertTrue(registry.findConflicts(first).isEmpty());
+    assertEquals(List.of(second), registry.findConflicts(first, 3));
+  }
+
+  @Test
+  void trySetTrack_SameSlotFromTwoThreads_OnlyOneSucceeds() throws InterruptedException {
+    for (int round = 0; round < 500; round++) {
+      DepartureRegistry registry = new DepartureRegistry();
+      TrainDeparture first = new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 7);
+      TrainDeparture second = new TrainDeparture(602, new int[]{16, 1}, "L3", "Drammen", 8);
+      registry.add(first);
+      registry.add(second);
+
+      CountDownLatch start = new CountDownLatch(1);
+      List<List<TrainDeparture>> results = new ArrayList<>(List.of(List.of(), List.of()));
+      List<Thread> threads = new ArrayList<>();
+      for (TrainDeparture trainDeparture : List.of(first, second)) {
+        int index = threads.size();
+        Thread thread = new Thread(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          results.set(index, registry.trySetTrack(trainDeparture, 5));
+        });
+        thread.start();
+        threads.add(thread);
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertEquals(1, results.stream().filter(List::isEmpty).count());
+      assertTrue(registry.findConflicts(first).isEmpty());
+      assertTrue(registry.findConflicts(second).isEmpty());
+    }
+  }
+
+  @Test
+  void tryAdd_TrackTaken_RefusedAndLeftUnchanged() {
+    TrainDeparture first = new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 5);
+    TrainDeparture second = new TrainDeparture(602, new int[]{16, 2}, "L3", "Drammen", 5);
+    assertTrue(registry.tryAdd(first).isEmpty());
+    assertEquals(List.of(first), registry.tryAdd(second));
+    assertEquals(1, registry.size());
+    assertTrue(registry.tryAdd(new TrainDeparture(602, new int[]{16, 2}, "L3", "Drammen", 6))
+        .isEmpty());
+  }
+
+  @Test
+  void freeTracks_OccupiedAndRemoved_OnlyFreeTracks() {
+    TrainDeparture first = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    registry.add(first);
+    registry.add(new TrainDeparture(602, new int[]{16, 39}, "L3", "Lillestrøm", 2));
+    registry.add(new TrainDeparture(603, new int[]{18, 0}, "L1", "Drammen", 3));
+
+    List<Integer> free = registry.freeTracks(16 * 60 + 30, 16 * 60 + 38);
+    assertEquals(TrackOccupancy.MAX_TRACK - 2, free.size());
+    assertFalse(free.contains(1));
+    assertFalse(free.contains(2));  // Occupied from 16:37, the headway before it leaves
+    assertTrue(free.contains(3));
+
+    registry.remove(first);
+    assertTrue(registry.freeTracks(16 * 60 + 30, 16 * 60 + 38).contains(1));
+  }
+}
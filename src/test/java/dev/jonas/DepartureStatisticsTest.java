@@ -0,0 +1,99 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DepartureStatisticsTest {
+
+  private DepartureRegistry registry;
+  private DepartureStatistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+    statistics = registry.getStatistics();
+  }
+
+  @Test
+  void getStatistics_ChangesThroughRegistry_FiguresFollow() {
+    registry.add(new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{16, 10}, "L1", "Drammen", 1));
+    registry.add(new TrainDeparture(603, new int[]{16, 20}, "L2", "Ski", -1));
+
+    registry.setDelayMinutes(601, 10);
+    registry.setDelayMinutes(602, 2);
+    registry.setTrack(603, 4);
+
+    assertEquals(3, statistics.getDepartures());
+    assertEquals(2, statistics.getDelayedDepartures());
+    assertEquals(1, statistics.getLateDepartures());
+    assertEquals(4.0, statistics.getAverageDelayMinutes(), 1e-9);
+    assertEquals(6.0, statistics.getAverageDelayMinutes("L1"), 1e-9);
+    assertEquals(1, statistics.getLateDepartures("L1"));
+    assertEquals(0, statistics.getDepartures("L9"));
+    assertEquals(2, statistics.getTrackDepartures(1));
+    assertEquals(1, statistics.getTrackDepartures(4));
+    assertEquals(2.0 * registry.getTrackHeadwayMinutes() / (24 * 60),
+        statistics.getTrackUtilisation(1), 1e-9);
+    assertEquals(2, statistics.getDeparturesDelayedBy(2));
+
+    registry.setDelayMinutes(601, 0);
+    registry.remove(registry.get(602));
+
+    assertEquals(2, statistics.getDepartures());
+    assertEquals(0, statistics.getDelayedDepartures());
+    assertEquals(0, statistics.getLateDepartures("L1"));
+    assertEquals(1, statistics.getTrackDepartures(1));
+  }
+
+  @Test
+  void getStatistics_ManyDelaysFromManyThreads_SameAsCountingEveryDeparture()
+      throws InterruptedException {
+    Random random = new Random(3);
+    int departures = 4000;
+    for (int i = 0; i < departures; i++) {
+      int minutes = random.nextInt(24 * 60);
+      registry.add(new TrainDeparture(1000 + i, new int[]{minutes / 60, minutes % 60},
+          "L" + i % 16, "Oslo S", 1 + random.nextInt(TrackOccupancy.MAX_TRACK)));
+    }
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      int seed = t;
+      threads.add(new Thread(() -> {
+        Random delays = new Random(seed);
+        for (int i = 0; i < departures; i++) {
+          registry.setDelayMinutes(1000 + delays.nextInt(departures), delays.nextInt(30));
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    registry.removeDepartedBefore(6 * 60);
+
+    int late = 0;
+    long delaySum = 0;
+    int[] tracks = new int[TrackOccupancy.MAX_TRACK + 1];
+    List<DepartureRecord> records = registry.snapshot(0, Integer.MAX_VALUE);
+    for (DepartureRecord record : records) {
+      late += record.delayMinutes() >= DepartureStatistics.LATE_MINUTES ? 1 : 0;
+      delaySum += record.delayMinutes();
+      tracks[record.track()]++;
+    }
+    assertEquals(records.size(), statistics.getDepartures());
+    assertEquals(late, statistics.getLateDepartures());
+    assertEquals(late, statistics.getDeparturesDelayedBy(DepartureStatistics.LATE_MINUTES));
+    assertEquals((double) delaySum / records.size(), statistics.getAverageDelayMinutes(), 1e-9);
+    for (int track = 1; track <= TrackOccupancy.MAX_TRACK; track++) {
+      assertEquals(tracks[track], statistics.getTrackDepartures(track));
+    }
+  }
+}
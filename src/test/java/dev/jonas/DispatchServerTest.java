@@ -0,0 +1,118 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class DispatchServerTest {
+
+  private DepartureRegistry registry;
+  private DispatchServer server;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    registry = new DepartureRegistry();
+    registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+    server = new DispatchServer(registry, 0);
+    server.start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.close();
+  }
+
+  @Test
+  void run_TwoOperators_ShareRegistry() throws IOException {
+    try (Socket idle = connect(); Socket operator = connect()) {
+      // Notifies a delay of five minutes to train 601, then quits
+      String output = converse(operator, "4\n601\n0\n5\n10\n");
+
+      assertTrue(output.contains("Exiting application"));
+      assertEquals(5, registry.get(601).getDelayMinutes());
+      assertTrue(converse(idle, "1\n\n10\n").contains("16:42"));
+    }
+  }
+
+  @Test
+  void run_OperatorMovesClock_ClockMovedForEveryOperator() throws IOException {
+    try (Socket other = connect(); Socket operator = connect()) {
+      // Moves the time to 17:05, past train 601, then quits
+      converse(operator, "7\n17\n5\n10\n");
+
+      assertNull(registry.get(601));
+      assertTrue(converse(other, "1\n\n10\n").contains("17:05"));
+    }
+  }
+
+  @Test
+  void run_TrackNotANumber_SessionGoesOn() throws IOException {
+    try (Socket operator = connect()) {
+      // Assigns track "four" to train 601, then quits
+      String output = converse(operator, "3\n601\nfour\n\n10\n");
+
+      assertTrue(output.contains("Invalid input. Must be between 1 and 99"));
+      assertTrue(output.contains("Exiting application"));
+      assertEquals(1, registry.get(601).getTrack());
+    }
+  }
+
+  @Test
+  void run_MoreWaitingOperatorsThanCores_OperatorServed() throws IOException {
+    List<Socket> waiting = new ArrayList<>();
+    try {
+      for (int i = 0; i <= Runtime.getRuntime().availableProcessors(); i++) {
+        waiting.add(connect());
+      }
+      try (Socket operator = connect()) {
+        assertTrue(converse(operator, "10\n").contains("Exiting application"));
+      }
+    } finally {
+      for (Socket socket : waiting) {
+        socket.close();
+      }
+    }
+  }
+
+  @Test
+  void close_OpenSessions_Disconnected() throws Exception {
+    try (Socket operator = connect()) {
+      long deadline = System.nanoTime() + 5_000_000_000L;
+      while (server.getSessionCount() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, server.getSessionCount());
+
+      server.close();
+
+      operator.getInputStream().readAllBytes();  // Returns once the server has closed it
+      assertEquals(0, server.getSessionCount());
+    }
+  }
+
+  /**
+   * Connects to the server, failing instead of waiting forever for output.
+   */
+  private Socket connect() throws IOException {
+    Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  /**
+   * Sends every line of input, and reads the output until the session ends.
+   */
+  private static String converse(Socket socket, String input) throws IOException {
+    socket.getOutputStream().write(input.getBytes(StandardCharsets.UTF_8));
+    socket.getOutputStream().flush();
+    return new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,49 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class FormatBufferTest {
+
+  @Test
+  void appendTime_PaddedAndWrappedAtMidnight_True() {
+    FormatBuffer buffer = new FormatBuffer(4);
+
+    buffer.appendTime(0).append(' ').appendTime(16 * 60 + 7).append(' ').appendTime(24 * 60 + 65);
+
+    assertEquals("00:00 16:07 01:05", buffer.toString());
+  }
+
+  @Test
+  void appendInt_EveryRange_SameAsToString() {
+    FormatBuffer buffer = new FormatBuffer(1);
+    int[] values = {0, 7, 42, -1, 100, 1234, 98765, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    for (int value : values) {
+      buffer.clear().appendInt(value);
+      assertEquals(Integer.toString(value), buffer.toString());
+    }
+  }
+
+  @Test
+  void append_NonAsciiText_SameBytesAsUtf8() {
+    String text = "Lillestrøm – Gävle 🚆";
+    FormatBuffer buffer = new FormatBuffer(8);
+
+    buffer.append(text);
+
+    byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+    assertTrue(buffer.contentEquals(expected, expected.length));
+  }
+
+  @Test
+  void appendPadded_ShortAndLongText_PaddedToWidthInChars() {
+    FormatBuffer buffer = new FormatBuffer(8);
+
+    buffer.appendPadded("Ås", 4).append('|').appendPadded("Drammen", 3).append('|');
+
+    assertEquals("Ås  |Drammen|", buffer.toString());
+  }
+}
@@ -25,7 +25,7 @@ class IoTest {
     TrainDeparture trainDeparture = new TrainDeparture();
     int[] time = new int[]{23, 56};
     trainDeparture.setDepartureTime(time);
-    assertEquals(time, trainDeparture.getDepartureTime(), "DepartureTime should be equal");
+    assertArrayEquals(time, trainDeparture.getDepartureTime(), "DepartureTime should be equal");
   }
 
   @Test
@@ -0,0 +1,128 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+
+  private Metrics metrics;
+
+  @BeforeEach
+  void setUp() {
+    metrics = new Metrics();
+  }
+
+  @Test
+  void bucketOf_EveryValue_WithinBucketBounds() {
+    Random random = new Random(11);
+    for (int i = 0; i < 100_000; i++) {
+      long value = random.nextLong() >>> (1 + random.nextInt(63));
+      int bucket = Metrics.bucketOf(value);
+
+      assertTrue(value <= Metrics.highestValueOf(bucket));
+      assertTrue(bucket == 0 || value > Metrics.highestValueOf(bucket - 1));
+      // Buckets are at most 1/16 of their value wide
+      assertTrue(Metrics.highestValueOf(bucket) - value <= value / 16);
+    }
+    assertEquals(Long.MAX_VALUE, Metrics.highestValueOf(Metrics.bucketOf(Long.MAX_VALUE)));
+  }
+
+  @Test
+  void record_KnownTimes_PercentilesWithinBucketWidth() {
+    Metrics.Timer timer = metrics.timer("test");
+    for (int micros = 1; micros <= 1000; micros++) {
+      timer.record(micros * 1000L, 100);
+    }
+
+    assertEquals(1000, timer.getCount());
+    assertEquals(500, timer.getMeanMicros());
+    assertEquals(1000, timer.getMaxMicros());
+    assertEquals(100, timer.getAllocatedBytesPerCall());
+    assertEquals(500, timer.getMedianMicros(), 500 / 16);
+    assertEquals(990, timer.get99thPercentileMicros(), 990 / 16);
+    assertSame(timer, metrics.timer("test"));
+
+    timer.reset();
+    assertEquals(0, timer.getCount());
+    assertEquals(0, timer.get99thPercentileMicros());
+  }
+
+  @Test
+  void record_FromManyThreads_EveryRunCounted() throws InterruptedException {
+    Metrics.Timer timer = metrics.timer("test");
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          timer.start().stop();
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(40_000, timer.getCount());
+  }
+
+  @Test
+  void stopWaiting_WaitWithinSample_LeftOutOfSample() throws InterruptedException {
+    Metrics.Timer menu = metrics.timer("menu");
+    Metrics.Timer read = metrics.timer("read");
+
+    Metrics.Sample sample = menu.start();
+    Metrics.Sample wait = read.start();
+    Thread.sleep(200);
+    wait.stopWaiting();
+    sample.stop();
+
+    assertTrue(read.getMaxMicros() >= 200_000);
+    assertTrue(menu.getMaxMicros() < 100_000);
+  }
+
+  @Test
+  void stop_OnVirtualThread_AllocationsLeftOutOfBytesPerRun() throws InterruptedException {
+    Metrics.Timer timer = metrics.timer("test");
+    timer.record(1_000, 4_000);
+
+    Thread.ofVirtual().start(() -> timer.start().stop()).join();
+
+    assertEquals(2, timer.getCount());
+    assertEquals(4_000, timer.getAllocatedBytesPerCall());
+  }
+
+  @Test
+  void dump_TimersRecorded_OneLinePerTimerSortedByName() {
+    metrics.timer("io.menu.view").record(2_000_000, 64);
+    metrics.timer("board.render").record(50_000, 0);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    metrics.dump(new PrintStream(output, false, StandardCharsets.UTF_8));
+
+    assertEquals("board.render\t1\t50\t50\t50\t50\t0\n"
+        + "io.menu.view\t1\t2000\t2000\t2000\t2000\t64\n",
+        output.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void timer_DefaultMetrics_RegisteredWithJmx() throws Exception {
+    Metrics.DEFAULT.timer("test.jmx").record(3_000, 0);
+
+    Object count = ManagementFactory.getPlatformMBeanServer().getAttribute(
+        new ObjectName("dev.jonas:type=Timer,name=\"test.jmx\""), "Count");
+    assertEquals(1L, count);
+  }
+}
@@ -0,0 +1,112 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SubscriptionTest {
+
+  private DepartureRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+    registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{18, 58}, "L3", "Lillestrøm", 2));
+    registry.add(new TrainDeparture(603, new int[]{12, 5}, "L1", "Drammen", 2));
+  }
+
+  @Test
+  void subscribe_ExistingDepartures_ReplayedAsAddedInOrder() {
+    List<DepartureEvent> events = new ArrayList<>();
+    registry.subscribe(DepartureFilter.track(2), events::add);
+
+    assertEquals(2, events.size());
+    assertEquals(DepartureEvent.Type.ADDED, events.get(0).type());
+    assertEquals(603, events.get(0).trainNumber());
+    assertEquals(602, events.get(1).trainNumber());
+  }
+
+  @Test
+  void setTrack_DepartureEntersAndLeavesView_AddedThenRemoved() {
+    List<DepartureEvent> events = new ArrayList<>();
+    registry.subscribe(DepartureFilter.track(1), events::add);
+    events.clear();
+
+    registry.setTrack(603, 1);
+    registry.setDelayMinutes(603, 10);
+    registry.setTrack(603, 4);
+    registry.setDelayMinutes(602, 10);  // Never in the view
+
+    assertEquals(3, events.size());
+    assertEquals(DepartureEvent.Type.ADDED, events.get(0).type());
+    assertEquals(DepartureEvent.Type.CHANGED, events.get(1).type());
+    assertEquals(10, events.get(1).current().delayMinutes());
+    assertEquals(DepartureEvent.Type.REMOVED, events.get(2).type());
+    assertNull(events.get(2).current());
+    assertEquals(1, events.get(2).previous().track());  // The record the view last saw
+  }
+
+  @Test
+  void line_LineNoDepartureHasHad_NotInternedAndMatchedOnceAdded() {
+    List<DepartureEvent> events = new ArrayList<>();
+    registry.subscribe(DepartureFilter.line("L81"), events::add);
+
+    assertTrue(events.isEmpty());
+    assertEquals(-1, SymbolTable.LINES.find("L81"));
+
+    registry.add(new TrainDeparture(604, new int[]{13, 0}, "L81", "Ski", 3));
+    assertEquals(1, events.size());
+    assertEquals(604, events.get(0).trainNumber());
+  }
+
+  @Test
+  void close_Subscription_NoMoreEvents() {
+    List<DepartureEvent> events = new ArrayList<>();
+    Subscription subscription = registry.subscribe(DepartureFilter.all(), events::add);
+    subscription.close();
+    events.clear();
+
+    registry.setDelayMinutes(601, 5);
+    registry.remove(registry.get(602));
+
+    assertFalse(subscription.isOpen());
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  void subscribe_SubscriberThrows_UnsubscribedAndWriterUnaffected() {
+    Subscription subscription = registry.subscribe(DepartureFilter.line("L3"), event -> {
+      if (event.type() == DepartureEvent.Type.CHANGED) {
+        throw new IllegalStateException("Display gone");
+      }
+    });
+
+    assertTrue(registry.setDelayMinutes(602, 5));
+    assertFalse(subscription.isOpen());
+    assertEquals(5, registry.get(602).getDelayMinutes());
+  }
+
+  @Test
+  void accept_DelaysAndRemovals_BoardViewMatchesRegistry() throws Exception {
+    BoardView view = new BoardView();
+    registry.subscribe(DepartureFilter.between(12 * 60, 19 * 60), view);
+    long seen = view.getChanges();
+
+    registry.setDelayMinutes(603, 7 * 60);  // 19:05, out of the window
+    registry.setDelayMinutes(601, 3 * 60);  // 19:37, out of the window
+    registry.setDelayMinutes(601, 0);
+    registry.add(new TrainDeparture(604, new int[]{13, 0}, "L2", "Ski", 3));
+
+    assertTrue(view.awaitChange(seen, 0) > seen);
+    List<DepartureRecord> departures = view.getDepartures(10);
+    assertEquals(3, departures.size());
+    assertEquals(604, departures.get(0).trainNumber());
+    assertEquals(601, departures.get(1).trainNumber());
+    assertEquals(602, departures.get(2).trainNumber());
+    assertEquals(1, view.getDepartures(1).size());
+  }
+}
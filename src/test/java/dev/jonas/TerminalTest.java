@@ -0,0 +1,44 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TerminalTest {
+
+  private InputStream standardInput;
+
+  @BeforeEach
+  void setUp() {
+    standardInput = System.in;
+  }
+
+  @AfterEach
+  void tearDown() {
+    System.setIn(standardInput);
+  }
+
+  @Test
+  void readString_PipedLines_NoneLost() throws IOException {
+    System.setIn(new ByteArrayInputStream("first\nLillestrøm\n42\n".getBytes(StandardCharsets.UTF_8)));
+
+    assertEquals("first", Terminal.readString());
+    assertEquals("Lillestrøm", Terminal.readString());
+    assertEquals(42, Terminal.readInt());
+    assertNull(Terminal.readString());
+  }
+
+  @Test
+  void readInt_InputEnded_Throws() {
+    System.setIn(new ByteArrayInputStream(new byte[0]));
+
+    assertThrows(EOFException.class, Terminal::readInt);
+  }
+}
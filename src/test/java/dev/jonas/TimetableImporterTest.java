@@ -0,0 +1,85 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TimetableImporterTest {
+
+  private Path file;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    file = Files.createTempFile("timetable", ".csv");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void importFile_CsvWithHeaderAndComments_True() throws IOException {
+    Files.writeString(file, """
+        hour,minute,line,track,destination,number
+        # Morning
+        16,37,L1,1,Oslo S,601
+        18,58, L3 ,2,Lillestrøm\r
+        """, StandardCharsets.UTF_8);
+
+    ColumnarTimetable timetable = new TimetableImporter().importFile(file);
+
+    assertEquals(2, timetable.size());
+    assertEquals(601, timetable.getTrainNumber(0));
+    assertEquals(16 * 60 + 37, timetable.getScheduledMinutes(0));
+    assertEquals("Oslo S", timetable.getDestination(0));
+    assertEquals(-1, timetable.getTrainNumber(1));
+    assertEquals("L3", timetable.getLine(1));
+    assertEquals(2, timetable.getTrack(1));
+    assertEquals("Lillestrøm", timetable.getDestination(1));
+  }
+
+  @Test
+  void importFile_TabSeparated_True() throws IOException {
+    Files.writeString(file, "7\t5\tR10\t4\tDrammen, Kongsberg\t12\n", StandardCharsets.UTF_8);
+
+    ColumnarTimetable timetable = new TimetableImporter().importFile(file);
+
+    assertEquals(1, timetable.size());
+    assertEquals(7 * 60 + 5, timetable.getScheduledMinutes(0));
+    assertEquals("Drammen, Kongsberg", timetable.getDestination(0));
+  }
+
+  @Test
+  void importFile_NotANumber_Throws() throws IOException {
+    Files.writeString(file, "16,37,L1,one,Oslo S\n", StandardCharsets.UTF_8);
+
+    assertThrows(IOException.class, () -> new TimetableImporter().importFile(file));
+  }
+
+  @Test
+  void importFile_TrainNumberOnTwoRows_Throws() throws IOException {
+    Files.writeString(file, "16,37,L1,1,Oslo S,601\n16,40,L1,1,Ski\n17,00,L2,2,Asker,601\n",
+        StandardCharsets.UTF_8);
+
+    IOException e = assertThrows(IOException.class,
+        () -> new TimetableImporter().importFile(file));
+    assertTrue(e.getMessage().startsWith("Line 3:"));
+  }
+
+  @Test
+  void addAll_RowWithoutNumberBeforeRowNumberedOne_BothRegistered() throws IOException {
+    Files.writeString(file, "16,37,L1,1,Oslo S\n16,40,L1,2,Ski,1\n", StandardCharsets.UTF_8);
+    DepartureRegistry registry = new DepartureRegistry();
+
+    assertEquals(2, registry.addAll(new TimetableImporter().importFile(file)));
+    assertEquals("Ski", registry.get(1).getDestination());
+    assertEquals(2, registry.get(2).getTrainNumber());
+  }
+}
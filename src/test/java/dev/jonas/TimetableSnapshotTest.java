@@ -0,0 +1,104 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TimetableSnapshotTest {
+
+  private Path file;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    file = Files.createTempFile("timetable", ".tdss");
+  }
+
+  @AfterEach
+  void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void read_WrittenDeparturesComeBackEqual_True() throws IOException {
+    TrainDeparture first = new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1);
+    first.setDelayMinutes(12);
+    TrainDeparture second = new TrainDeparture(602, new int[]{18, 58}, "L3", "Lillestrøm", -1);
+    TimetableSnapshot.write(file, List.of(first, second));
+
+    ColumnarTimetable timetable = TimetableSnapshot.read(file);
+
+    assertEquals(2, timetable.size());
+    assertEquals(first.toString(), timetable.view(0).toString());
+    assertEquals(second.toString(), timetable.view(1).toString());
+    assertEquals(601, timetable.getTrainNumber(0));
+    assertEquals(12, timetable.getDelayMinutes(0));
+    assertEquals(-1, timetable.getTrack(1));
+  }
+
+  @Test
+  void writeRecords_DestinationChangedAfterRecordsTaken_RecordsWritten() throws IOException {
+    DepartureRegistry registry = new DepartureRegistry();
+    registry.add(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{18, 58}, "L3", "Lillestrøm", 2));
+    List<DepartureRecord> records = registry.snapshot(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    registry.setDestination(registry.get(601), "Kongsberg");
+
+    TimetableSnapshot.writeRecords(file, records);
+    ColumnarTimetable timetable = TimetableSnapshot.read(file);
+
+    assertEquals(2, timetable.size());
+    assertEquals("Oslo S", timetable.view(0).getDestination());
+    assertEquals("Lillestrøm", timetable.view(1).getDestination());
+  }
+
+  @Test
+  void importTimetable_SameFileAfterSnapshotOfIt_RegisteredDeparturesSkipped()
+      throws IOException {
+    Path csv = Files.createTempFile("timetable", ".csv");
+    try {
+      Files.writeString(csv, "16,37,L1,1,Oslo S,601\n18,58,L3,2,Lillestrøm,602\n",
+          StandardCharsets.UTF_8);
+      Files.delete(file);
+      Io firstRun = new Io(new DepartureRegistry());
+      assertEquals(0, firstRun.useSnapshot(file));
+      assertEquals(2, firstRun.importTimetable(csv));
+      firstRun.saveSnapshot(file);
+
+      DepartureRegistry registry = new DepartureRegistry();
+      Io secondRun = new Io(registry);
+      assertEquals(2, secondRun.useSnapshot(file));
+      assertEquals(0, secondRun.importTimetable(csv));
+      assertEquals(2, registry.size());
+    } finally {
+      Files.deleteIfExists(csv);
+    }
+  }
+
+  @Test
+  void read_CorruptedRecord_Throws() throws IOException {
+    TimetableSnapshot.write(file,
+        List.of(new TrainDeparture(601, new int[]{16, 37}, "L1", "Oslo S", 1)));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[]{42}), channel.size() - 8);
+    }
+
+    assertThrows(IOException.class, () -> TimetableSnapshot.read(file));
+  }
+
+  @Test
+  void read_NotASnapshot_Throws() throws IOException {
+    Files.writeString(file, "16,37,L1,1,Oslo S\n16,38,L1,1,Oslo S\n");
+
+    assertThrows(IOException.class, () -> TimetableSnapshot.read(file));
+  }
+}
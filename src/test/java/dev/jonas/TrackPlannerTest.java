@@ -0,0 +1,91 @@
+package dev.jonas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TrackPlannerTest {
+
+  private DepartureRegistry registry;
+
+  @BeforeEach
+  void setUp() {
+    registry = new DepartureRegistry();
+  }
+
+  @Test
+  void plan_TrainsQueuedOnOneTrack_SpreadWithoutConflicts() {
+    for (int i = 0; i < 10; i++) {
+      registry.add(new TrainDeparture(601 + i, new int[]{16, i}, "L1", "Oslo S", 1));
+    }
+    registry.add(new TrainDeparture(700, new int[]{16, 5}, "L2", "Ski", 2));
+    registry.add(new TrainDeparture(701, new int[]{16, 4}, "L2", "Ski", -1));
+    TrackPlanner planner = new TrackPlanner(registry);
+
+    TrackPlanner.Plan plan = planner.plan(16 * 60, 17 * 60);
+    planner.apply(plan);
+
+    assertEquals(12, plan.size());
+    assertEquals(0, plan.getConflicts());
+    assertEquals(1, registry.get(601).getTrack());
+    assertEquals(1, registry.get(604).getTrack());  // Three minutes after the first
+    assertEquals(2, registry.get(700).getTrack());
+    assertNotEquals(-1, registry.get(701).getTrack());
+    for (int trainNumber = 601; trainNumber <= 610; trainNumber++) {
+      assertTrue(registry.findConflicts(registry.get(trainNumber)).isEmpty());
+    }
+  }
+
+  @Test
+  void plan_DepartureJustBeforeWindow_PlannedAround() {
+    registry.add(new TrainDeparture(601, new int[]{15, 59}, "L1", "Oslo S", 3));
+    registry.add(new TrainDeparture(602, new int[]{16, 0}, "L1", "Drammen", 3));
+    TrackPlanner planner = new TrackPlanner(registry);
+
+    planner.apply(planner.plan(16 * 60, 17 * 60));
+
+    assertEquals(3, registry.get(601).getTrack());  // Outside the window, so not moved
+    assertNotEquals(3, registry.get(602).getTrack());
+  }
+
+  @Test
+  void plan_BusyDayInManySlices_NoConflictsWhereSlicesMeet() {
+    Random random = new Random(42);
+    int departures = 20_000;
+    for (int i = 0; i < departures; i++) {
+      int minutes = random.nextInt(24 * 60);
+      registry.add(new TrainDeparture(1000 + i, new int[]{minutes / 60, minutes % 60},
+          "L" + i % 40, "Oslo S", 1 + random.nextInt(TrackOccupancy.MAX_TRACK)));
+    }
+    TrackPlanner planner = new TrackPlanner(registry, new ForkJoinPool(4), 7);
+
+    TrackPlanner.Plan plan = planner.plan(0, 24 * 60);
+    planner.apply(plan);
+
+    assertEquals(departures, plan.size());
+    assertEquals(0, plan.getConflicts());
+    assertTrue(plan.getChanges() < departures / 2);
+    for (int i = 0; i < departures; i++) {
+      assertTrue(registry.findConflicts(registry.get(1000 + i)).isEmpty());
+    }
+  }
+
+  @Test
+  void apply_TrackTakenByDelayAfterPlanning_DepartureKeepsTrack() {
+    registry.add(new TrainDeparture(601, new int[]{16, 0}, "L1", "Oslo S", 1));
+    registry.add(new TrainDeparture(602, new int[]{16, 1}, "L1", "Drammen", 1));
+    TrackPlanner planner = new TrackPlanner(registry);
+    TrackPlanner.Plan plan = planner.plan(16 * 60, 17 * 60);
+    int planned = plan.getTrack(1);
+    TrainDeparture late = new TrainDeparture(701, new int[]{15, 0}, "L2", "Ski", planned);
+    registry.add(late);
+    registry.setDelayMinutes(701, 61);  // Now leaves at 16:01, on the track planned for 602
+
+    assertEquals(0, planner.apply(plan));
+    assertEquals(1, registry.get(602).getTrack());
+    assertTrue(registry.findConflicts(late).isEmpty());
+  }
+}
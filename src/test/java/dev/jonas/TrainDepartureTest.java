@@ -82,4 +82,32 @@ class TrainDepartureTest {
     TrainDeparture trainDeparture = new TrainDeparture();
     assertNotEquals("00:00", trainDeparture.toString());
   }
+
+  @Test
+  void getEffectiveMinutes_ScheduledPlusDelay_True() {
+    TrainDeparture trainDeparture = new TrainDeparture(new int[]{16, 37}, "L1", "Oslo S", 1);
+    trainDeparture.setDelay(new int[]{1, 30});
+    assertEquals(16 * 60 + 37, trainDeparture.getScheduledMinutes());
+    assertEquals(90, trainDeparture.getDelayMinutes());
+    assertEquals(18 * 60 + 7, trainDeparture.getEffectiveMinutes());
+  }
+
+  @Test
+  void setDelayMinutes_InvalidDelayResetsToZero_True() {
+    TrainDeparture trainDeparture = new TrainDeparture();
+    trainDeparture.setDelayMinutes(24 * 60);
+    assertEquals(0, trainDeparture.getDelayMinutes());
+    trainDeparture.setDelayMinutes(-1);
+    assertEquals(0, trainDeparture.getDelayMinutes());
+  }
+
+  @Test
+  void setDestination_EqualNamesShareInstanceAndId_True() {
+    TrainDeparture first = new TrainDeparture();
+    TrainDeparture second = new TrainDeparture();
+    first.setDestination(new String("Oslo S"));
+    second.setDestination(new String("Oslo S"));
+    assertSame(first.getDestination(), second.getDestination());
+    assertEquals(first.getDestinationId(), second.getDestinationId());
+  }
 }
\ No newline at end of file